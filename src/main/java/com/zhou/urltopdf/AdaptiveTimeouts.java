@@ -0,0 +1,103 @@
+package com.zhou.urltopdf;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 按最近的耗时自动调整导航和打印的超时时间，首次渲染和各类失败后的重试分别统计
+ * <p>
+ * 每个阶段按上次失败的类别（首次渲染单独一类）保留最近若干次成功的耗时，超时时间取 95 分位数的 3 倍，
+ * 并限制在最小值和上限之间；样本不足时使用初始值。慢网站不会因为固定超时反复失败，快网站卡住时也不必等满默认的 30 秒。
+ * 重试时取首次渲染的超时时间和该失败类别的超时时间中较大者：超时后重试成功的页面通常比一般页面慢得多，
+ * 样本足够后按它们的实际耗时放宽，样本不足时每次重试把超时时间加倍（不超过上限）；
+ * 网络错误、崩溃等其他类别的失败与耗时无关，样本不足时沿用首次渲染的超时时间。
+ */
+class AdaptiveTimeouts {
+
+  enum Phase {
+    NAVIGATION,
+    PRINT
+  }
+
+  private static final int WINDOW = 200;
+  private static final int MIN_SAMPLES = 10;
+  private static final double FACTOR = 3.0;
+  private static final long MIN_MILLIS = 10_000;
+
+  /**
+   * 最近若干次成功的耗时
+   */
+  private static class Window {
+    final long[] samples = new long[WINDOW];
+    int count;
+
+    void add(long millis) {
+      samples[count % WINDOW] = millis;
+      count++;
+    }
+
+    /**
+     * 按样本计算的超时时间，样本不足时返回 -1
+     */
+    long timeout() {
+      int size = Math.min(count, WINDOW);
+      if (size < MIN_SAMPLES) {
+        return -1;
+      }
+      long[] sorted = Arrays.copyOf(samples, size);
+      Arrays.sort(sorted);
+      long p95 = sorted[Math.min(size - 1, (int) Math.ceil(size * 0.95) - 1)];
+      return Math.max(MIN_MILLIS, (long) (p95 * FACTOR));
+    }
+  }
+
+  private final long initialMillis;
+  private final long maxMillis;
+  // 首次渲染的耗时
+  private final Map<Phase, Window> first = new EnumMap<>(Phase.class);
+  // 按上次失败类别统计的重试耗时
+  private final Map<RenderFailure.Kind, Map<Phase, Window>> retried = new EnumMap<>(RenderFailure.Kind.class);
+
+  AdaptiveTimeouts(long initialMillis, long maxMillis) {
+    this.initialMillis = initialMillis;
+    this.maxMillis = Math.max(initialMillis, maxMillis);
+  }
+
+  /**
+   * 记录一次成功的耗时
+   *
+   * @param previous 上次失败的类别，首次渲染为 null
+   */
+  synchronized void record(Phase phase, RenderFailure.Kind previous, long millis) {
+    window(phase, previous).add(millis);
+  }
+
+  /**
+   * 当前的超时时间
+   *
+   * @param previous 上次失败的类别，首次渲染为 null
+   * @param attempt  重试次数，首次为 0
+   */
+  synchronized long timeout(Phase phase, RenderFailure.Kind previous, int attempt) {
+    long timeout = window(phase, null).timeout();
+    if (timeout < 0) {
+      timeout = initialMillis;
+    }
+    if (previous != null) {
+      long learned = window(phase, previous).timeout();
+      if (learned >= 0) {
+        timeout = Math.max(timeout, learned);
+      } else if (previous == RenderFailure.Kind.TIMEOUT) {
+        timeout <<= Math.min(attempt, 10);
+      }
+    }
+    return Math.min(maxMillis, timeout);
+  }
+
+  private Window window(Phase phase, RenderFailure.Kind previous) {
+    Map<Phase, Window> windows = previous == null ? first
+            : retried.computeIfAbsent(previous, kind -> new EnumMap<>(Phase.class));
+    return windows.computeIfAbsent(phase, key -> new Window());
+  }
+}
@@ -0,0 +1,97 @@
+package com.zhou.urltopdf;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 运行配置，对应桌面 urltopdf 文件夹中的 urltopdf_config.json（可选，不存在时全部使用默认值）
+ */
+@Data
+public class AppConfig {
+
+  // 快速启动：缓存 Playwright 驱动和浏览器安装检查结果，渲染阶段不加载 PDFBox
+  private boolean fastStartup = false;
+
+  // 同时渲染的浏览器数上限，大于 1 时每个渲染槽位使用独立的浏览器，槽位数按耗时和内存、CPU 使用情况自动调整
+  private int maxRenderers = 1;
+  // 浏览器内存预算（MB），所有浏览器进程的常驻内存之和超过该值时减少渲染槽位，0 表示只按系统可用内存判断
+  private int browserMemoryMegabytes = 0;
+  // 同时压缩的PDF数上限，0 表示CPU核数，实际数量按耗时和内存使用情况自动调整
+  private int maxCompressors = 0;
+  // 远程浏览器池地址（http:// 为 Chrome 远程调试端口，ws:// 为 Playwright 服务），配置后连接池中的浏览器而不在本进程中启动
+  private List<String> browserEndpoints;
+  // 浏览器池健康检查间隔（秒），0 表示只在启动时检查
+  private int browserHealthCheckSeconds = 10;
+
+  // 渲染前用 HttpClient 并发预检链接，提前淘汰无法访问或不是网页的链接
+  private boolean preflight = true;
+  // 同时进行的预检请求数
+  private int preflightConcurrency = 16;
+  // 预检的连接和请求超时（秒）
+  private int preflightTimeoutSeconds = 10;
+
+  // 导航和打印的初始超时（秒），之后按最近的耗时自动调整
+  private int renderTimeoutSeconds = 30;
+  // 超时时间上限（秒）
+  private int renderTimeoutMaxSeconds = 180;
+  // 超时、网络错误等暂时性失败在本次运行中的最大重试次数，0 表示不重试
+  private int retryMaxAttempts = 3;
+  // 第一次重试前的等待时间（秒），之后每次加倍
+  private int retryBaseSeconds = 30;
+  // 重试等待时间上限（秒）
+  private int retryMaxDelaySeconds = 600;
+
+  // 落盘队列：文章列表流式导入桌面 urltopdf/queue，内存中只保留调度窗口内的文章，重启后从上次的进度继续（不适用于分片模式）
+  private boolean spillQueue = false;
+  // 落盘队列模式下调度窗口的文章数
+  private int queueWindow = 2000;
+
+  // 渲染顺序：fifo 按文件顺序，sejf 预计耗时短的先处理，newest 新文章先处理（类别内按 sejf）
+  private String schedulerPolicy = "sejf";
+  // newest 策略按创建时间划分优先级类别的天数上限
+  private List<Integer> schedulerClassDays = List.of(7, 30);
+  // 等待超过该时间（分钟）的文章提升一个优先级类别，0 表示不提升
+  private int schedulerAgingMinutes = 60;
+  // 把每次渲染的域名、耗时和结果追加到 urltopdf_trace.jsonl，供 RenderSchedulerBenchmark 回放
+  private boolean schedulerTrace = false;
+
+  // 站点画像：按域名学习懒加载、网络空闲时间、可屏蔽的资源等，之后渲染同一域名时自动应用
+  private boolean domainProfiles = true;
+
+  // 阅读模式：只提取正文和图片重建页面后打印，识别失败时按原页面打印
+  private boolean readerMode = false;
+  // 渲染优化：打印前在浏览器中隐藏导航/评论/广告、冻结动画、按打印尺寸缩小图片
+  private boolean renderOptimize = false;
+  // 渲染优化时图片的目标分辨率（按打印尺寸计算）
+  private int renderImageDpi = 150;
+  // 缩小后的不透明图片按 JPEG 编码的质量
+  private double renderJpegQuality = 0.85;
+  // 打印时隐藏的元素选择器，为空时使用 RenderOptimizer 的默认列表
+  private List<String> hideSelectors;
+  // 页面高度超过该值（像素）时分段打印，0 表示不分段
+  private int chunkedPrintHeight = 0;
+  // 分段打印时每段的页数
+  private int printChunkPages = 20;
+
+  // PDF输出目录，为空时使用桌面 urltopdf 文件夹
+  private String outputDir;
+  // 按链接哈希把PDF分散到 256 个子目录中（文章数量很多时开启）
+  private boolean outputSharding = false;
+
+  // 生成完成后把输出目录中的PDF按创建时间合并成分卷（保存在输出目录的 volumes 文件夹中）
+  private boolean bundleVolumes = false;
+  // 按文章创建时间的月份分卷
+  private boolean bundleByMonth = true;
+  // 每卷最多文章数，0 表示不限
+  private int bundleMaxArticles = 0;
+  // 每卷最大大小（MB），0 表示不限
+  private int bundleMaxMegabytes = 500;
+
+  // 分片执行的共享任务目录，为空表示单进程处理全部文章
+  private String jobDir;
+  // 分片执行时每个批次的文章数
+  private int jobBatchSize = 20;
+  // 批次租约有效期（秒），进程崩溃后超过该时间由其他进程回收
+  private int jobLeaseSeconds = 300;
+}
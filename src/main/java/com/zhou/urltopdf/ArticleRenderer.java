@@ -0,0 +1,385 @@
+package com.zhou.urltopdf;
+
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.PlaywrightException;
+import com.microsoft.playwright.Request;
+import com.microsoft.playwright.Response;
+import com.microsoft.playwright.Route;
+import com.microsoft.playwright.TimeoutError;
+import com.microsoft.playwright.options.LoadState;
+import com.microsoft.playwright.options.Media;
+import com.microsoft.playwright.options.ViewportSize;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 把单篇文章的网页渲染为PDF：导航、滚动触发懒加载、（可选）阅读模式和渲染优化、打印
+ */
+@Slf4j
+class ArticleRenderer {
+
+  // 适配任何网站的通用滚动逻辑：逐段滚动到底触发懒加载，再回到顶部
+  private static final String SCROLL_SCRIPT = """
+          async () => {
+              // 1. 获取整个文档的高度
+              const body = document.body;
+              const html = document.documentElement;
+
+              // 计算页面最大高度
+              const pageHeight = Math.max(
+                  body.scrollHeight,
+                  body.offsetHeight,
+                  html.clientHeight,
+                  html.scrollHeight,
+                  html.offsetHeight
+              );
+
+              // 2. 计算每次滚动步长：取屏幕高度 * 0.8，重叠一点更保险
+              const step = window.innerHeight * 0.8;
+              let current = 0;
+
+              // 3. 逐段向下滚动
+              while (current < pageHeight) {
+                  window.scrollTo(0, current);
+                  // 等待 200 ms 让浏览器触发懒加载
+                  await new Promise(r => setTimeout(r, 200));
+                  current += step;
+              }
+
+              // 4. 再回顶部
+              window.scrollTo(0, 0);
+              // 额外等待确保所有资源加载完成
+              await new Promise(r => setTimeout(r, 500));
+          }
+          """;
+
+  private static final String PAGE_WIDTH_SCRIPT = "Math.max(document.body.scrollWidth, document.body.offsetWidth, "
+          + "document.documentElement.clientWidth, document.documentElement.scrollWidth, "
+          + "document.documentElement.offsetWidth)";
+
+  // A4 纸张的 CSS 像素尺寸（96 DPI），打印时不设页边距
+  private static final double A4_WIDTH_PX = 210 / 25.4 * 96;
+  private static final double A4_HEIGHT_PX = 297 / 25.4 * 96;
+  // 分段打印按估算页数的这一比例规划，宁可少估：最后一段不设结束页，少估的页数都由它打印
+  private static final double PAGE_ESTIMATE_FACTOR = 0.9;
+
+  // 加载完成时这些类型的请求仍未结束，说明页面可能还在加载内容；音视频、事件流等长连接不计
+  private static final Set<String> SETTLE_TYPES = Set.of("document", "script", "xhr", "fetch", "stylesheet",
+          "image", "font");
+
+  // 滚动时出现这些类型的请求说明页面有懒加载
+  private static final Set<String> LAZY_LOAD_TYPES = Set.of("image", "media", "font", "stylesheet", "script", "document");
+
+  private final AppConfig config;
+  private final AdaptiveTimeouts timeouts;
+  // 站点画像，未开启时为 null
+  private final DomainProfiles profiles;
+
+  ArticleRenderer(AppConfig config) {
+    this.config = config;
+    this.timeouts = new AdaptiveTimeouts(config.getRenderTimeoutSeconds() * 1000L,
+            config.getRenderTimeoutMaxSeconds() * 1000L);
+    this.profiles = config.isDomainProfiles() ? loadProfiles() : null;
+  }
+
+  private static DomainProfiles loadProfiles() {
+    try {
+      return DomainProfiles.load(Paths.get(FileUtils.getDesktopPath() + FileUtils.PROFILES_FILE_PATH));
+    } catch (RuntimeException e) {
+      log.warn("无法读取站点画像，本次不使用", e);
+      return null;
+    }
+  }
+
+  /**
+   * 保存站点画像
+   */
+  void saveProfiles() {
+    if (profiles != null) {
+      profiles.save();
+    }
+  }
+
+  /**
+   * 渲染文章并保存为PDF
+   *
+   * @param page       浏览器页面
+   * @param link       文章链接
+   * @param outputPath PDF保存路径
+   */
+  void render(Page page, String link, String outputPath) throws IOException {
+    render(page, link, outputPath, 0, null);
+  }
+
+  /**
+   * 渲染文章并保存为PDF，失败时抛出分类后的 RenderFailure
+   *
+   * @param attempt  重试次数，首次为 0
+   * @param previous 上次失败的类别，首次为 null；超时时间按该类别重试的耗时调整
+   */
+  void render(Page page, String link, String outputPath, int attempt, RenderFailure.Kind previous)
+          throws IOException {
+    String host = profiles != null ? DomainProfiles.hostOf(link) : null;
+    if (host == null) {
+      render(page, link, outputPath, attempt, previous, DomainProfiles.Plan.defaults(), null);
+      return;
+    }
+    // 按站点画像决定是否滚动、等待网络空闲多久、屏蔽哪些资源，并记录本次的观察结果
+    DomainProfiles.Plan plan = profiles.plan(host);
+    DomainProfiles.Observation observation = new DomainProfiles.Observation();
+    long start = System.currentTimeMillis();
+    try {
+      render(page, link, outputPath, attempt, previous, plan, observation);
+    } catch (IOException | RuntimeException e) {
+      profiles.recordFailure(host, plan, System.currentTimeMillis() - start);
+      throw e;
+    }
+    observation.renderMillis = System.currentTimeMillis() - start;
+    profiles.recordSuccess(host, plan, observation);
+  }
+
+  /**
+   * 站点画像，未开启时为 null
+   */
+  DomainProfiles getProfiles() {
+    return profiles;
+  }
+
+  private void render(Page page, String link, String outputPath, int attempt, RenderFailure.Kind previous,
+                      DomainProfiles.Plan plan, DomainProfiles.Observation observation) throws IOException {
+    AtomicInteger lazyRequests = new AtomicInteger();
+    AtomicInteger inFlight = new AtomicInteger();
+    Consumer<Request> listener = request -> {
+      observation.resourceTypes.add(request.resourceType());
+      if (LAZY_LOAD_TYPES.contains(request.resourceType())) {
+        lazyRequests.incrementAndGet();
+      }
+      if (SETTLE_TYPES.contains(request.resourceType())) {
+        inFlight.incrementAndGet();
+      }
+    };
+    Consumer<Request> finished = request -> {
+      if (SETTLE_TYPES.contains(request.resourceType())) {
+        inFlight.decrementAndGet();
+      }
+    };
+    Consumer<Route> blocker = route -> {
+      if (plan.blockedTypes.contains(route.request().resourceType())) {
+        route.abort();
+      } else {
+        route.resume();
+      }
+    };
+    if (observation != null) {
+      page.onRequest(listener);
+      page.onRequestFinished(finished);
+      page.onRequestFailed(finished);
+    }
+    if (!plan.blockedTypes.isEmpty()) {
+      log.info("站点画像：屏蔽" + plan.blockedTypes + (plan.blockTrial ? "（试验）" : ""));
+      page.route("**/*", blocker);
+    }
+    try {
+      render(page, link, outputPath, attempt, previous, plan, observation, lazyRequests, inFlight);
+    } finally {
+      if (observation != null) {
+        page.offRequest(listener);
+        page.offRequestFinished(finished);
+        page.offRequestFailed(finished);
+      }
+      if (!plan.blockedTypes.isEmpty()) {
+        page.unroute("**/*", blocker);
+      }
+    }
+  }
+
+  private void render(Page page, String link, String outputPath, int attempt, RenderFailure.Kind previous,
+                      DomainProfiles.Plan plan, DomainProfiles.Observation observation,
+                      AtomicInteger lazyRequests, AtomicInteger inFlight) throws IOException {
+    // 导航到目标URL
+    long navigationTimeout = timeouts.timeout(AdaptiveTimeouts.Phase.NAVIGATION, previous, attempt);
+    long navigationStart = System.currentTimeMillis();
+    Response response;
+    try {
+      response = page.navigate(link, new Page.NavigateOptions().setTimeout(navigationTimeout));
+    } catch (PlaywrightException e) {
+      throw RenderFailure.classify(e);
+    }
+    if (response != null && response.status() >= 400) {
+      throw RenderFailure.httpStatus(response.status(), response.headerValue("retry-after"));
+    }
+    timeouts.record(AdaptiveTimeouts.Phase.NAVIGATION, previous, System.currentTimeMillis() - navigationStart);
+    if (observation != null) {
+      // 只记录，不等待；多数时候加载完成后仍有请求的域名，之后的渲染才等待网络空闲
+      observation.busyAfterLoad = inFlight.get() > 0;
+    }
+
+    // 等待网络空闲，超时按站点画像设置，不需要的域名不等待
+    if (plan.settleTimeout > 0) {
+      long settleStart = System.currentTimeMillis();
+      try {
+        page.waitForLoadState(LoadState.NETWORKIDLE, new Page.WaitForLoadStateOptions().setTimeout(plan.settleTimeout));
+      } catch (TimeoutError e) {
+        if (observation != null) {
+          observation.idleTimedOut = true;
+        }
+      }
+      if (observation != null) {
+        observation.settleMillis = System.currentTimeMillis() - settleStart;
+      }
+    }
+
+    // 滚动到底，触发懒加载；从未出现懒加载的域名跳过
+    if (plan.scroll) {
+      int requestsBefore = lazyRequests.get();
+      double heightBefore = observation != null ? pageHeight(page) : 0;
+      page.evaluate(SCROLL_SCRIPT);
+      if (observation != null) {
+        observation.scrolled = true;
+        observation.lazyLoad = lazyRequests.get() > requestsBefore || pageHeight(page) > heightBefore * 1.05;
+      }
+    } else {
+      log.info("站点画像：该域名滚动时没有出现过懒加载，跳过滚动");
+    }
+
+    // 阅读模式重建的页面按 A4 宽度排版，不再使用原页面宽度
+    boolean reader = config.isReaderMode() && ReaderExtractor.extract(page);
+
+    if (config.isRenderOptimize()) {
+      RenderOptimizer.optimize(page, config);
+    }
+
+    // 配置PDF选项
+    Page.PdfOptions pdfOptions = new Page.PdfOptions()
+            .setPath(Paths.get(outputPath))
+            .setFormat("A4")
+            .setPrintBackground(true);
+    if (!reader) {
+      // 获取页面宽度，用于设置PDF宽度
+      Object pageWidthObj = page.evaluate(PAGE_WIDTH_SCRIPT);
+      double pageWidth = Double.parseDouble(pageWidthObj.toString());
+      // 设置PDF宽度为页面宽度，高度为自动
+      pdfOptions.setWidth(pageWidth + "px");
+    }
+
+    // 生成PDF文件，超长页面分段打印
+    File output = new File(outputPath);
+    page.setDefaultTimeout(timeouts.timeout(AdaptiveTimeouts.Phase.PRINT, previous, attempt));
+    long start = System.currentTimeMillis();
+    int chunks = 1;
+    try (BrowserMemory.Sampler sampler = new BrowserMemory.Sampler()) {
+      try {
+        int chunkedHeight = config.getChunkedPrintHeight();
+        if (chunkedHeight > 0 && pageHeight(page) > chunkedHeight) {
+          chunks = printInChunks(page, pdfOptions, output);
+        } else {
+          page.pdf(pdfOptions);
+        }
+      } catch (PlaywrightException | IOException e) {
+        throw RenderFailure.whilePrinting(e);
+      }
+      long printMillis = System.currentTimeMillis() - start;
+      timeouts.record(AdaptiveTimeouts.Phase.PRINT, previous, printMillis);
+      if (observation != null) {
+        observation.pdfBytes = output.length();
+      }
+      // 快速启动模式下不统计页数，PDFBox 推迟到压缩时才加载
+      String pages = config.isFastStartup() ? "-" : String.valueOf(countPages(output));
+      log.info(String.format("打印耗时: %d 毫秒，%s 页，%.2f KB，分%d段；本进程浏览器内存合计峰值 %s，JVM堆峰值 %.1f MB",
+              printMillis, pages, output.length() / 1024.0, chunks,
+              sampler.getPeakBrowserRss() < 0 ? "未知" : String.format("%.1f MB", sampler.getPeakBrowserRss() / 1024.0 / 1024),
+              sampler.getPeakHeap() / 1024.0 / 1024));
+    }
+  }
+
+  /**
+   * 按页码范围分段打印到临时文件，再用 PDFBox 以临时文件缓存的方式合并，
+   * 避免 Chromium 一次性栅格化整个超长页面
+   * <p>
+   * 分段数按打印前估算的页数确定，最后一段不设结束页，打印剩余的全部页面；
+   * 某一段不足整段页数说明已到文档末尾，提前结束。
+   *
+   * @return 分段数
+   */
+  private int printInChunks(Page page, Page.PdfOptions pdfOptions, File output) throws IOException {
+    int chunkPages = Math.max(1, config.getPrintChunkPages());
+    int plannedPages = Math.max(1, (int) Math.ceil(estimatePrintPages(page) * PAGE_ESTIMATE_FACTOR));
+    Path dir = Files.createTempDirectory("urltopdf-chunks");
+    List<File> parts = new ArrayList<>();
+    try {
+      for (int first = 1; ; first += chunkPages) {
+        File part = dir.resolve("part-" + parts.size() + ".pdf").toFile();
+        boolean last = first + chunkPages > plannedPages;
+        String range = last ? first + "-" : first + "-" + (first + chunkPages - 1);
+        page.pdf(pdfOptions.setPath(part.toPath()).setPageRanges(range));
+        parts.add(part);
+        if (last || countPages(part) < chunkPages) {
+          break;
+        }
+      }
+
+      PDFMergerUtility merger = new PDFMergerUtility();
+      for (File part : parts) {
+        merger.addSource(part);
+      }
+      merger.setDestinationFileName(output.getPath());
+      merger.mergeDocuments(MemoryUsageSetting.setupTempFileOnly());
+      return parts.size();
+    } finally {
+      for (File part : parts) {
+        Files.deleteIfExists(part.toPath());
+      }
+      Files.deleteIfExists(dir);
+    }
+  }
+
+  /**
+   * 估算打印页数：按打印样式和 A4 纸宽重新排版后，文档高度除以每页可打印的高度
+   */
+  private static int estimatePrintPages(Page page) {
+    ViewportSize viewport = page.viewportSize();
+    try {
+      page.emulateMedia(new Page.EmulateMediaOptions().setMedia(Media.PRINT));
+      if (viewport != null) {
+        page.setViewportSize((int) Math.round(A4_WIDTH_PX), viewport.height);
+      }
+      Object height = page.evaluate("(document.scrollingElement || document.documentElement).scrollHeight");
+      return Math.max(1, (int) Math.ceil(Double.parseDouble(height.toString()) / A4_HEIGHT_PX));
+    } finally {
+      page.emulateMedia(new Page.EmulateMediaOptions().setMedia(null));
+      if (viewport != null) {
+        page.setViewportSize(viewport.width, viewport.height);
+      }
+    }
+  }
+
+  private static double pageHeight(Page page) {
+    Object height = page.evaluate("Math.max(document.body.scrollHeight, document.documentElement.scrollHeight)");
+    return Double.parseDouble(height.toString());
+  }
+
+  /**
+   * 统计PDF页数，解析时使用临时文件缓存，不把整个文件读入内存
+   */
+  private static int countPages(File file) {
+    try (PDDocument document = PDDocument.load(file, MemoryUsageSetting.setupTempFileOnly())) {
+      return document.getNumberOfPages();
+    } catch (IOException e) {
+      log.warn("读取PDF页数失败: " + file.getName(), e);
+      return -1;
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package com.zhou.urltopdf;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * 浏览器进程内存统计
+ * <p>
+ * Playwright 启动的 Chromium 是当前 JVM 的子孙进程，按进程命令行找到这些进程后累加 /proc 中的 VmRSS。
+ * 只支持 Linux，其他系统返回 -1。
+ */
+class BrowserMemory {
+
+  private BrowserMemory() {
+  }
+
+  /**
+   * 当前 JVM 启动的所有 Chromium 进程常驻内存之和（字节），多个渲染槽位时为各槽位浏览器的合计。
+   * 不支持或没有本地浏览器进程（如连接远程浏览器池）时返回 -1
+   */
+  static long rssBytes() {
+    if (!Files.isDirectory(Paths.get("/proc/self"))) {
+      return -1;
+    }
+    long[] pids = ProcessHandle.current().descendants()
+            .filter(BrowserMemory::isBrowser)
+            .mapToLong(ProcessHandle::pid)
+            .toArray();
+    if (pids.length == 0) {
+      return -1;
+    }
+    long total = 0;
+    for (long pid : pids) {
+      total += readRss(pid);
+    }
+    return total;
+  }
+
+  private static boolean isBrowser(ProcessHandle process) {
+    String command = process.info().command().orElse("").toLowerCase();
+    return command.contains("chrom") || command.contains("headless_shell");
+  }
+
+  private static long readRss(long pid) {
+    Path status = Paths.get("/proc", Long.toString(pid), "status");
+    try {
+      List<String> lines = Files.readAllLines(status);
+      for (String line : lines) {
+        if (line.startsWith("VmRSS:")) {
+          // 格式：VmRSS:	  123456 kB
+          String[] parts = line.substring(6).trim().split("\\s+");
+          return Long.parseLong(parts[0]) * 1024;
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      // 进程已退出
+    }
+    return 0;
+  }
+
+  /**
+   * 在后台线程中定时采样浏览器内存（本进程所有浏览器合计）和JVM堆，记录峰值
+   */
+  static class Sampler implements AutoCloseable {
+
+    private static final long INTERVAL_MILLIS = 100;
+
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile long peakBrowserRss = -1;
+    private volatile long peakHeap;
+
+    Sampler() {
+      MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+      thread = new Thread(() -> {
+        while (running) {
+          peakBrowserRss = Math.max(peakBrowserRss, rssBytes());
+          peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+          try {
+            Thread.sleep(INTERVAL_MILLIS);
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+      }, "memory-sampler");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    long getPeakBrowserRss() {
+      return peakBrowserRss;
+    }
+
+    long getPeakHeap() {
+      return peakHeap;
+    }
+
+    @Override
+    public void close() {
+      running = false;
+      thread.interrupt();
+      try {
+        thread.join(1000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,253 @@
+package com.zhou.urltopdf;
+
+import com.google.gson.Gson;
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserType;
+import com.microsoft.playwright.Playwright;
+import com.microsoft.playwright.PlaywrightException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 远程浏览器池：连接事先启动的浏览器，而不是每个进程各自启动 Chromium
+ * <p>
+ * 地址以 http:// 开头时按 Chrome 远程调试端口（CDP）连接，如 BrowserPoolLauncher 启动的浏览器；
+ * 以 ws:// 开头时按 Playwright 服务（playwright run-server）连接。
+ * 后台定时检查各地址：CDP 地址请求 /json/version 并从 /json/list 统计浏览器中打开的页面数，Playwright 服务只检查端口能否连接。
+ * 每次连接选择负载最低的可用地址，负载取检查时的页面数（包括其他进程打开的页面）和本进程的连接数中较大者；
+ * 连接失败的地址立即标记为不可用，下次检查通过后恢复，全部不可用时仍按顺序尝试。
+ * 断开连接只关闭本进程创建的上下文，远程浏览器继续运行。
+ */
+@Slf4j
+class BrowserPool implements AutoCloseable {
+
+  private static final Gson gson = new Gson();
+  // 健康检查的请求超时
+  private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(3);
+  // 连接浏览器的超时（毫秒）
+  private static final double CONNECT_TIMEOUT_MILLIS = 30_000;
+
+  /**
+   * 池中的一个浏览器
+   */
+  static class Endpoint {
+    final String url;
+    final boolean cdp;
+    private volatile boolean healthy = true;
+    // 最近一次检查时浏览器中打开的页面数，Playwright 服务为 0
+    private volatile int pages;
+    // 本进程的连接数
+    private int leases;
+    private volatile String version;
+
+    Endpoint(String url) {
+      this.url = url;
+      this.cdp = !url.toLowerCase(Locale.ROOT).startsWith("ws");
+    }
+
+    /**
+     * 负载，选择地址时比较
+     */
+    int load() {
+      return Math.max(pages, leases);
+    }
+  }
+
+  /**
+   * /json/version 的响应
+   */
+  private static class VersionInfo {
+    String Browser;
+  }
+
+  /**
+   * /json/list 中的一项
+   */
+  private static class Target {
+    String type;
+  }
+
+  private final List<Endpoint> endpoints = new ArrayList<>();
+  private final HttpClient client = newClient();
+  private final ScheduledExecutorService checker;
+  // 轮询起点，负载相同时依次选择
+  private int next;
+
+  /**
+   * @param urls                地址列表
+   * @param healthCheckSeconds 健康检查间隔（秒），0 表示只在创建时检查一次
+   */
+  BrowserPool(List<String> urls, int healthCheckSeconds) {
+    for (String url : urls) {
+      if (url != null && !url.isBlank()) {
+        endpoints.add(new Endpoint(url.trim().replaceAll("/+$", "")));
+      }
+    }
+    if (endpoints.isEmpty()) {
+      throw new IllegalArgumentException("浏览器池没有可用的地址");
+    }
+    int healthy = 0;
+    for (Endpoint endpoint : endpoints) {
+      endpoint.healthy = check(client, endpoint);
+      if (endpoint.healthy) {
+        healthy++;
+        log.info("浏览器池地址 " + endpoint.url + " 可用" + (endpoint.version != null ? "（" + endpoint.version + "）" : ""));
+      } else {
+        log.warn("浏览器池地址 " + endpoint.url + " 不可用");
+      }
+    }
+    log.info("浏览器池：" + endpoints.size() + "个地址，" + healthy + "个可用");
+    if (healthCheckSeconds > 0) {
+      checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "browser-pool-check");
+        thread.setDaemon(true);
+        return thread;
+      });
+      checker.scheduleWithFixedDelay(this::checkAll, healthCheckSeconds, healthCheckSeconds, TimeUnit.SECONDS);
+    } else {
+      checker = null;
+    }
+  }
+
+  /**
+   * 连接负载最低的浏览器，失败时依次尝试其他地址
+   * <p>
+   * 返回的浏览器对象关闭时断开连接并释放占用。浏览器对象属于传入的 Playwright 实例，只能在创建它的线程中使用。
+   *
+   * @throws PlaywrightException 全部地址都无法连接
+   */
+  Browser connect(Playwright playwright) {
+    PlaywrightException last = null;
+    for (Endpoint endpoint : candidates()) {
+      try {
+        Browser browser = endpoint.cdp
+                ? playwright.chromium().connectOverCDP(endpoint.url,
+                new BrowserType.ConnectOverCDPOptions().setTimeout(CONNECT_TIMEOUT_MILLIS))
+                : playwright.chromium().connect(endpoint.url,
+                new BrowserType.ConnectOptions().setTimeout(CONNECT_TIMEOUT_MILLIS));
+        synchronized (this) {
+          endpoint.leases++;
+          endpoint.healthy = true;
+        }
+        // 主动关闭和远程浏览器退出都会触发
+        browser.onDisconnected(disconnected -> release(endpoint));
+        log.info("已连接浏览器 " + endpoint.url);
+        return browser;
+      } catch (PlaywrightException e) {
+        endpoint.healthy = false;
+        log.warn("连接浏览器 " + endpoint.url + " 失败: " + e.getMessage());
+        last = e;
+      }
+    }
+    throw new PlaywrightException("浏览器池中没有可以连接的浏览器", last);
+  }
+
+  /**
+   * 可用的地址按负载从低到高排列，负载相同时轮流；不可用的地址排在最后
+   */
+  private synchronized List<Endpoint> candidates() {
+    List<Endpoint> ordered = new ArrayList<>(endpoints.size());
+    for (int i = 0; i < endpoints.size(); i++) {
+      ordered.add(endpoints.get((next + i) % endpoints.size()));
+    }
+    next = (next + 1) % endpoints.size();
+    // 稳定排序，保持轮询顺序
+    ordered.sort(Comparator.comparing((Endpoint endpoint) -> !endpoint.healthy).thenComparingInt(Endpoint::load));
+    return ordered;
+  }
+
+  private synchronized void release(Endpoint endpoint) {
+    endpoint.leases = Math.max(0, endpoint.leases - 1);
+  }
+
+  /**
+   * 检查所有地址
+   */
+  private void checkAll() {
+    for (Endpoint endpoint : endpoints) {
+      boolean wasHealthy = endpoint.healthy;
+      boolean healthy = check(client, endpoint);
+      endpoint.healthy = healthy;
+      if (wasHealthy && !healthy) {
+        log.warn("浏览器池地址 " + endpoint.url + " 检查失败，暂停使用");
+      } else if (!wasHealthy && healthy) {
+        log.info("浏览器池地址 " + endpoint.url + " 已恢复");
+      }
+    }
+  }
+
+  private static boolean check(HttpClient client, Endpoint endpoint) {
+    if (!endpoint.cdp) {
+      URI uri = URI.create(endpoint.url);
+      int port = uri.getPort() > 0 ? uri.getPort() : ("wss".equalsIgnoreCase(uri.getScheme()) ? 443 : 80);
+      try (Socket socket = new Socket()) {
+        socket.connect(new InetSocketAddress(uri.getHost(), port), (int) PROBE_TIMEOUT.toMillis());
+        return true;
+      } catch (IOException | IllegalArgumentException e) {
+        return false;
+      }
+    }
+    try {
+      VersionInfo version = gson.fromJson(get(client, endpoint.url + "/json/version"), VersionInfo.class);
+      endpoint.version = version != null ? version.Browser : null;
+      Target[] targets = gson.fromJson(get(client, endpoint.url + "/json/list"), Target[].class);
+      int pages = 0;
+      if (targets != null) {
+        for (Target target : targets) {
+          if ("page".equals(target.type)) {
+            pages++;
+          }
+        }
+      }
+      endpoint.pages = pages;
+      return true;
+    } catch (IOException | RuntimeException e) {
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return endpoint.healthy;
+    }
+  }
+
+  /**
+   * 地址是否可用，浏览器池启动工具等待浏览器就绪时使用
+   */
+  static boolean probe(String url) {
+    return check(newClient(), new Endpoint(url));
+  }
+
+  private static HttpClient newClient() {
+    return HttpClient.newBuilder().connectTimeout(PROBE_TIMEOUT).build();
+  }
+
+  private static String get(HttpClient client, String url) throws IOException, InterruptedException {
+    HttpRequest request = HttpRequest.newBuilder(URI.create(url)).timeout(PROBE_TIMEOUT).GET().build();
+    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() != 200) {
+      throw new IOException("HTTP " + response.statusCode());
+    }
+    return response.body();
+  }
+
+  @Override
+  public void close() {
+    if (checker != null) {
+      checker.shutdownNow();
+    }
+  }
+}
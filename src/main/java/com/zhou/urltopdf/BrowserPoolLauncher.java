@@ -0,0 +1,128 @@
+package com.zhou.urltopdf;
+
+import com.microsoft.playwright.Playwright;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 在本机启动一组无头 Chromium 作为浏览器池，供 urltopdf_config.json 中的 browserEndpoints 连接
+ * <p>
+ * 使用 Playwright 安装的 Chromium，每个浏览器监听 127.0.0.1 上的一个远程调试端口，使用独立的临时用户目录。
+ * 浏览器退出后自动重新启动，结束本程序（Ctrl+C）时关闭所有浏览器并删除临时目录。
+ * <p>
+ * 用法：java -cp <classpath> com.zhou.urltopdf.BrowserPoolLauncher [浏览器数] [起始端口]
+ */
+public class BrowserPoolLauncher {
+
+  private static final long READY_TIMEOUT_MILLIS = 30_000;
+  private static final long WATCH_INTERVAL_MILLIS = 5_000;
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int count = args.length > 0 ? Math.max(1, Integer.parseInt(args[0])) : 2;
+    int startPort = args.length > 1 ? Integer.parseInt(args[1]) : 9222;
+
+    String executable;
+    try (Playwright playwright = PlaywrightBootstrap.create(false)) {
+      executable = playwright.chromium().executablePath();
+    }
+    System.out.println("Chromium: " + executable);
+
+    List<Path> dataDirs = new ArrayList<>();
+    List<Process> processes = new ArrayList<>();
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> shutdown(processes, dataDirs)));
+    for (int i = 0; i < count; i++) {
+      dataDirs.add(Files.createTempDirectory("urltopdf-browser-"));
+      processes.add(start(executable, startPort + i, dataDirs.get(i)));
+    }
+
+    List<String> endpoints = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      String endpoint = "http://127.0.0.1:" + (startPort + i);
+      if (!awaitReady(endpoint, processes.get(i))) {
+        System.out.println("浏览器启动失败: " + endpoint);
+        System.exit(1);
+      }
+      endpoints.add(endpoint);
+    }
+    StringBuilder config = new StringBuilder();
+    for (String endpoint : endpoints) {
+      config.append(config.length() == 0 ? "" : ", ").append('"').append(endpoint).append('"');
+    }
+    System.out.println("已启动 " + count + " 个浏览器，在 urltopdf_config.json 中配置：");
+    System.out.println("  \"browserEndpoints\": [" + config + "]");
+    System.out.println("按 Ctrl+C 结束");
+
+    // 浏览器退出后重新启动
+    while (true) {
+      Thread.sleep(WATCH_INTERVAL_MILLIS);
+      for (int i = 0; i < count; i++) {
+        if (!processes.get(i).isAlive()) {
+          System.out.println("浏览器已退出（" + processes.get(i).exitValue() + "），重新启动: " + endpoints.get(i));
+          processes.set(i, start(executable, startPort + i, dataDirs.get(i)));
+          if (!awaitReady(endpoints.get(i), processes.get(i))) {
+            System.out.println("浏览器重新启动失败: " + endpoints.get(i));
+          }
+        }
+      }
+    }
+  }
+
+  private static Process start(String executable, int port, Path dataDir) throws IOException {
+    // 与 Playwright 启动浏览器时的默认参数一致：无头、不使用沙箱
+    ProcessBuilder builder = new ProcessBuilder(executable,
+            "--headless=new",
+            "--no-sandbox",
+            "--remote-debugging-address=127.0.0.1",
+            "--remote-debugging-port=" + port,
+            "--user-data-dir=" + dataDir,
+            "--no-first-run",
+            "--no-default-browser-check",
+            "--disable-dev-shm-usage",
+            "--hide-scrollbars",
+            "--mute-audio",
+            "about:blank");
+    builder.redirectErrorStream(true);
+    builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+    return builder.start();
+  }
+
+  private static boolean awaitReady(String endpoint, Process process) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + READY_TIMEOUT_MILLIS;
+    while (System.currentTimeMillis() < deadline && process.isAlive()) {
+      if (BrowserPool.probe(endpoint)) {
+        return true;
+      }
+      Thread.sleep(200);
+    }
+    return false;
+  }
+
+  private static void shutdown(List<Process> processes, List<Path> dataDirs) {
+    for (Process process : processes) {
+      process.destroy();
+    }
+    for (Process process : processes) {
+      try {
+        if (!process.waitFor(5, TimeUnit.SECONDS)) {
+          process.destroyForcibly();
+        }
+      } catch (InterruptedException e) {
+        process.destroyForcibly();
+      }
+    }
+    for (Path dir : dataDirs) {
+      try (Stream<Path> paths = Files.walk(dir)) {
+        paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+      } catch (IOException e) {
+        // 浏览器可能仍在写入
+      }
+    }
+  }
+}
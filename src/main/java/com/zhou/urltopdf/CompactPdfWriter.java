@@ -0,0 +1,451 @@
+package com.zhou.urltopdf;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNull;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfwriter.COSWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 紧凑的PDF写出器：把非流对象打包进压缩的对象流，并用交叉引用流代替传统的 xref 表（PDF 1.5+）
+ * <p>
+ * PDFBox 2.0 的 COSWriter 只能写传统格式，每个字典都是一个未压缩的间接对象，外加每个对象20字节的 xref 条目。
+ * Chromium 生成的PDF有成千上万个小对象，这部分开销相当可观。
+ * 写出时对象重新编号；流数据按原样复制，不重新编码。只被引用一次的字典和数组直接内联。
+ * 写出时顺带估算这些对象按传统格式写出的字节数，得到结构压缩节省的字节数，不需要再序列化一次；
+ * 也可以用传统格式完整写出一次得到精确值（基准测试使用）。加密文档不支持，应使用 PDDocument.save。
+ */
+class CompactPdfWriter {
+
+  // 每个对象流最多容纳的对象数
+  private static final int OBJECTS_PER_STREAM = 100;
+
+  private final PDDocument document;
+  private final boolean objectStreams;
+
+  // 需要写成间接对象的字典/数组/流及其新编号
+  private final Map<COSBase, Integer> numbers = new IdentityHashMap<>();
+  private final List<COSBase> objects = new ArrayList<>();
+  // 打包进对象流的对象按传统格式写出时的字节数（间接对象外壳、内容和 xref 表条目）减去对象流和交叉引用流的实际字节数
+  private long structureSavedBytes;
+
+  private CompactPdfWriter(PDDocument document, boolean objectStreams) {
+    this.document = document;
+    this.objectStreams = objectStreams;
+  }
+
+  /**
+   * 使用对象流和交叉引用流写出文档
+   *
+   * @param stats 不为 null 时记录估算的结构压缩节省字节数
+   * @return 写出的字节数
+   */
+  static long write(PDDocument document, File outputFile, CompressionStats stats) throws IOException {
+    CompactPdfWriter writer = new CompactPdfWriter(document, true);
+    long size;
+    try (OutputStream out = new FileOutputStream(outputFile)) {
+      size = writer.write(out);
+    }
+    if (stats != null) {
+      stats.structureSavedBytes = writer.structureSavedBytes;
+    }
+    return size;
+  }
+
+  /**
+   * 计算以传统 xref 表格式写出时的字节数（不写文件）
+   */
+  static long measureClassic(PDDocument document) throws IOException {
+    return new CompactPdfWriter(document, false).write(OutputStream.nullOutputStream());
+  }
+
+  private long write(OutputStream target) throws IOException {
+    COSDictionary trailer = document.getDocument().getTrailer();
+    COSBase root = resolve(trailer.getItem(COSName.ROOT));
+    COSBase info = resolve(trailer.getItem(COSName.INFO));
+    assignNumbers(root, info);
+
+    CountingOutputStream out = new CountingOutputStream(new BufferedOutputStream(target, 64 * 1024));
+    float version = Math.max(document.getVersion(), objectStreams ? 1.5f : 1.4f);
+    ascii(out, String.format(Locale.ROOT, "%%PDF-%.1f\n", version));
+    // 二进制注释，提示传输工具按二进制处理
+    out.write(new byte[]{'%', (byte) 0xE2, (byte) 0xE3, (byte) 0xCF, (byte) 0xD3, '\n'});
+
+    int size = objects.size() + 1;
+    long[] offsets = new long[size + 1];
+    // 对象流编号及对象在流中的下标，0表示不在对象流中
+    int[] containers = new int[size + 1];
+    int[] indexes = new int[size + 1];
+
+    List<Integer> pending = new ArrayList<>();
+    for (int i = 0; i < objects.size(); i++) {
+      int number = i + 1;
+      COSBase object = objects.get(i);
+      if (object instanceof COSStream || !objectStreams) {
+        offsets[number] = out.getCount();
+        writeIndirect(out, number, object);
+      } else {
+        pending.add(number);
+      }
+    }
+
+    // 非流对象打包进对象流，对象流本身接在已有对象之后编号
+    int nextNumber = size;
+    long packedStart = out.getCount();
+    long classicBytes = 0;
+    List<long[]> streamOffsets = new ArrayList<>();
+    for (int start = 0; start < pending.size(); start += OBJECTS_PER_STREAM) {
+      List<Integer> chunk = pending.subList(start, Math.min(pending.size(), start + OBJECTS_PER_STREAM));
+      int streamNumber = nextNumber++;
+      ByteArrayOutputStream header = new ByteArrayOutputStream();
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      for (int i = 0; i < chunk.size(); i++) {
+        int number = chunk.get(i);
+        ascii(header, number + " " + body.size() + " ");
+        int objectStart = body.size();
+        writeObject(body, objects.get(number - 1), true);
+        // 传统格式：“N 0 obj\n”+内容+“\nendobj\n”，外加20字节的 xref 条目
+        classicBytes += String.valueOf(number).length() + 7 + (body.size() - objectStart) + 8 + 20;
+        body.write('\n');
+        containers[number] = streamNumber;
+        indexes[number] = i;
+      }
+      byte[] data = deflate(header.toByteArray(), body.toByteArray());
+      streamOffsets.add(new long[]{streamNumber, out.getCount()});
+      ascii(out, streamNumber + " 0 obj\n<</Type/ObjStm/N " + chunk.size() + "/First " + header.size()
+              + "/Filter/FlateDecode/Length " + data.length + ">>stream\n");
+      out.write(data);
+      ascii(out, "\nendstream\nendobj\n");
+    }
+
+    COSArray id = documentId(trailer);
+    if (objectStreams) {
+      writeXrefStream(out, nextNumber, offsets, containers, indexes, streamOffsets, root, info, id);
+      // 其余对象两种格式相同，xref 表中流对象的条目和表头另算；两种尾部字典的共同部分相互抵消
+      classicBytes += 20L * (size - pending.size()) + ("xref\n0 " + size + "\n").length();
+      structureSavedBytes = classicBytes - (out.getCount() - packedStart);
+    } else {
+      writeXrefTable(out, size, offsets, root, info, id);
+    }
+    out.flush();
+    return out.getCount();
+  }
+
+  /**
+   * 统计引用次数并决定哪些对象写成间接对象，按广度优先顺序编号
+   */
+  private void assignNumbers(COSBase root, COSBase info) {
+    Map<COSBase, Integer> references = new IdentityHashMap<>();
+    Map<COSBase, Boolean> indirect = new IdentityHashMap<>();
+    Deque<COSBase> pending = new ArrayDeque<>();
+    pending.add(root);
+    indirect.put(root, true);
+    if (info != null) {
+      pending.add(info);
+      indirect.put(info, true);
+    }
+    List<COSBase> order = new ArrayList<>();
+    while (!pending.isEmpty()) {
+      COSBase base = pending.poll();
+      if (references.merge(base, 1, Integer::sum) > 1) {
+        continue;
+      }
+      order.add(base);
+      for (COSBase child : children(base)) {
+        COSBase value = resolve(child);
+        if (!(value instanceof COSDictionary || value instanceof COSArray)) {
+          continue;
+        }
+        if (child instanceof COSObject || value instanceof COSStream || isStructural(value)) {
+          indirect.put(value, true);
+        }
+        if (references.containsKey(value)) {
+          references.merge(value, 1, Integer::sum);
+        } else {
+          pending.add(value);
+        }
+      }
+    }
+    for (COSBase base : order) {
+      // 被多处引用的对象必须是间接对象，这也保证了内联时不会出现循环
+      if (indirect.containsKey(base) || references.get(base) > 1) {
+        objects.add(base);
+        numbers.put(base, objects.size());
+      }
+    }
+  }
+
+  private static boolean isStructural(COSBase value) {
+    if (!(value instanceof COSDictionary)) {
+      return false;
+    }
+    COSName type = ((COSDictionary) value).getCOSName(COSName.TYPE);
+    return COSName.PAGE.equals(type) || COSName.PAGES.equals(type) || COSName.CATALOG.equals(type);
+  }
+
+  private static Iterable<COSBase> children(COSBase base) {
+    if (base instanceof COSDictionary) {
+      return ((COSDictionary) base).getValues();
+    }
+    if (base instanceof COSArray) {
+      return (COSArray) base;
+    }
+    return new ArrayList<>();
+  }
+
+  private static COSBase resolve(COSBase base) {
+    return base instanceof COSObject ? ((COSObject) base).getObject() : base;
+  }
+
+  private void writeIndirect(OutputStream out, int number, COSBase object) throws IOException {
+    ascii(out, number + " 0 obj\n");
+    if (object instanceof COSStream) {
+      writeStream(out, (COSStream) object);
+    } else {
+      writeObject(out, object, true);
+    }
+    ascii(out, "\nendobj\n");
+  }
+
+  /**
+   * 写出流对象：字典中的 Length 改为实际长度，数据按原样复制
+   */
+  private void writeStream(OutputStream out, COSStream stream) throws IOException {
+    ByteArrayOutputStream data = new ByteArrayOutputStream((int) Math.max(0, Math.min(stream.getLength(), 1 << 20)));
+    try (InputStream in = stream.createRawInputStream()) {
+      in.transferTo(data);
+    }
+    out.write('<');
+    out.write('<');
+    for (Map.Entry<COSName, COSBase> entry : stream.entrySet()) {
+      if (COSName.LENGTH.equals(entry.getKey())) {
+        continue;
+      }
+      writeEntry(out, entry.getKey(), entry.getValue());
+    }
+    ascii(out, "/Length " + data.size() + ">>stream\n");
+    data.writeTo(out);
+    ascii(out, "\nendstream");
+  }
+
+  /**
+   * 写出对象的内容；top 为 true 表示正在写间接对象本身，否则间接对象写成引用
+   */
+  private void writeObject(OutputStream out, COSBase base, boolean top) throws IOException {
+    COSBase value = resolve(base);
+    Integer number = numbers.get(value);
+    if (!top && number != null) {
+      ascii(out, number + " 0 R");
+      return;
+    }
+    if (value == null || value instanceof COSNull) {
+      ascii(out, "null");
+    } else if (value instanceof COSDictionary) {
+      out.write('<');
+      out.write('<');
+      for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) value).entrySet()) {
+        writeEntry(out, entry.getKey(), entry.getValue());
+      }
+      out.write('>');
+      out.write('>');
+    } else if (value instanceof COSArray) {
+      out.write('[');
+      boolean first = true;
+      for (COSBase item : (COSArray) value) {
+        if (!first && !startsWithDelimiter(item)) {
+          out.write(' ');
+        }
+        writeObject(out, item, false);
+        first = false;
+      }
+      out.write(']');
+    } else if (value instanceof COSName) {
+      ((COSName) value).writePDF(out);
+    } else if (value instanceof COSString) {
+      COSWriter.writeString((COSString) value, out);
+    } else if (value instanceof COSInteger) {
+      ((COSInteger) value).writePDF(out);
+    } else if (value instanceof COSFloat) {
+      ((COSFloat) value).writePDF(out);
+    } else if (value instanceof COSBoolean) {
+      ((COSBoolean) value).writePDF(out);
+    } else {
+      ascii(out, "null");
+    }
+  }
+
+  private void writeEntry(OutputStream out, COSName key, COSBase value) throws IOException {
+    key.writePDF(out);
+    if (!startsWithDelimiter(value)) {
+      out.write(' ');
+    }
+    writeObject(out, value, false);
+  }
+
+  /**
+   * 值是否以分隔符开头（名称、字符串、字典、数组），是则前面不需要空格
+   */
+  private boolean startsWithDelimiter(COSBase base) {
+    COSBase value = resolve(base);
+    if (numbers.containsKey(value)) {
+      return false;
+    }
+    return value instanceof COSName || value instanceof COSString
+            || value instanceof COSDictionary || value instanceof COSArray;
+  }
+
+  private void writeXrefStream(CountingOutputStream out, int streamNumber, long[] offsets, int[] containers,
+                               int[] indexes, List<long[]> streamOffsets, COSBase root, COSBase info,
+                               COSArray id) throws IOException {
+    int size = streamNumber + 1;
+    long xrefOffset = out.getCount();
+    int offsetBytes = xrefOffset > 0xFFFFFFFFL ? 8 : 4;
+    ByteArrayOutputStream entries = new ByteArrayOutputStream(size * (offsetBytes + 3));
+    // 0号对象：空闲链表头
+    writeEntry(entries, 0, 0, offsetBytes, 0xFFFF);
+    for (int number = 1; number < offsets.length - 1; number++) {
+      if (containers[number] != 0) {
+        writeEntry(entries, 2, containers[number], offsetBytes, indexes[number]);
+      } else {
+        writeEntry(entries, 1, offsets[number], offsetBytes, 0);
+      }
+    }
+    for (long[] stream : streamOffsets) {
+      writeEntry(entries, 1, stream[1], offsetBytes, 0);
+    }
+    writeEntry(entries, 1, xrefOffset, offsetBytes, 0);
+
+    byte[] data = deflate(entries.toByteArray());
+    ascii(out, streamNumber + " 0 obj\n<</Type/XRef/Size " + size + "/W[1 " + offsetBytes + " 2]");
+    writeTrailerEntries(out, root, info, id);
+    ascii(out, "/Filter/FlateDecode/Length " + data.length + ">>stream\n");
+    out.write(data);
+    ascii(out, "\nendstream\nendobj\nstartxref\n" + xrefOffset + "\n%%EOF\n");
+  }
+
+  private static void writeEntry(ByteArrayOutputStream out, int type, long field2, int field2Bytes, int field3) {
+    out.write(type);
+    for (int shift = (field2Bytes - 1) * 8; shift >= 0; shift -= 8) {
+      out.write((int) (field2 >>> shift));
+    }
+    out.write(field3 >>> 8);
+    out.write(field3);
+  }
+
+  private void writeXrefTable(CountingOutputStream out, int size, long[] offsets, COSBase root, COSBase info,
+                              COSArray id) throws IOException {
+    long xrefOffset = out.getCount();
+    StringBuilder table = new StringBuilder("xref\n0 " + size + "\n0000000000 65535 f\r\n");
+    for (int number = 1; number < size; number++) {
+      table.append(String.format(Locale.ROOT, "%010d 00000 n\r\n", offsets[number]));
+    }
+    ascii(out, table.toString());
+    ascii(out, "trailer\n<</Size " + size);
+    writeTrailerEntries(out, root, info, id);
+    ascii(out, ">>\nstartxref\n" + xrefOffset + "\n%%EOF\n");
+  }
+
+  private void writeTrailerEntries(OutputStream out, COSBase root, COSBase info, COSArray id) throws IOException {
+    ascii(out, "/Root " + numbers.get(root) + " 0 R");
+    if (info != null) {
+      ascii(out, "/Info " + numbers.get(info) + " 0 R");
+    }
+    ascii(out, "/ID");
+    writeObject(out, id, true);
+  }
+
+  /**
+   * 沿用原文档的 /ID，没有时按文档内容生成
+   */
+  private COSArray documentId(COSDictionary trailer) throws IOException {
+    COSBase existing = resolve(trailer.getItem(COSName.ID));
+    if (existing instanceof COSArray && ((COSArray) existing).size() == 2) {
+      return (COSArray) existing;
+    }
+    try {
+      MessageDigest md5 = MessageDigest.getInstance("MD5");
+      md5.update(Long.toString(System.currentTimeMillis()).getBytes(StandardCharsets.US_ASCII));
+      md5.update(Integer.toString(objects.size()).getBytes(StandardCharsets.US_ASCII));
+      byte[] digest = md5.digest();
+      COSArray id = new COSArray();
+      id.add(new COSString(digest));
+      id.add(new COSString(digest));
+      return id;
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static byte[] deflate(byte[]... parts) throws IOException {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+    try (DeflaterOutputStream out = new DeflaterOutputStream(buffer, deflater)) {
+      for (byte[] part : parts) {
+        out.write(part);
+      }
+    } finally {
+      deflater.end();
+    }
+    return buffer.toByteArray();
+  }
+
+  static void ascii(OutputStream out, String text) throws IOException {
+    out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  /**
+   * 记录已写出字节数（即当前偏移）的输出流
+   */
+  static class CountingOutputStream extends FilterOutputStream {
+    private long count;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+    long getCount() {
+      return count;
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package com.zhou.urltopdf;
+
+/**
+ * 单个PDF文件压缩过程中的图片统计信息
+ */
+public class CompressionStats {
+
+  // 各类图片的数量，按 ImageClassifier.ImageKind 顺序
+  final int[] kindCounts = new int[ImageClassifier.ImageKind.values().length];
+
+  // 预检查判定无法再压缩、未解码直接跳过的图片数
+  int skippedImages;
+  // 重新编码后没有变小、保留原图的图片数
+  int keptImages;
+  // 重新编码后变小、已替换的图片数
+  int replacedImages;
+  // 替换图片节省的字节数
+  long savedBytes;
+
+  // 解码时直接降采样的图片数
+  int subsampledImages;
+  // 逐行分条处理的超大图片数
+  int stripImages;
+  // 已解码图片的原始像素总数和实际解码出的像素总数
+  long sourcePixels;
+  long decodedPixels;
+
+  // 对象流+交叉引用流相对传统 xref 表格式节省的字节数（与图片无关的纯结构压缩），默认为写出时的估算值
+  long structureSavedBytes;
+
+  // 各阶段累计耗时（纳秒）
+  long decodeNanos;
+  long resizeNanos;
+  long encodeNanos;
+
+  public int getKindCount(ImageClassifier.ImageKind kind) {
+    return kindCounts[kind.ordinal()];
+  }
+
+  public int getSkippedImages() {
+    return skippedImages;
+  }
+
+  public int getKeptImages() {
+    return keptImages;
+  }
+
+  public int getReplacedImages() {
+    return replacedImages;
+  }
+
+  public long getSavedBytes() {
+    return savedBytes;
+  }
+
+  public int getSubsampledImages() {
+    return subsampledImages;
+  }
+
+  public int getStripImages() {
+    return stripImages;
+  }
+
+  public long getSourcePixels() {
+    return sourcePixels;
+  }
+
+  public long getDecodedPixels() {
+    return decodedPixels;
+  }
+
+  public long getStructureSavedBytes() {
+    return structureSavedBytes;
+  }
+
+  public long getDecodeMillis() {
+    return decodeNanos / 1_000_000;
+  }
+
+  public long getResizeMillis() {
+    return resizeNanos / 1_000_000;
+  }
+
+  public long getEncodeMillis() {
+    return encodeNanos / 1_000_000;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("图片分类：二值%d张，索引色%d张，照片%d张；跳过%d张，保留原图%d张，替换%d张，节省%.2f KB；"
+                    + "降采样解码%d张，分条处理%d张（解码%.1f/%.1f百万像素）；解码%d毫秒，缩放%d毫秒，编码%d毫秒",
+            getKindCount(ImageClassifier.ImageKind.BILEVEL),
+            getKindCount(ImageClassifier.ImageKind.INDEXED),
+            getKindCount(ImageClassifier.ImageKind.PHOTO),
+            skippedImages, keptImages, replacedImages, savedBytes / 1024.0,
+            subsampledImages, stripImages, decodedPixels / 1e6, sourcePixels / 1e6,
+            getDecodeMillis(), getResizeMillis(), getEncodeMillis());
+  }
+}
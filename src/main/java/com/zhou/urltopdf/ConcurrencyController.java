@@ -0,0 +1,341 @@
+package com.zhou.urltopdf;
+
+import com.google.gson.Gson;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按 AIMD（加性增、乘性减）自动调整同时进行的渲染或压缩数量
+ * <p>
+ * 每完成若干个任务做一次决定：JVM 老年代（GC 后）使用率过高、系统可用内存不足、浏览器内存超过预算、CPU 满载，
+ * 或平均耗时超过基准（观察到的最低值）的 2 倍时，并发数乘以 0.7；都没有时，如果并发槽位已被用满、耗时不超过基准的 1.5 倍、
+ * 且吞吐量比少一个槽位时有明显提高，并发数加 1。吞吐量不再随并发数增加时说明已经到达拐点，并发数减 1 并保持。
+ * 增加渲染槽位前还要求可用内存足够再启动一个浏览器（按当前每个浏览器的平均常驻内存估算）。
+ * <p>
+ * 每次决定写入 urltopdf_concurrency.jsonl，并发数变化时同时输出日志。
+ */
+@Slf4j
+class ConcurrencyController {
+
+  private static final Gson gson = new Gson();
+
+  private static final double DECREASE_FACTOR = 0.7;
+  private static final double LATENCY_HIGH = 2.0;
+  private static final double LATENCY_OK = 1.5;
+  private static final double THROUGHPUT_GAIN = 1.05;
+  private static final double HEAP_HIGH = 0.85;
+  private static final double MEMORY_LOW = 0.1;
+  private static final double CPU_HIGH = 0.95;
+  // 两次决定之间的最短间隔
+  private static final long MIN_INTERVAL_MILLIS = 2000;
+  // 基准耗时每次决定放宽的比例，页面整体变重后基准随之上升
+  private static final double BASELINE_DECAY = 1.02;
+
+  /**
+   * 资源使用情况的一次采样
+   */
+  static class Snapshot {
+    // 老年代（GC 后）使用率，取不到时为整个堆的使用率
+    double heapFraction;
+    // 系统可用内存和总内存（字节），不支持时为 -1
+    long availableMemory = -1;
+    long totalMemory = -1;
+    // 浏览器进程常驻内存之和（字节），不统计或不支持时为 -1
+    long browserRss = -1;
+    // 系统 CPU 使用率（0~1），不支持时为 -1
+    double cpuLoad = -1;
+
+    static Snapshot take(boolean browser) {
+      Snapshot snapshot = new Snapshot();
+      snapshot.heapFraction = heapFraction();
+      OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+      if (os instanceof com.sun.management.OperatingSystemMXBean) {
+        com.sun.management.OperatingSystemMXBean bean = (com.sun.management.OperatingSystemMXBean) os;
+        snapshot.cpuLoad = bean.getCpuLoad();
+        snapshot.totalMemory = bean.getTotalMemorySize();
+        snapshot.availableMemory = bean.getFreeMemorySize();
+      }
+      // Linux 上空闲内存不含可回收的页缓存，用 MemAvailable
+      long available = memAvailable();
+      if (available >= 0) {
+        snapshot.availableMemory = available;
+      }
+      if (browser) {
+        snapshot.browserRss = BrowserMemory.rssBytes();
+      }
+      return snapshot;
+    }
+
+    private static double heapFraction() {
+      double fraction = -1;
+      for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+        MemoryUsage usage = pool.getCollectionUsage();
+        if (pool.getType() == MemoryType.HEAP && usage != null && usage.getMax() > 0) {
+          fraction = Math.max(fraction, usage.getUsed() / (double) usage.getMax());
+        }
+      }
+      if (fraction < 0) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        fraction = heap.getMax() > 0 ? heap.getUsed() / (double) heap.getMax() : 0;
+      }
+      return fraction;
+    }
+
+    private static long memAvailable() {
+      Path meminfo = Paths.get("/proc/meminfo");
+      if (!Files.isReadable(meminfo)) {
+        return -1;
+      }
+      try {
+        List<String> lines = Files.readAllLines(meminfo);
+        for (String line : lines) {
+          if (line.startsWith("MemAvailable:")) {
+            return Long.parseLong(line.substring(13).trim().split("\\s+")[0]) * 1024;
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        // 按不支持处理
+      }
+      return -1;
+    }
+  }
+
+  /**
+   * 一次决定，写入指标文件
+   */
+  static class Decision {
+    String name;
+    long time;
+    int from;
+    int to;
+    String action;
+    String reason;
+    int samples;
+    double latency;
+    double baseline;
+    double throughput;
+    double heap;
+    long availableMb;
+    long browserMb;
+    double cpu;
+  }
+
+  private final String name;
+  private final int max;
+  // 是否统计浏览器内存（渲染槽位）
+  private final boolean browser;
+  // 浏览器内存预算（字节），0 表示不限
+  private final long browserBudget;
+  // 指标文件，为 null 时只输出日志
+  private final Path metricsFile;
+
+  private int limit;
+  private int active;
+  // 本轮的样本
+  private long windowStart = System.currentTimeMillis();
+  private int samples;
+  private double latencySum;
+  private double unitSum;
+  private int peakActive;
+  private double baseline = -1;
+  // 各并发数下最近一次测得的吞吐量
+  private final Map<Integer, Double> throughputByLimit = new HashMap<>();
+
+  /**
+   * @param name          用于日志和指标的名称
+   * @param initial       初始并发数
+   * @param max           并发数上限
+   * @param browser       是否为渲染槽位（统计浏览器内存）
+   * @param browserBudget 浏览器内存预算（字节），0 表示不限
+   * @param metricsFile   指标文件，可以为 null
+   */
+  ConcurrencyController(String name, int initial, int max, boolean browser, long browserBudget, Path metricsFile) {
+    this.name = name;
+    this.max = Math.max(1, max);
+    this.limit = Math.max(1, Math.min(this.max, initial));
+    this.browser = browser;
+    this.browserBudget = browserBudget;
+    this.metricsFile = metricsFile;
+  }
+
+  synchronized int getLimit() {
+    return limit;
+  }
+
+  /**
+   * 还可以开始的任务数
+   */
+  synchronized int available() {
+    return Math.max(0, limit - active);
+  }
+
+  synchronized int getActive() {
+    return active;
+  }
+
+  /**
+   * 等待空闲槽位并占用
+   */
+  synchronized void acquire() throws InterruptedException {
+    while (active >= limit) {
+      wait();
+    }
+    active++;
+    peakActive = Math.max(peakActive, active);
+  }
+
+  /**
+   * 释放槽位并记录本次任务的耗时
+   *
+   * @param millis 任务耗时
+   * @param units  任务的工作量（文章数、MB 等），耗时按单位工作量比较
+   */
+  synchronized void release(long millis, double units) {
+    active--;
+    units = Math.max(units, 1e-3);
+    samples++;
+    latencySum += millis / units;
+    unitSum += units;
+    long now = System.currentTimeMillis();
+    if (samples >= Math.max(3, limit) && now - windowStart >= MIN_INTERVAL_MILLIS) {
+      decide(now);
+    }
+    notifyAll();
+  }
+
+  /**
+   * 出现内存溢出等严重问题时立即减少并发
+   */
+  synchronized void backOff(String reason) {
+    int from = limit;
+    limit = Math.max(1, (int) (limit * DECREASE_FACTOR));
+    Decision decision = new Decision();
+    decision.action = limit < from ? "减少" : "保持";
+    decision.reason = reason;
+    record(decision, from, Snapshot.take(browser), System.currentTimeMillis());
+    resetWindow(System.currentTimeMillis());
+  }
+
+  private void decide(long now) {
+    double latency = latencySum / samples;
+    double throughput = unitSum * 60_000.0 / Math.max(1, now - windowStart);
+    baseline = baseline < 0 ? latency : Math.min(baseline * BASELINE_DECAY, latency);
+    Snapshot snapshot = Snapshot.take(browser);
+
+    String pressure = null;
+    if (snapshot.heapFraction > HEAP_HIGH) {
+      pressure = "堆内存使用率过高";
+    } else if (snapshot.availableMemory >= 0 && snapshot.totalMemory > 0
+            && snapshot.availableMemory < snapshot.totalMemory * MEMORY_LOW) {
+      pressure = "系统可用内存不足";
+    } else if (browserBudget > 0 && snapshot.browserRss > browserBudget) {
+      pressure = "浏览器内存超过预算";
+    } else if (snapshot.cpuLoad > CPU_HIGH) {
+      pressure = "CPU满载";
+    } else if (latency > baseline * LATENCY_HIGH) {
+      pressure = "耗时超过基准的" + LATENCY_HIGH + "倍";
+    }
+
+    int from = limit;
+    Decision decision = new Decision();
+    // 只有槽位用满时吞吐量才能反映并发数的效果
+    boolean saturated = peakActive >= limit;
+    Double previous = throughputByLimit.get(limit - 1);
+    if (saturated) {
+      throughputByLimit.put(limit, throughput);
+    }
+    if (pressure != null) {
+      limit = Math.max(1, (int) (limit * DECREASE_FACTOR));
+      decision.reason = pressure;
+    } else if (saturated && previous != null && throughput < previous) {
+      // 增加并发后吞吐量反而下降，已越过拐点
+      limit = Math.max(1, limit - 1);
+      decision.reason = "吞吐量低于并发数为" + (from - 1) + "时";
+    } else if (limit < max && saturated && latency <= baseline * LATENCY_OK
+            && (previous == null || throughput >= previous * THROUGHPUT_GAIN)) {
+      String room = roomForBrowser(snapshot);
+      if (room == null) {
+        limit++;
+        decision.reason = "槽位已用满且耗时正常";
+      } else {
+        decision.reason = room;
+      }
+    } else {
+      decision.reason = !saturated ? "槽位未用满" : limit >= max ? "已达上限" : "耗时或吞吐量没有改善";
+    }
+    decision.action = limit > from ? "增加" : limit < from ? "减少" : "保持";
+    decision.samples = samples;
+    decision.latency = latency;
+    decision.baseline = baseline;
+    decision.throughput = throughput;
+    record(decision, from, snapshot, now);
+    resetWindow(now);
+  }
+
+  /**
+   * 可用内存是否足够再启动一个浏览器，不够时返回原因
+   */
+  private String roomForBrowser(Snapshot snapshot) {
+    if (!browser || snapshot.browserRss <= 0) {
+      return null;
+    }
+    long perBrowser = snapshot.browserRss / Math.max(1, limit);
+    if (snapshot.availableMemory >= 0 && snapshot.availableMemory < perBrowser * 2) {
+      return "可用内存不足以再启动一个浏览器";
+    }
+    if (browserBudget > 0 && snapshot.browserRss + perBrowser > browserBudget) {
+      return "再启动一个浏览器将超过内存预算";
+    }
+    return null;
+  }
+
+  private void resetWindow(long now) {
+    windowStart = now;
+    samples = 0;
+    latencySum = 0;
+    unitSum = 0;
+    peakActive = active;
+  }
+
+  private void record(Decision decision, int from, Snapshot snapshot, long now) {
+    decision.name = name;
+    decision.time = now;
+    decision.from = from;
+    decision.to = limit;
+    decision.heap = snapshot.heapFraction;
+    decision.availableMb = snapshot.availableMemory < 0 ? -1 : snapshot.availableMemory / 1024 / 1024;
+    decision.browserMb = snapshot.browserRss < 0 ? -1 : snapshot.browserRss / 1024 / 1024;
+    decision.cpu = snapshot.cpuLoad;
+    String message = String.format("并发控制[%s]：%d → %d（%s，%s）耗时 %.0f ms（基准 %.0f），吞吐 %.2f/分钟，"
+                    + "老年代 %.0f%%，可用内存 %d MB，浏览器 %d MB，CPU %.0f%%",
+            name, from, limit, decision.action, decision.reason, decision.latency, decision.baseline,
+            decision.throughput, decision.heap * 100, decision.availableMb, decision.browserMb, decision.cpu * 100);
+    if (limit != from) {
+      log.info(message);
+    } else {
+      log.debug(message);
+    }
+    if (metricsFile != null) {
+      try {
+        Files.writeString(metricsFile, gson.toJson(decision) + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+      } catch (IOException e) {
+        log.debug("写入并发控制指标失败: " + metricsFile, e);
+      }
+    }
+  }
+}
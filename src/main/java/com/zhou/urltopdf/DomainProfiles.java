@@ -0,0 +1,319 @@
+package com.zhou.urltopdf;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 按域名记录的渲染画像，跨运行保存，渲染时自动应用
+ * <p>
+ * 每次渲染记录：加载完成时是否仍有请求未结束、加载后网络空闲所需的时间、滚动时是否触发了懒加载、请求过哪些类型的资源、
+ * 是否失败以及PDF大小。
+ * 据此决定同一域名之后的渲染方式：
+ * <ul>
+ *   <li>连续多次滚动都没有触发懒加载的域名不再滚动（每 10 次仍滚动一次以便发现变化）</li>
+ *   <li>默认不等待网络空闲（与不使用画像时相同）；多数渲染在加载完成时仍有请求未结束的域名才等待，
+ *   超时按该域名通常的空闲时间设置；从不空闲的页面（长轮询等）不再等待</li>
+ *   <li>域名用到的音视频、字幕、事件流、manifest 请求先试屏蔽一次，PDF大小与平均值相差不大时确认可以安全屏蔽</li>
+ * </ul>
+ * 画像保存在 urltopdf_profiles.json 中，多个进程共用时以最后保存的为准。
+ */
+@Slf4j
+class DomainProfiles {
+
+  // 可尝试屏蔽的资源类型，打印结果通常不依赖它们
+  static final List<String> BLOCK_CANDIDATES = Arrays.asList("media", "texttrack", "eventsource", "manifest");
+
+  // 需要等待网络空闲、但尚未测得空闲时间的域名使用的超时
+  static final long LEARNING_SETTLE_MILLIS = 3000;
+  private static final long MAX_SETTLE_MILLIS = 10_000;
+  // 判断不需要滚动、从不空闲所需的观察次数
+  private static final int MIN_SAMPLES = 3;
+  private static final int RESCROLL_INTERVAL = 10;
+  private static final double BLOCK_SIZE_TOLERANCE = 0.2;
+  private static final int MAX_PROFILES = 5000;
+  private static final int SAVE_INTERVAL = 20;
+
+  private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+  private static final Type PROFILE_MAP_TYPE = new TypeToken<Map<String, Profile>>() {
+  }.getType();
+
+  /**
+   * 一个域名的画像
+   */
+  static class Profile {
+    int renders;
+    int failures;
+    // 滚动观察次数及其中触发懒加载的次数
+    int scrollSamples;
+    int lazyLoads;
+    // 观察加载完成时请求状态的次数，以及其中仍有请求未结束的次数
+    int loadSamples;
+    int busyAfterLoad;
+    // 加载完成到网络空闲的时间（指数移动平均），-1 表示尚未测量
+    long settleMillis = -1;
+    int settleSamples;
+    int idleTimeouts;
+    // PDF平均大小（指数移动平均，只统计未屏蔽资源的渲染）
+    long avgPdfBytes;
+    // 单次渲染耗时（指数移动平均，失败也计入），-1 表示尚未测量
+    long renderMillis = -1;
+    Set<String> resourceTypes = new TreeSet<>();
+    // 屏蔽可选资源是否安全，null 表示尚未试验
+    Boolean blockSafe;
+    long lastUsed;
+  }
+
+  /**
+   * 根据画像决定的渲染方式
+   */
+  static class Plan {
+    final boolean scroll;
+    // 等待网络空闲的超时，0 表示不等待
+    final long settleTimeout;
+    final Set<String> blockedTypes;
+    // 本次是否为屏蔽试验
+    final boolean blockTrial;
+
+    Plan(boolean scroll, long settleTimeout, Set<String> blockedTypes, boolean blockTrial) {
+      this.scroll = scroll;
+      this.settleTimeout = settleTimeout;
+      this.blockedTypes = blockedTypes;
+      this.blockTrial = blockTrial;
+    }
+
+    static Plan defaults() {
+      return new Plan(true, 0, new TreeSet<>(), false);
+    }
+  }
+
+  /**
+   * 一次成功渲染的观察结果
+   */
+  static class Observation {
+    // 加载完成时是否仍有请求未结束
+    boolean busyAfterLoad;
+    // 网络空闲等待耗时，-1 表示未等待
+    long settleMillis = -1;
+    boolean idleTimedOut;
+    boolean scrolled;
+    boolean lazyLoad;
+    long pdfBytes;
+    long renderMillis;
+    Set<String> resourceTypes = new TreeSet<>();
+  }
+
+  private final Path file;
+  private final Map<String, Profile> profiles;
+  private int unsaved;
+
+  private DomainProfiles(Path file, Map<String, Profile> profiles) {
+    this.file = file;
+    this.profiles = profiles;
+  }
+
+  /**
+   * 读取画像文件，不存在或读取失败时从空画像开始
+   */
+  static DomainProfiles load(Path file) {
+    Map<String, Profile> profiles = null;
+    try {
+      if (Files.exists(file)) {
+        profiles = gson.fromJson(Files.readString(file, StandardCharsets.UTF_8), PROFILE_MAP_TYPE);
+      }
+    } catch (Exception e) {
+      log.warn("读取站点画像失败，重新学习: " + file, e);
+    }
+    return new DomainProfiles(file, profiles != null ? new HashMap<>(profiles) : new HashMap<>());
+  }
+
+  /**
+   * 链接的域名（去掉 www.），不是 http/https 链接时返回 null
+   */
+  static String hostOf(String link) {
+    try {
+      URI uri = URI.create(link.trim());
+      String host = uri.getHost();
+      String scheme = uri.getScheme();
+      if (host == null || scheme == null || !scheme.toLowerCase(Locale.ROOT).startsWith("http")) {
+        return null;
+      }
+      host = host.toLowerCase(Locale.ROOT);
+      return host.startsWith("www.") ? host.substring(4) : host;
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * 按画像决定本次的渲染方式
+   */
+  synchronized Plan plan(String host) {
+    Profile profile = profiles.get(host);
+    if (profile == null) {
+      return new Plan(true, 0, new TreeSet<>(), false);
+    }
+
+    boolean scroll = profile.scrollSamples < MIN_SAMPLES || profile.lazyLoads > 0
+            || profile.renders % RESCROLL_INTERVAL == 0;
+
+    long settleTimeout;
+    if (profile.loadSamples < MIN_SAMPLES || profile.busyAfterLoad * 2 <= profile.loadSamples) {
+      // 加载完成时通常已没有未结束的请求，或观察次数不足：不等待
+      settleTimeout = 0;
+    } else if (profile.settleSamples >= MIN_SAMPLES && profile.idleTimeouts * 2 > profile.settleSamples) {
+      // 大多数时候等不到网络空闲
+      settleTimeout = 0;
+    } else if (profile.settleMillis < 0) {
+      settleTimeout = LEARNING_SETTLE_MILLIS;
+    } else {
+      settleTimeout = Math.min(MAX_SETTLE_MILLIS, profile.settleMillis * 2 + 500);
+    }
+
+    Set<String> blocked = new TreeSet<>(profile.resourceTypes);
+    blocked.retainAll(BLOCK_CANDIDATES);
+    boolean trial = false;
+    if (profile.blockSafe == null) {
+      int successes = profile.renders - profile.failures;
+      // 只在稳定的域名上试验
+      trial = !blocked.isEmpty() && successes >= MIN_SAMPLES && profile.failures * 4 < profile.renders;
+      if (!trial) {
+        blocked.clear();
+      }
+    } else if (!profile.blockSafe) {
+      blocked.clear();
+    }
+    return new Plan(scroll, settleTimeout, blocked, trial);
+  }
+
+  /**
+   * 记录一次成功的渲染
+   */
+  synchronized void recordSuccess(String host, Plan plan, Observation observation) {
+    Profile profile = profiles.computeIfAbsent(host, key -> new Profile());
+    profile.renders++;
+    profile.lastUsed = System.currentTimeMillis();
+    profile.resourceTypes.addAll(observation.resourceTypes);
+    profile.renderMillis = ewma(profile.renderMillis, observation.renderMillis);
+    profile.loadSamples++;
+    if (observation.busyAfterLoad) {
+      profile.busyAfterLoad++;
+    }
+    if (observation.scrolled) {
+      profile.scrollSamples++;
+      if (observation.lazyLoad) {
+        profile.lazyLoads++;
+      }
+    }
+    if (observation.settleMillis >= 0) {
+      profile.settleSamples++;
+      if (observation.idleTimedOut) {
+        profile.idleTimeouts++;
+      } else {
+        profile.settleMillis = ewma(profile.settleMillis, observation.settleMillis);
+      }
+    }
+    if (plan.blockTrial) {
+      // 屏蔽后PDF大小与平均值相差不大，认为这些资源不影响打印结果
+      long diff = Math.abs(observation.pdfBytes - profile.avgPdfBytes);
+      profile.blockSafe = profile.avgPdfBytes > 0 && diff <= profile.avgPdfBytes * BLOCK_SIZE_TOLERANCE;
+      log.info(String.format("站点画像 %s：屏蔽%s试验%s（PDF %.1f KB，平均 %.1f KB）", host, plan.blockedTypes,
+              profile.blockSafe ? "通过" : "未通过", observation.pdfBytes / 1024.0, profile.avgPdfBytes / 1024.0));
+    } else if (plan.blockedTypes.isEmpty()) {
+      profile.avgPdfBytes = ewma(profile.avgPdfBytes <= 0 ? -1 : profile.avgPdfBytes, observation.pdfBytes);
+    }
+    maybeSave();
+  }
+
+  /**
+   * 记录一次失败；屏蔽试验中失败视为不能屏蔽
+   *
+   * @param elapsedMillis 失败前花费的时间，计入该域名的渲染耗时
+   */
+  synchronized void recordFailure(String host, Plan plan, long elapsedMillis) {
+    Profile profile = profiles.computeIfAbsent(host, key -> new Profile());
+    profile.renders++;
+    profile.failures++;
+    profile.renderMillis = ewma(profile.renderMillis, elapsedMillis);
+    profile.lastUsed = System.currentTimeMillis();
+    if (plan.blockTrial) {
+      profile.blockSafe = false;
+    }
+    maybeSave();
+  }
+
+  /**
+   * 该域名预计的渲染耗时；没有记录耗时的旧画像按PDF平均大小和所有域名的平均每字节耗时估算，都没有时返回 -1
+   */
+  synchronized long expectedMillis(String host) {
+    Profile profile = profiles.get(host);
+    if (profile == null) {
+      return -1;
+    }
+    if (profile.renderMillis >= 0) {
+      return profile.renderMillis;
+    }
+    if (profile.avgPdfBytes > 0) {
+      double millis = 0;
+      double bytes = 0;
+      for (Profile other : profiles.values()) {
+        if (other.renderMillis >= 0 && other.avgPdfBytes > 0) {
+          millis += other.renderMillis;
+          bytes += other.avgPdfBytes;
+        }
+      }
+      if (bytes > 0) {
+        return Math.round(profile.avgPdfBytes * millis / bytes);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * 保存画像，只保留最近使用的 MAX_PROFILES 个域名
+   */
+  synchronized void save() {
+    if (profiles.size() > MAX_PROFILES) {
+      List<Map.Entry<String, Profile>> entries = new ArrayList<>(profiles.entrySet());
+      entries.sort(Comparator.comparingLong((Map.Entry<String, Profile> entry) -> entry.getValue().lastUsed).reversed());
+      for (Map.Entry<String, Profile> entry : entries.subList(MAX_PROFILES, entries.size())) {
+        profiles.remove(entry.getKey());
+      }
+    }
+    try {
+      Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+      Files.writeString(temp, gson.toJson(profiles, PROFILE_MAP_TYPE), StandardCharsets.UTF_8);
+      Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      unsaved = 0;
+    } catch (Exception e) {
+      log.warn("保存站点画像失败: " + file, e);
+    }
+  }
+
+  private void maybeSave() {
+    if (++unsaved >= SAVE_INTERVAL) {
+      save();
+    }
+  }
+
+  private static long ewma(long average, long sample) {
+    return average < 0 ? sample : Math.round(average * 0.7 + sample * 0.3);
+  }
+}
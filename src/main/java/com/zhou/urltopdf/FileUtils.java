@@ -8,6 +8,12 @@ import java.io.File;
 public class FileUtils {
   public static final String JSON_FILE_PATH = "/urltopdf/urltopdf.json";
   public static final String ERROR_JSON_FILE_PATH = "/urltopdf/urltopdf_error.json";
+  public static final String CONFIG_FILE_PATH = "/urltopdf/urltopdf_config.json";
+  public static final String PREFLIGHT_JSON_FILE_PATH = "/urltopdf/urltopdf_preflight.json";
+  public static final String PROFILES_FILE_PATH = "/urltopdf/urltopdf_profiles.json";
+  public static final String TRACE_FILE_PATH = "/urltopdf/urltopdf_trace.jsonl";
+  public static final String QUEUE_DIR_PATH = "/urltopdf/queue";
+  public static final String CONCURRENCY_FILE_PATH = "/urltopdf/urltopdf_concurrency.jsonl";
 
   public static String getDesktopPath() {
     String desktopPath = System.getProperty("user.home") + File.separator + "Desktop";
@@ -0,0 +1,437 @@
+package com.zhou.urltopdf;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorProcessor;
+import org.apache.pdfbox.contentstream.operator.state.Concatenate;
+import org.apache.pdfbox.contentstream.operator.state.Restore;
+import org.apache.pdfbox.contentstream.operator.state.Save;
+import org.apache.pdfbox.contentstream.operator.state.SetMatrix;
+import org.apache.pdfbox.contentstream.operator.text.BeginText;
+import org.apache.pdfbox.contentstream.operator.text.EndText;
+import org.apache.pdfbox.contentstream.operator.text.MoveText;
+import org.apache.pdfbox.contentstream.operator.text.MoveTextSetLeading;
+import org.apache.pdfbox.contentstream.operator.text.NextLine;
+import org.apache.pdfbox.contentstream.operator.text.SetCharSpacing;
+import org.apache.pdfbox.contentstream.operator.text.SetFontAndSize;
+import org.apache.pdfbox.contentstream.operator.text.SetTextHorizontalScaling;
+import org.apache.pdfbox.contentstream.operator.text.SetTextLeading;
+import org.apache.pdfbox.contentstream.operator.text.SetTextRenderingMode;
+import org.apache.pdfbox.contentstream.operator.text.SetTextRise;
+import org.apache.pdfbox.contentstream.operator.text.SetWordSpacing;
+import org.apache.pdfbox.contentstream.operator.text.ShowText;
+import org.apache.pdfbox.contentstream.operator.text.ShowTextAdjusted;
+import org.apache.pdfbox.contentstream.operator.text.ShowTextLine;
+import org.apache.pdfbox.contentstream.operator.text.ShowTextLineAndSpace;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.font.PDCIDFont;
+import org.apache.pdfbox.pdmodel.font.PDCIDFontType2;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDFontDescriptor;
+import org.apache.pdfbox.pdmodel.font.PDType0Font;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDTransparencyGroup;
+import org.apache.pdfbox.util.Matrix;
+import org.apache.pdfbox.util.Vector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 字体优化：移除未引用的字体资源、合并重复的字体程序、对嵌入的 TrueType CID 字体重新子集化
+ * <p>
+ * 先解析所有页面（含嵌套表单）的内容流，记录每个资源字典中通过 Tf 使用的字体名称，以及每个字体程序实际显示过的字形。
+ * 内容流没有被完整解析过的资源字典（解析出错、图案、软蒙版、注释外观、表单域默认资源等）视为不安全，
+ * 其中的字体不删除，引用到的字体程序也不做子集化，保证不会丢失字形。
+ */
+@Slf4j
+class FontOptimizer {
+
+  private static final COSName[] FONT_FILE_KEYS = {COSName.FONT_FILE, COSName.FONT_FILE2, COSName.FONT_FILE3};
+
+  // 已完整解析的内容流所属对象（页面字典或表单流）
+  private final Set<COSDictionary> walkedOwners = Collections.newSetFromMap(new IdentityHashMap<>());
+  // 已完整解析的内容流使用的资源字典
+  private final Set<COSDictionary> walkedResources = Collections.newSetFromMap(new IdentityHashMap<>());
+  // 解析出错的页面资源字典
+  private final Set<COSDictionary> failedResources = Collections.newSetFromMap(new IdentityHashMap<>());
+  // 每个资源字典中通过 Tf 使用过的字体名称
+  private final Map<COSDictionary, Set<COSName>> usedFontNames = new IdentityHashMap<>();
+  // 每个 TrueType 字体程序实际显示过的字形编号
+  private final Map<COSStream, Set<Integer>> usedGlyphs = new IdentityHashMap<>();
+
+  private int removedFonts;
+  private int dedupedPrograms;
+  private int subsetPrograms;
+  private long savedBytes;
+
+  private FontOptimizer() {
+  }
+
+  /**
+   * 优化文档中的字体
+   */
+  static void optimize(PDDocument document) throws IOException {
+    long start = System.currentTimeMillis();
+    FontOptimizer optimizer = new FontOptimizer();
+    optimizer.collectUsage(document);
+
+    // 遍历整个对象图，找出所有资源字典、字体描述符和不安全的资源字典
+    Set<COSDictionary> resourcesWithFonts = Collections.newSetFromMap(new IdentityHashMap<>());
+    Set<COSDictionary> descriptors = Collections.newSetFromMap(new IdentityHashMap<>());
+    Set<COSDictionary> unsafeResources = Collections.newSetFromMap(new IdentityHashMap<>());
+    unsafeResources.addAll(optimizer.failedResources);
+    optimizer.scanObjects(document.getDocument().getTrailer(), resourcesWithFonts, descriptors, unsafeResources);
+
+    Set<COSDictionary> safeResources = Collections.newSetFromMap(new IdentityHashMap<>());
+    safeResources.addAll(optimizer.walkedResources);
+    safeResources.removeAll(unsafeResources);
+
+    // 不能子集化的字体程序：被不安全的资源字典引用，或被 CIDFontType2 以外的字体使用
+    Set<COSStream> unsafePrograms = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (COSDictionary resources : resourcesWithFonts) {
+      COSDictionary fonts = resources.getCOSDictionary(COSName.FONT);
+      for (COSName name : fonts.keySet()) {
+        COSBase font = fonts.getDictionaryObject(name);
+        if (font instanceof COSDictionary) {
+          optimizer.markUnsafePrograms((COSDictionary) font, !safeResources.contains(resources), unsafePrograms);
+        }
+      }
+    }
+
+    optimizer.removeUnusedFonts(safeResources);
+
+    // 移除未使用字体后重新收集仍被引用的字体描述符，只合并和子集化实际会写出的字体程序
+    descriptors.clear();
+    optimizer.scanObjects(document.getDocument().getTrailer(), Collections.newSetFromMap(new IdentityHashMap<>()),
+            descriptors, Collections.newSetFromMap(new IdentityHashMap<>()));
+    optimizer.dedupePrograms(descriptors, unsafePrograms);
+    optimizer.subsetPrograms(unsafePrograms);
+
+    log.info(String.format("字体优化：移除未使用字体%d个，合并重复字体程序%d个，子集化字体%d个，节省%.2f KB，耗时%d毫秒",
+            optimizer.removedFonts, optimizer.dedupedPrograms, optimizer.subsetPrograms,
+            optimizer.savedBytes / 1024.0, System.currentTimeMillis() - start));
+  }
+
+  /**
+   * 解析所有页面的内容流，记录字体和字形的使用情况
+   */
+  private void collectUsage(PDDocument document) {
+    UsageEngine engine = new UsageEngine();
+    for (PDPage page : document.getPages()) {
+      PDResources resources = page.getResources();
+      try {
+        engine.processPage(page);
+        walkedOwners.add(page.getCOSObject());
+        if (resources != null) {
+          walkedResources.add(resources.getCOSObject());
+        }
+      } catch (Exception e) {
+        // 解析出错的页面不清楚用到了哪些字体，其资源全部保留
+        log.debug("解析页面字体使用情况时出错: ", e);
+        if (resources != null) {
+          failedResources.add(resources.getCOSObject());
+        }
+      }
+    }
+  }
+
+  /**
+   * 遍历对象图
+   */
+  private void scanObjects(COSDictionary root, Set<COSDictionary> resourcesWithFonts,
+                           Set<COSDictionary> descriptors, Set<COSDictionary> unsafeResources) {
+    Set<COSBase> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+    Deque<COSBase> pending = new ArrayDeque<>();
+    pending.push(root);
+    while (!pending.isEmpty()) {
+      COSBase base = pending.pop();
+      if (base instanceof COSObject) {
+        base = ((COSObject) base).getObject();
+      }
+      if (base == null || !visited.add(base)) {
+        continue;
+      }
+      if (base instanceof COSArray) {
+        for (COSBase item : (COSArray) base) {
+          pending.push(item);
+        }
+      } else if (base instanceof COSDictionary) {
+        COSDictionary dict = (COSDictionary) base;
+        if (dict.getDictionaryObject(COSName.FONT) instanceof COSDictionary) {
+          resourcesWithFonts.add(dict);
+        }
+        if (COSName.FONT_DESC.equals(dict.getCOSName(COSName.TYPE))) {
+          descriptors.add(dict);
+        }
+        // 资源字典的使用者（表单、图案、Type3字体、注释外观等）没有被解析过，该资源字典不安全
+        COSBase resources = dict.getDictionaryObject(COSName.RESOURCES);
+        if (resources instanceof COSDictionary && !walkedOwners.contains(dict)
+                && !COSName.PAGES.equals(dict.getCOSName(COSName.TYPE))) {
+          unsafeResources.add((COSDictionary) resources);
+        }
+        for (COSBase value : dict.getValues()) {
+          pending.push(value);
+        }
+      }
+    }
+  }
+
+  /**
+   * 记录字体引用的字体程序中不能子集化的部分
+   */
+  private void markUnsafePrograms(COSDictionary font, boolean unsafeReference, Set<COSStream> unsafePrograms) {
+    boolean subsettable = false;
+    List<COSDictionary> fonts = new ArrayList<>();
+    fonts.add(font);
+    if (COSName.TYPE0.equals(font.getCOSName(COSName.SUBTYPE))) {
+      COSBase descendants = font.getDictionaryObject(COSName.DESCENDANT_FONTS);
+      if (descendants instanceof COSArray && ((COSArray) descendants).size() > 0
+              && ((COSArray) descendants).getObject(0) instanceof COSDictionary) {
+        COSDictionary descendant = (COSDictionary) ((COSArray) descendants).getObject(0);
+        fonts.add(descendant);
+        subsettable = COSName.CID_FONT_TYPE2.equals(descendant.getCOSName(COSName.SUBTYPE));
+      }
+    }
+    if (subsettable && !unsafeReference) {
+      return;
+    }
+    for (COSDictionary dict : fonts) {
+      COSBase descriptor = dict.getDictionaryObject(COSName.FONT_DESC);
+      if (descriptor instanceof COSDictionary) {
+        for (COSName key : FONT_FILE_KEYS) {
+          COSBase program = ((COSDictionary) descriptor).getDictionaryObject(key);
+          if (program instanceof COSStream) {
+            unsafePrograms.add((COSStream) program);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * 合并内容完全相同的字体程序，所有字体描述符引用同一个流
+   */
+  private void dedupePrograms(Set<COSDictionary> descriptors, Set<COSStream> unsafePrograms) throws IOException {
+    Map<String, COSBase> canonical = new HashMap<>();
+    Map<COSBase, COSStream> canonicalStreams = new IdentityHashMap<>();
+    for (COSDictionary descriptor : descriptors) {
+      for (COSName key : FONT_FILE_KEYS) {
+        COSBase item = descriptor.getItem(key);
+        COSBase program = item instanceof COSObject ? ((COSObject) item).getObject() : item;
+        if (!(program instanceof COSStream)) {
+          continue;
+        }
+        COSStream stream = (COSStream) program;
+        String digest = key.getName() + ":" + digest(stream);
+        COSBase existing = canonical.putIfAbsent(digest, item);
+        if (existing == null) {
+          canonicalStreams.put(item, stream);
+          continue;
+        }
+        COSStream target = canonicalStreams.get(existing);
+        if (target == stream) {
+          continue;
+        }
+        descriptor.setItem(key, existing);
+        dedupedPrograms++;
+        savedBytes += stream.getLength();
+        // 合并后的字体程序需要保留两边用到的字形
+        Set<Integer> glyphs = usedGlyphs.remove(stream);
+        if (glyphs != null) {
+          usedGlyphs.computeIfAbsent(target, k -> new HashSet<>()).addAll(glyphs);
+        }
+        if (unsafePrograms.contains(stream)) {
+          unsafePrograms.add(target);
+        }
+      }
+    }
+  }
+
+  /**
+   * 从已完整解析的资源字典中移除没有被 Tf 使用过的字体
+   */
+  private void removeUnusedFonts(Set<COSDictionary> safeResources) {
+    for (COSDictionary resources : safeResources) {
+      COSDictionary fonts = resources.getCOSDictionary(COSName.FONT);
+      if (fonts == null) {
+        continue;
+      }
+      Set<COSName> used = usedFontNames.getOrDefault(resources, Collections.emptySet());
+      for (COSName name : new ArrayList<>(fonts.keySet())) {
+        if (!used.contains(name)) {
+          fonts.removeItem(name);
+          removedFonts++;
+        }
+      }
+    }
+  }
+
+  /**
+   * 对可以安全处理的 TrueType 字体程序重新子集化，只保留实际显示过的字形
+   */
+  private void subsetPrograms(Set<COSStream> unsafePrograms) {
+    for (Map.Entry<COSStream, Set<Integer>> entry : usedGlyphs.entrySet()) {
+      COSStream program = entry.getKey();
+      if (unsafePrograms.contains(program)) {
+        continue;
+      }
+      try {
+        byte[] original = new PDStream(program).toByteArray();
+        byte[] subset = TrueTypeSubsetter.subset(original, entry.getValue());
+        if (subset == null) {
+          continue;
+        }
+        long originalLength = program.getLength();
+        try (OutputStream out = program.createOutputStream(COSName.FLATE_DECODE)) {
+          out.write(subset);
+        }
+        program.setInt(COSName.LENGTH1, subset.length);
+        subsetPrograms++;
+        savedBytes += originalLength - program.getLength();
+      } catch (IOException e) {
+        log.debug("字体子集化时出错: ", e);
+      }
+    }
+  }
+
+  private static String digest(COSStream stream) throws IOException {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      try (InputStream in = stream.createRawInputStream()) {
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+          md.update(buffer, 0, n);
+        }
+      }
+      // 过滤器不同时原始字节相同也不是同一个字体
+      COSBase filter = stream.getDictionaryObject(COSName.FILTER);
+      md.update(String.valueOf(filter).getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder();
+      for (byte b : md.digest()) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * 记录字体和字形使用情况的内容流解析器
+   */
+  private class UsageEngine extends PDFStreamEngine {
+
+    UsageEngine() {
+      addOperator(new Concatenate());
+      addOperator(new Restore());
+      addOperator(new Save());
+      addOperator(new SetMatrix());
+      addOperator(new BeginText());
+      addOperator(new EndText());
+      addOperator(new ShowText());
+      addOperator(new ShowTextAdjusted());
+      addOperator(new ShowTextLine());
+      addOperator(new ShowTextLineAndSpace());
+      addOperator(new MoveText());
+      addOperator(new MoveTextSetLeading());
+      addOperator(new NextLine());
+      addOperator(new SetCharSpacing());
+      addOperator(new SetFontAndSize() {
+        @Override
+        public void process(Operator operator, List<COSBase> arguments) throws IOException {
+          super.process(operator, arguments);
+          if (!arguments.isEmpty() && arguments.get(0) instanceof COSName && getResources() != null) {
+            COSDictionary resources = getResources().getCOSObject();
+            usedFontNames.computeIfAbsent(resources, k -> new HashSet<>()).add((COSName) arguments.get(0));
+            if (getGraphicsState().getTextState().getFont() == null) {
+              // 字体无法加载时不知道显示了哪些字形，该资源字典中的字体都不做处理
+              failedResources.add(resources);
+            }
+          }
+        }
+      });
+      addOperator(new SetTextHorizontalScaling());
+      addOperator(new SetTextLeading());
+      addOperator(new SetTextRenderingMode());
+      addOperator(new SetTextRise());
+      addOperator(new SetWordSpacing());
+      addOperator(new DrawObject());
+    }
+
+    @Override
+    protected void showGlyph(Matrix textRenderingMatrix, PDFont font, int code, Vector displacement)
+            throws IOException {
+      if (!(font instanceof PDType0Font)) {
+        return;
+      }
+      PDCIDFont descendant = ((PDType0Font) font).getDescendantFont();
+      if (!(descendant instanceof PDCIDFontType2)) {
+        return;
+      }
+      PDFontDescriptor descriptor = descendant.getFontDescriptor();
+      if (descriptor == null || descriptor.getFontFile2() == null) {
+        return;
+      }
+      usedGlyphs.computeIfAbsent(descriptor.getFontFile2().getCOSObject(), k -> new HashSet<>())
+              .add(((PDCIDFontType2) descendant).codeToGID(code));
+    }
+
+    /**
+     * Do 操作符：递归解析表单，完整解析后记录
+     */
+    private class DrawObject extends OperatorProcessor {
+      @Override
+      public void process(Operator operator, List<COSBase> operands) throws IOException {
+        if (operands.isEmpty() || !(operands.get(0) instanceof COSName) || getResources() == null) {
+          return;
+        }
+        PDXObject xObject = getResources().getXObject((COSName) operands.get(0));
+        if (!(xObject instanceof PDFormXObject)) {
+          return;
+        }
+        PDFormXObject form = (PDFormXObject) xObject;
+        if (form instanceof PDTransparencyGroup) {
+          showTransparencyGroup((PDTransparencyGroup) form);
+        } else {
+          showForm(form);
+        }
+        walkedOwners.add(form.getCOSObject());
+        if (form.getResources() != null) {
+          walkedResources.add(form.getResources().getCOSObject());
+        }
+      }
+
+      @Override
+      public String getName() {
+        return "Do";
+      }
+    }
+  }
+}
@@ -0,0 +1,205 @@
+package com.zhou.urltopdf;
+
+import lombok.Getter;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 图片内容分类器
+ * <p>
+ * 通过稀疏采样像素估算颜色数量、边缘密度和连续色调（照片）特征，
+ * 为每张图片选择最省空间且不影响可读性的编码方式：
+ * 文字截图走二值(CCITT)编码，图标/图表/界面截图走索引色PNG，照片走JPEG。
+ */
+public class ImageClassifier {
+
+  // 每个方向最多采样的点数，采样总量约为 96 * 96，与图片大小无关
+  private static final int MAX_SAMPLES_PER_AXIS = 96;
+  // 调色板最大颜色数（索引色PNG）
+  public static final int MAX_PALETTE_SIZE = 256;
+  // 统计颜色时最多跟踪的颜色数，超过即认为是连续色调图像
+  private static final int MAX_TRACKED_COLORS = 4096;
+
+  // 相邻像素亮度差超过该值视为边缘（文字、线条）
+  private static final int EDGE_THRESHOLD = 64;
+  // 相邻像素亮度差在 (0, SMOOTH_THRESHOLD] 之间视为平滑渐变（照片特征）
+  private static final int SMOOTH_THRESHOLD = 24;
+  // RGB三通道最大差值不超过该值视为灰色
+  private static final int GRAY_TOLERANCE = 8;
+
+  public enum ImageKind {
+    BILEVEL,  // 黑白二值图像（文字截图、线稿），使用CCITT G4编码
+    INDEXED,  // 少量颜色图像（图标、图表、界面截图），使用索引色PNG编码
+    PHOTO     // 连续色调图像（照片），使用JPEG编码
+  }
+
+  /**
+   * 分类结果
+   */
+  @Getter
+  public static class Classification {
+    private final ImageKind kind;
+    // 采样得到的颜色数（达到上限时为 MAX_TRACKED_COLORS）
+    private final int colorCount;
+    // 边缘像素对占比
+    private final double edgeDensity;
+    // 平滑渐变像素对占比
+    private final double smoothRatio;
+    // 灰色像素占比
+    private final double grayRatio;
+    // 接近纯黑/纯白的像素占比
+    private final double extremeRatio;
+    // 按出现频率排序的调色板（仅INDEXED有效）
+    private final int[] palette;
+
+    Classification(ImageKind kind, int colorCount, double edgeDensity, double smoothRatio,
+                   double grayRatio, double extremeRatio, int[] palette) {
+      this.kind = kind;
+      this.colorCount = colorCount;
+      this.edgeDensity = edgeDensity;
+      this.smoothRatio = smoothRatio;
+      this.grayRatio = grayRatio;
+      this.extremeRatio = extremeRatio;
+      this.palette = palette;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s(颜色≈%d, 边缘%.2f, 渐变%.2f, 灰色%.2f, 黑白%.2f)",
+              kind, colorCount, edgeDensity, smoothRatio, grayRatio, extremeRatio);
+    }
+  }
+
+  /**
+   * 对图片进行分类
+   *
+   * @param image 原始图像
+   * @return 分类结果
+   */
+  public static Classification classify(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int stepX = Math.max(1, width / MAX_SAMPLES_PER_AXIS);
+    int stepY = Math.max(1, height / MAX_SAMPLES_PER_AXIS);
+
+    Map<Integer, Integer> colorCounts = new HashMap<>();
+    boolean colorsSaturated = false;
+    int samples = 0;
+    int graySamples = 0;
+    int extremeSamples = 0;
+    int pairs = 0;
+    int edgePairs = 0;
+    int smoothPairs = 0;
+
+    for (int y = 0; y < height; y += stepY) {
+      for (int x = 0; x < width; x += stepX) {
+        int rgb = image.getRGB(x, y) & 0xFFFFFF;
+        samples++;
+
+        if (!colorsSaturated) {
+          colorCounts.merge(rgb, 1, Integer::sum);
+          colorsSaturated = colorCounts.size() >= MAX_TRACKED_COLORS;
+        }
+
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        if (Math.max(r, Math.max(g, b)) - Math.min(r, Math.min(g, b)) <= GRAY_TOLERANCE) {
+          graySamples++;
+        }
+        int luma = luminance(rgb);
+        if (luma < 48 || luma > 208) {
+          extremeSamples++;
+        }
+
+        // 与右侧、下方相邻像素比较，估算边缘密度和平滑渐变比例
+        if (x + 1 < width) {
+          int diff = Math.abs(luma - luminance(image.getRGB(x + 1, y)));
+          pairs++;
+          if (diff > EDGE_THRESHOLD) {
+            edgePairs++;
+          } else if (diff > 0 && diff <= SMOOTH_THRESHOLD) {
+            smoothPairs++;
+          }
+        }
+        if (y + 1 < height) {
+          int diff = Math.abs(luma - luminance(image.getRGB(x, y + 1)));
+          pairs++;
+          if (diff > EDGE_THRESHOLD) {
+            edgePairs++;
+          } else if (diff > 0 && diff <= SMOOTH_THRESHOLD) {
+            smoothPairs++;
+          }
+        }
+      }
+    }
+
+    int colorCount = colorsSaturated ? MAX_TRACKED_COLORS : colorCounts.size();
+    double grayRatio = samples == 0 ? 1 : (double) graySamples / samples;
+    double extremeRatio = samples == 0 ? 1 : (double) extremeSamples / samples;
+    double edgeDensity = pairs == 0 ? 0 : (double) edgePairs / pairs;
+    double smoothRatio = pairs == 0 ? 0 : (double) smoothPairs / pairs;
+
+    ImageKind kind;
+    if (grayRatio >= 0.98 && extremeRatio >= 0.97) {
+      // 几乎只有黑白两色：文字截图、线稿（彩色的双色图片按索引色处理）
+      kind = ImageKind.BILEVEL;
+    } else if (colorCount <= MAX_PALETTE_SIZE && smoothRatio < 0.5) {
+      // 颜色很少：图标、图表、纯色块
+      kind = ImageKind.INDEXED;
+    } else if (edgeDensity >= 0.06 && smoothRatio < 0.35 && paletteCoverage(colorCounts, samples) >= 0.9) {
+      // 锐利边缘多、渐变少且大部分像素集中在少数颜色：带抗锯齿文字的界面截图。
+      // 有损：调色板取采样中最常见的颜色，其余颜色（抗锯齿边缘等）映射到最接近的调色板颜色
+      kind = ImageKind.INDEXED;
+    } else {
+      kind = ImageKind.PHOTO;
+    }
+
+    int[] palette = kind == ImageKind.INDEXED ? buildPalette(colorCounts) : null;
+    return new Classification(kind, colorCount, edgeDensity, smoothRatio, grayRatio, extremeRatio, palette);
+  }
+
+  /**
+   * 按出现频率选取最多 MAX_PALETTE_SIZE 种颜色作为调色板（popularity 量化）
+   */
+  private static int[] buildPalette(Map<Integer, Integer> colorCounts) {
+    List<Map.Entry<Integer, Integer>> entries = new ArrayList<>(colorCounts.entrySet());
+    entries.sort((a, b) -> Integer.compare(b.getValue(), a.getValue()));
+    int size = Math.min(MAX_PALETTE_SIZE, entries.size());
+    int[] palette = new int[size];
+    for (int i = 0; i < size; i++) {
+      palette[i] = entries.get(i).getKey();
+    }
+    return palette;
+  }
+
+  /**
+   * 出现频率最高的 MAX_PALETTE_SIZE 种颜色覆盖的采样比例（颜色数超过跟踪上限时只统计已跟踪的颜色，结果偏低）
+   */
+  private static double paletteCoverage(Map<Integer, Integer> colorCounts, int samples) {
+    if (samples == 0) {
+      return 1;
+    }
+    List<Integer> counts = new ArrayList<>(colorCounts.values());
+    counts.sort((a, b) -> Integer.compare(b, a));
+    long covered = 0;
+    for (int i = 0; i < Math.min(MAX_PALETTE_SIZE, counts.size()); i++) {
+      covered += counts.get(i);
+    }
+    return (double) covered / samples;
+  }
+
+  /**
+   * 计算亮度（luminance 公式）
+   */
+  private static int luminance(int rgb) {
+    int r = (rgb >> 16) & 0xFF;
+    int g = (rgb >> 8) & 0xFF;
+    int b = rgb & 0xFF;
+    return (int) (0.299 * r + 0.587 * g + 0.114 * b);
+  }
+}
@@ -0,0 +1,191 @@
+package com.zhou.urltopdf;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStreamImpl;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 线程内复用的图片编码器
+ * <p>
+ * 每个线程按格式缓存一个 ImageWriter 及其写入参数，并复用一块可增长的输出缓冲区，
+ * 避免每张图片都查找编码器服务、创建输出流和缓冲区。缓冲区容量参考上一张图片的编码大小，
+ * 长期远大于实际需要时会收缩，避免一张超大图片之后一直占用内存。
+ */
+class ImageEncoderPool {
+
+  private static final ThreadLocal<ImageEncoderPool> POOL = ThreadLocal.withInitial(ImageEncoderPool::new);
+
+  // 是否启用复用，关闭时每次都创建新的编码器和缓冲区（用于基准测试对比）
+  private static volatile boolean enabled = true;
+
+  private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+  // 缓冲区超过该大小且远大于上一张图片时收缩
+  private static final int SHRINK_THRESHOLD = 8 * 1024 * 1024;
+
+  private final Map<String, ImageWriter> writers = new HashMap<>();
+  private final Map<String, ImageWriteParam> params = new HashMap<>();
+  private final ByteArrayImageOutputStream output = new ByteArrayImageOutputStream(INITIAL_BUFFER_SIZE);
+
+  /**
+   * 获取当前线程的编码器
+   */
+  static ImageEncoderPool get() {
+    return enabled ? POOL.get() : new ImageEncoderPool();
+  }
+
+  static void setEnabled(boolean enabled) {
+    ImageEncoderPool.enabled = enabled;
+  }
+
+  static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * 将图像编码为指定格式
+   *
+   * @param image   图像
+   * @param format  格式名，如 jpg、png
+   * @param quality 压缩质量，小于0时使用编码器默认设置
+   * @return 编码后的字节
+   */
+  byte[] encode(BufferedImage image, String format, float quality) throws IOException {
+    ImageWriter writer = writer(format);
+    ImageWriteParam param = params.get(format);
+    if (quality >= 0 && param.canWriteCompressed()) {
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(quality);
+    } else if (param.canWriteCompressed()) {
+      param.setCompressionMode(ImageWriteParam.MODE_DEFAULT);
+    }
+
+    output.clear();
+    try {
+      writer.setOutput(output);
+      writer.write(null, new IIOImage(image, null, null), param);
+      output.flush();
+      return output.toByteArray();
+    } finally {
+      writer.setOutput(null);
+      output.trim();
+      if (!enabled) {
+        writer.dispose();
+      }
+    }
+  }
+
+  private ImageWriter writer(String format) throws IOException {
+    ImageWriter writer = writers.get(format);
+    if (writer == null) {
+      Iterator<ImageWriter> iterator = ImageIO.getImageWritersByFormatName(format);
+      if (!iterator.hasNext()) {
+        throw new IOException("不支持的图片格式: " + format);
+      }
+      writer = iterator.next();
+      writers.put(format, writer);
+      params.put(format, writer.getDefaultWriteParam());
+    }
+    return writer;
+  }
+
+  /**
+   * 基于可增长字节数组的 ImageOutputStream，支持编码器回写（如PNG块长度）
+   */
+  private static class ByteArrayImageOutputStream extends ImageOutputStreamImpl {
+    private byte[] buffer;
+    private int length;
+    // 上一次编码的输出大小，用于决定是否收缩缓冲区
+    private int lastLength;
+
+    ByteArrayImageOutputStream(int initialSize) {
+      this.buffer = new byte[initialSize];
+    }
+
+    void clear() {
+      length = 0;
+      streamPos = 0;
+      flushedPos = 0;
+      bitOffset = 0;
+    }
+
+    byte[] toByteArray() {
+      lastLength = length;
+      return Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * 缓冲区远大于上一张图片的编码大小时收缩到其两倍
+     */
+    void trim() {
+      if (buffer.length > SHRINK_THRESHOLD && buffer.length > lastLength * 4) {
+        buffer = new byte[Math.max(INITIAL_BUFFER_SIZE, lastLength * 2)];
+      }
+    }
+
+    private void ensureCapacity(long required) {
+      if (required > buffer.length) {
+        long newSize = Math.max(required, (long) buffer.length * 2);
+        if (newSize > Integer.MAX_VALUE - 8) {
+          newSize = Integer.MAX_VALUE - 8;
+        }
+        buffer = Arrays.copyOf(buffer, (int) newSize);
+      }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      flushBits();
+      ensureCapacity(streamPos + 1);
+      buffer[(int) streamPos++] = (byte) b;
+      length = (int) Math.max(length, streamPos);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      flushBits();
+      ensureCapacity(streamPos + len);
+      System.arraycopy(b, off, buffer, (int) streamPos, len);
+      streamPos += len;
+      length = (int) Math.max(length, streamPos);
+    }
+
+    @Override
+    public int read() throws IOException {
+      bitOffset = 0;
+      if (streamPos >= length) {
+        return -1;
+      }
+      return buffer[(int) streamPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      bitOffset = 0;
+      if (streamPos >= length) {
+        return -1;
+      }
+      int n = (int) Math.min(len, length - streamPos);
+      System.arraycopy(buffer, (int) streamPos, b, off, n);
+      streamPos += n;
+      return n;
+    }
+
+    @Override
+    public long length() {
+      return length;
+    }
+
+    @Override
+    public void close() {
+      // 缓冲区由线程复用，不真正关闭
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package com.zhou.urltopdf;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.contentstream.PDFStreamEngine;
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorProcessor;
+import org.apache.pdfbox.contentstream.operator.state.Concatenate;
+import org.apache.pdfbox.contentstream.operator.state.Restore;
+import org.apache.pdfbox.contentstream.operator.state.Save;
+import org.apache.pdfbox.contentstream.operator.state.SetGraphicsStateParameters;
+import org.apache.pdfbox.contentstream.operator.state.SetMatrix;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDTransparencyGroup;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.util.Matrix;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 通过解析内容流收集图片的实际绘制位置
+ * <p>
+ * 跟踪每个 Do 操作符执行时的当前变换矩阵(CTM)，得到图片在页面上的实际绘制尺寸，
+ * 并递归进入 Form XObject（Chromium 生成的PDF中大量图片位于表单内），
+ * 这样页面顶层资源之外的图片也能被处理，且按真实绘制尺寸计算有效DPI。
+ */
+@Slf4j
+class ImagePlacementCollector extends PDFStreamEngine {
+
+  private final List<PDFCompressor.ImagePlacement> placements = new ArrayList<>();
+
+  private ImagePlacementCollector() {
+    addOperator(new Concatenate());
+    addOperator(new Restore());
+    addOperator(new Save());
+    addOperator(new SetGraphicsStateParameters());
+    addOperator(new SetMatrix());
+    addOperator(new DrawObject());
+  }
+
+  /**
+   * 收集文档中所有被绘制的图片
+   * <p>
+   * 同一图片对象多次绘制时，所有引用都按最大的绘制尺寸（即最低的有效DPI）计算，保证最大处仍然清晰
+   */
+  static List<PDFCompressor.ImagePlacement> collect(PDDocument document) throws IOException {
+    ImagePlacementCollector collector = new ImagePlacementCollector();
+    for (PDPage page : document.getPages()) {
+      int before = collector.placements.size();
+      try {
+        collector.processPage(page);
+      } catch (Exception e) {
+        // 内容流解析失败时退回到只看页面顶层资源，按图片铺满页面估算
+        log.debug("解析页面内容流时出错，改为按页面资源收集图片: ", e);
+        collector.placements.subList(before, collector.placements.size()).clear();
+        collector.collectTopLevel(page);
+      }
+    }
+
+    Map<COSStream, float[]> maxSizes = new IdentityHashMap<>();
+    for (PDFCompressor.ImagePlacement placement : collector.placements) {
+      float[] size = maxSizes.computeIfAbsent(placement.image.getCOSObject(), k -> new float[2]);
+      size[0] = Math.max(size[0], placement.drawnWidth);
+      size[1] = Math.max(size[1], placement.drawnHeight);
+    }
+    List<PDFCompressor.ImagePlacement> merged = new ArrayList<>(collector.placements.size());
+    for (PDFCompressor.ImagePlacement placement : collector.placements) {
+      float[] size = maxSizes.get(placement.image.getCOSObject());
+      merged.add(new PDFCompressor.ImagePlacement(
+              placement.resources, placement.name, placement.image, size[0], size[1]));
+    }
+    return merged;
+  }
+
+  /**
+   * 按页面顶层资源收集图片，绘制尺寸按铺满页面宽度估算
+   */
+  private void collectTopLevel(PDPage page) throws IOException {
+    PDResources resources = page.getResources();
+    if (resources == null) {
+      return;
+    }
+    float pageWidth = page.getMediaBox().getWidth();
+    for (COSName name : resources.getXObjectNames()) {
+      if (resources.isImageXObject(name)) {
+        PDImageXObject image = (PDImageXObject) resources.getXObject(name);
+        float drawnHeight = pageWidth * image.getHeight() / Math.max(1, image.getWidth());
+        placements.add(new PDFCompressor.ImagePlacement(resources, name, image, pageWidth, drawnHeight));
+      }
+    }
+  }
+
+  /**
+   * Do 操作符：图片记录绘制尺寸，表单递归处理
+   */
+  private class DrawObject extends OperatorProcessor {
+    @Override
+    public void process(Operator operator, List<COSBase> operands) throws IOException {
+      if (operands.isEmpty() || !(operands.get(0) instanceof COSName)) {
+        return;
+      }
+      COSName name = (COSName) operands.get(0);
+      PDResources resources = getResources();
+      if (resources == null) {
+        return;
+      }
+      PDXObject xObject = resources.getXObject(name);
+      if (xObject instanceof PDImageXObject) {
+        // 图片绘制在单位正方形内，CTM 的缩放分量就是绘制尺寸（单位：点）
+        Matrix ctm = getGraphicsState().getCurrentTransformationMatrix();
+        float drawnWidth = Math.abs(ctm.getScalingFactorX());
+        float drawnHeight = Math.abs(ctm.getScalingFactorY());
+        if (drawnWidth > 0 && drawnHeight > 0) {
+          placements.add(new PDFCompressor.ImagePlacement(
+                  resources, name, (PDImageXObject) xObject, drawnWidth, drawnHeight));
+        }
+      } else if (xObject instanceof PDTransparencyGroup) {
+        showTransparencyGroup((PDTransparencyGroup) xObject);
+      } else if (xObject instanceof PDFormXObject) {
+        showForm((PDFormXObject) xObject);
+      }
+    }
+
+    @Override
+    public String getName() {
+      return "Do";
+    }
+  }
+}
@@ -0,0 +1,396 @@
+package com.zhou.urltopdf;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 基于共享目录和租约文件的分片执行：多个进程（可以在不同机器上）从同一个任务目录领取文章批次
+ * <p>
+ * 目录结构：
+ * <pre>
+ * batches/batch-00000.json   批次（第一个进程拆分文章列表后整体原子重命名生成，之后只读）
+ * leases/batch-00000.lease   租约：持有者和到期时间，独占创建即领取成功，后台线程定期续约
+ * results/batch-00000.json   批次结果：生成的PDF和失败的文章，临时文件写完后原子重命名
+ * result.json / urltopdf_error.json  全部批次完成后由最后一个进程合并
+ * leases/merge.lease         合并租约，与批次租约相同
+ * merged                     合并完成标记，结果写完后才创建
+ * </pre>
+ * 进程崩溃后租约不再续约，到期后其他进程通过原子重命名抢占并重新处理该批次或重新合并。
+ */
+@Slf4j
+class JobDirectory implements AutoCloseable {
+
+  private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+  // 合并租约的名称，与批次名（batch-00000）不会冲突
+  private static final String MERGE_LEASE = "merge";
+
+  private final Path batchesDir;
+  private final Path leasesDir;
+  private final Path resultsDir;
+  private final Path root;
+  private final int batchSize;
+  private final long leaseMillis;
+  private final String workerId;
+
+  // 当前持有的租约，后台线程定期续约
+  private final Map<String, Boolean> held = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService heartbeat;
+
+  /**
+   * 一个文章批次
+   */
+  static class Batch {
+    final String name;
+    final List<Article> articles;
+
+    Batch(String name, List<Article> articles) {
+      this.name = name;
+      this.articles = articles;
+    }
+  }
+
+  /**
+   * 批次结果，以 JSON 保存
+   */
+  static class BatchResult {
+    String worker;
+    List<String> outputs = new ArrayList<>();
+    List<Article> failed = new ArrayList<>();
+  }
+
+  JobDirectory(Path root, int batchSize, int leaseSeconds) throws IOException {
+    this.root = root;
+    this.batchesDir = root.resolve("batches");
+    this.leasesDir = root.resolve("leases");
+    this.resultsDir = root.resolve("results");
+    this.batchSize = Math.max(1, batchSize);
+    this.leaseMillis = Math.max(10, leaseSeconds) * 1000L;
+    this.workerId = workerId();
+    Files.createDirectories(leasesDir);
+    Files.createDirectories(resultsDir);
+
+    heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "lease-heartbeat");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long period = leaseMillis / 3;
+    heartbeat.scheduleAtFixedRate(this::renewLeases, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  String getWorkerId() {
+    return workerId;
+  }
+
+  /**
+   * 拆分文章列表生成批次；批次已存在时直接使用。本进程没有文章列表时等待其他进程完成拆分
+   */
+  void initialize(List<Article> articles) throws IOException, InterruptedException {
+    if (Files.isDirectory(batchesDir)) {
+      return;
+    }
+    if (articles == null || articles.isEmpty()) {
+      log.info("等待其他进程拆分任务: " + root);
+      while (!Files.isDirectory(batchesDir)) {
+        Thread.sleep(1000);
+      }
+      return;
+    }
+
+    Path temp = root.resolve("batches.tmp-" + workerId);
+    Files.createDirectories(temp);
+    int count = 0;
+    for (int start = 0; start < articles.size(); start += batchSize) {
+      List<Article> batch = articles.subList(start, Math.min(articles.size(), start + batchSize));
+      Files.writeString(temp.resolve(String.format("batch-%05d.json", count++)), gson.toJson(batch));
+    }
+    try {
+      Files.move(temp, batchesDir, StandardCopyOption.ATOMIC_MOVE);
+      log.info("已将" + articles.size() + "篇文章拆分为" + count + "个批次");
+    } catch (IOException e) {
+      // 其他进程已先完成拆分
+      deleteDirectory(temp);
+      if (!Files.isDirectory(batchesDir)) {
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * 领取一个未完成的批次：优先领取无人持有的，其次抢占已过期的租约。
+   * 剩余批次都被其他进程持有时等待，直到它们完成或租约过期
+   *
+   * @return 所有批次都已完成时返回 null
+   */
+  Batch claim() throws IOException, InterruptedException {
+    while (true) {
+      boolean unfinished = false;
+      for (Path file : listBatches()) {
+        if (!Files.exists(resultFile(batchName(file)))) {
+          unfinished = true;
+          Batch batch = tryClaim(file);
+          if (batch != null) {
+            return batch;
+          }
+        }
+      }
+      if (!unfinished) {
+        return null;
+      }
+      Thread.sleep(Math.min(leaseMillis / 4, 5000));
+    }
+  }
+
+  private Batch tryClaim(Path file) throws IOException {
+    String name = batchName(file);
+    Path lease = leaseFile(name);
+    boolean claimed = tryCreateLease(lease);
+    if (!claimed && isExpired(lease)) {
+      claimed = reclaim(lease);
+      if (claimed) {
+        log.info("回收过期租约: " + name);
+      }
+    }
+    if (!claimed) {
+      return null;
+    }
+    // 领取前一刻可能刚被其他进程完成
+    if (Files.exists(resultFile(name))) {
+      Files.deleteIfExists(lease);
+      return null;
+    }
+    held.put(name, Boolean.TRUE);
+    Article[] articles = gson.fromJson(Files.readString(file), Article[].class);
+    return new Batch(name, List.of(articles));
+  }
+
+  /**
+   * 写入批次结果并释放租约
+   */
+  void complete(Batch batch, List<String> outputs, List<Article> failed) throws IOException {
+    BatchResult result = new BatchResult();
+    result.worker = workerId;
+    result.outputs.addAll(outputs);
+    result.failed.addAll(failed);
+    writeAtomically(resultFile(batch.name), gson.toJson(result));
+    held.remove(batch.name);
+    if (workerId.equals(readLease(leaseFile(batch.name))[0])) {
+      Files.deleteIfExists(leaseFile(batch.name));
+    }
+  }
+
+  /**
+   * 所有批次都完成时合并结果（只由持有合并租约的进程执行）
+   *
+   * @return 合并后的失败文章；尚未全部完成、已合并或其他进程正在合并时返回 null
+   */
+  List<Article> mergeIfFinished() throws IOException {
+    Path marker = root.resolve("merged");
+    if (Files.exists(marker)) {
+      return null;
+    }
+    List<Path> batches = listBatches();
+    for (Path file : batches) {
+      if (!Files.exists(resultFile(batchName(file)))) {
+        return null;
+      }
+    }
+    // 合并中途崩溃时租约过期，之后调用的进程重新合并
+    Path lease = leaseFile(MERGE_LEASE);
+    boolean claimed = tryCreateLease(lease) || (isExpired(lease) && reclaim(lease));
+    if (!claimed) {
+      return null;
+    }
+    held.put(MERGE_LEASE, Boolean.TRUE);
+    try {
+      // 领取租约前一刻可能刚由其他进程合并完成
+      if (Files.exists(marker)) {
+        return null;
+      }
+      List<Article> failed = merge(batches);
+      try {
+        Files.createFile(marker);
+      } catch (FileAlreadyExistsException e) {
+        // 租约过期后被其他进程抢占并同样完成了合并，结果相同
+      }
+      return failed;
+    } finally {
+      held.remove(MERGE_LEASE);
+      if (workerId.equals(readLease(lease)[0])) {
+        Files.deleteIfExists(lease);
+      }
+    }
+  }
+
+  private List<Article> merge(List<Path> batches) throws IOException {
+
+    BatchResult merged = new BatchResult();
+    merged.worker = workerId;
+    for (Path file : batches) {
+      BatchResult result = gson.fromJson(Files.readString(resultFile(batchName(file))), BatchResult.class);
+      merged.outputs.addAll(result.outputs);
+      merged.failed.addAll(result.failed);
+    }
+    writeAtomically(root.resolve("result.json"), gson.toJson(merged));
+    writeAtomically(root.resolve("urltopdf_error.json"), gson.toJson(merged.failed));
+    log.info(String.format("全部%d个批次已完成，合并结果：成功%d篇，失败%d篇，结果保存在 %s",
+            batches.size(), merged.outputs.size(), merged.failed.size(), root));
+    return merged.failed;
+  }
+
+  @Override
+  public void close() {
+    heartbeat.shutdownNow();
+  }
+
+  private void renewLeases() {
+    for (String name : held.keySet()) {
+      Path lease = leaseFile(name);
+      try {
+        if (!workerId.equals(readLease(lease)[0])) {
+          log.warn("批次 " + name + " 的租约已被其他进程回收");
+          held.remove(name);
+          continue;
+        }
+        writeAtomically(lease, leaseContent());
+      } catch (IOException e) {
+        log.warn("续约失败: " + name, e);
+      }
+    }
+  }
+
+  /**
+   * 独占创建租约文件
+   */
+  private boolean tryCreateLease(Path lease) throws IOException {
+    try {
+      Files.createFile(lease);
+    } catch (FileAlreadyExistsException e) {
+      return false;
+    }
+    Files.writeString(lease, leaseContent());
+    return true;
+  }
+
+  /**
+   * 通过原子重命名抢占过期租约，只有一个进程能重命名成功
+   */
+  private boolean reclaim(Path lease) throws IOException {
+    Path taken = lease.resolveSibling(lease.getFileName() + ".reclaim-" + workerId);
+    try {
+      Files.move(lease, taken, StandardCopyOption.ATOMIC_MOVE);
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+    if (!isExpired(taken)) {
+      // 检查和重命名之间租约被续约或重新领取，放回原处
+      try {
+        Files.move(taken, lease);
+      } catch (FileAlreadyExistsException e) {
+        Files.deleteIfExists(taken);
+      }
+      return false;
+    }
+    Files.deleteIfExists(taken);
+    return tryCreateLease(lease);
+  }
+
+  private boolean isExpired(Path lease) throws IOException {
+    try {
+      String expires = readLease(lease)[1];
+      if (expires != null) {
+        return Long.parseLong(expires) < System.currentTimeMillis();
+      }
+      // 刚创建、内容尚未写入的租约按修改时间判断
+      return Files.getLastModifiedTime(lease).toMillis() + leaseMillis < System.currentTimeMillis();
+    } catch (NoSuchFileException e) {
+      return false;
+    }
+  }
+
+  /**
+   * 读取租约的持有者和到期时间
+   */
+  private static String[] readLease(Path lease) throws IOException {
+    try {
+      String[] parts = Files.readString(lease, StandardCharsets.UTF_8).trim().split("\\s+");
+      return parts.length == 2 ? parts : new String[2];
+    } catch (NoSuchFileException e) {
+      return new String[2];
+    }
+  }
+
+  private String leaseContent() {
+    return workerId + " " + (System.currentTimeMillis() + leaseMillis);
+  }
+
+  private void writeAtomically(Path target, String content) throws IOException {
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp-" + workerId);
+    Files.writeString(temp, content, StandardCharsets.UTF_8);
+    Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private List<Path> listBatches() throws IOException {
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(batchesDir, "*.json")) {
+      stream.forEach(files::add);
+    }
+    Collections.sort(files);
+    return files;
+  }
+
+  private static String batchName(Path file) {
+    String name = file.getFileName().toString();
+    return name.substring(0, name.length() - ".json".length());
+  }
+
+  private Path leaseFile(String name) {
+    return leasesDir.resolve(name + ".lease");
+  }
+
+  private Path resultFile(String name) {
+    return resultsDir.resolve(name + ".json");
+  }
+
+  /**
+   * 进程标识：主机名-进程号
+   */
+  private static String workerId() {
+    String host;
+    try {
+      host = InetAddress.getLocalHost().getHostName();
+    } catch (IOException e) {
+      host = "unknown";
+    }
+    return host + "-" + ManagementFactory.getRuntimeMXBean().getPid();
+  }
+
+  private static void deleteDirectory(Path dir) throws IOException {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Collections.reverseOrder())::iterator) {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+}
@@ -12,8 +12,10 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
 
+import static com.zhou.urltopdf.FileUtils.CONFIG_FILE_PATH;
 import static com.zhou.urltopdf.FileUtils.ERROR_JSON_FILE_PATH;
 import static com.zhou.urltopdf.FileUtils.JSON_FILE_PATH;
+import static com.zhou.urltopdf.FileUtils.PREFLIGHT_JSON_FILE_PATH;
 
 @Slf4j
 public class JsonUtils {
@@ -44,6 +46,29 @@ public class JsonUtils {
     }
   }
 
+  /**
+   * 读取运行配置文件，不存在或读取失败时返回默认配置
+   *
+   * @return AppConfig 运行配置
+   */
+  public static AppConfig readConfigFile() {
+    try {
+      String desktopPath = FileUtils.getDesktopPath();
+
+      File file = new File(desktopPath + CONFIG_FILE_PATH);
+      if (file.exists()) {
+        String json = new String(Files.readAllBytes(Paths.get(desktopPath + CONFIG_FILE_PATH)));
+        AppConfig config = gson.fromJson(json, AppConfig.class);
+        if (config != null) {
+          return config;
+        }
+      }
+    } catch (Exception e) {
+      log.error("读取配置文件时出错，使用默认配置: ", e);
+    }
+    return new AppConfig();
+  }
+
   public static void main(String[] args) {
     List<Article> articles = readJsonFile();
     writeJsonFile(articles);
@@ -69,4 +94,16 @@ public class JsonUtils {
     }
   }
 
+  /**
+   * 写入未通过链接预检的文章及原因
+   */
+  public static void writePreflightReport(List<LinkPreflight.Rejection> rejections) {
+    try {
+      String desktopPath = FileUtils.getDesktopPath();
+      Files.writeString(Paths.get(desktopPath + PREFLIGHT_JSON_FILE_PATH), gson.toJson(rejections));
+    } catch (Exception e) {
+      log.error("写入预检报告时出错。{}", e.getMessage());
+    }
+  }
+
 }
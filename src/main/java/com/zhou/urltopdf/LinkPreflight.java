@@ -0,0 +1,303 @@
+package com.zhou.urltopdf;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.UnresolvedAddressException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 链接预检：在浏览器渲染之前用 HttpClient 并发探测链接
+ * <p>
+ * 先发 HEAD 请求，服务器不支持或返回错误时改用只取前 1KB 的 GET 请求。跟随重定向得到最终地址，
+ * 提前淘汰域名无法解析、404/410 以及非网页内容（PDF、图片等）的链接，这些链接交给浏览器也只会
+ * 在等待超时或下载提示后失败。其他情况（连接失败、超时、403、5xx 等，可能只是限流或拒绝非浏览器请求）一律放行，
+ * 由渲染阶段处理并按暂时性失败重试。
+ * 探测在后台按提交顺序进行，渲染到某篇文章时它的结果通常已经就绪；同一主机的解析结果也已进入缓存。
+ * 调度顺序会随耗时统计变化，渲染到的文章还没开始探测时立即单独探测，不等排在它前面的文章。
+ */
+@Slf4j
+class LinkPreflight implements AutoCloseable {
+
+  private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 "
+          + "(KHTML, like Gecko) Chrome/134.0.0.0 Safari/537.36";
+
+  /**
+   * 预检结果
+   */
+  static class Result {
+    final boolean viable;
+    // 重定向后的最终地址
+    final String url;
+    // 未通过的原因
+    final String reason;
+
+    private Result(boolean viable, String url, String reason) {
+      this.viable = viable;
+      this.url = url;
+      this.reason = reason;
+    }
+
+    static Result viable(String url) {
+      return new Result(true, url, null);
+    }
+
+    static Result rejected(String url, String reason) {
+      return new Result(false, url, reason);
+    }
+  }
+
+  /**
+   * 未通过预检的文章，写入预检报告
+   */
+  static class Rejection {
+    String title;
+    String link;
+    long create_time;
+    String reason;
+  }
+
+  private final HttpClient client;
+  private final Duration timeout;
+  private final Semaphore permits;
+  // 已提交、尚未取走结果的探测，以及其中尚未开始的探测（按提交顺序），都由 this 保护
+  private final Map<Article, Probe> results = new IdentityHashMap<>();
+  private final Deque<Probe> queue = new ArrayDeque<>();
+  // 域名无法解析的主机，同一主机的其他链接直接淘汰
+  private final Map<String, String> deadHosts = new ConcurrentHashMap<>();
+  private final List<Rejection> rejections = Collections.synchronizedList(new ArrayList<>());
+  private Thread dispatcher;
+
+  /**
+   * 一篇文章的探测
+   */
+  private static class Probe {
+    final Article article;
+    final CompletableFuture<Result> result = new CompletableFuture<>();
+
+    Probe(Article article) {
+      this.article = article;
+    }
+  }
+
+  LinkPreflight(int concurrency, int timeoutSeconds) {
+    this.timeout = Duration.ofSeconds(Math.max(1, timeoutSeconds));
+    this.permits = new Semaphore(Math.max(1, concurrency));
+    this.client = HttpClient.newBuilder()
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(timeout)
+            .build();
+  }
+
+  /**
+   * 在后台按顺序开始探测文章链接，并发数受限
+   */
+  synchronized void submit(List<Article> articles) {
+    for (Article article : articles) {
+      if (!results.containsKey(article)) {
+        Probe probe = new Probe(article);
+        results.put(article, probe);
+        queue.add(probe);
+      }
+    }
+    if (dispatcher == null) {
+      dispatcher = new Thread(this::dispatch, "link-preflight");
+      dispatcher.setDaemon(true);
+      dispatcher.start();
+    }
+    notifyAll();
+  }
+
+  /**
+   * 等待文章的预检结果并移除；还没开始探测的文章立即探测，未提交过的文章直接放行
+   */
+  Result await(Article article) throws InterruptedException {
+    Probe probe;
+    boolean pending;
+    synchronized (this) {
+      probe = results.remove(article);
+      pending = probe != null && queue.remove(probe);
+    }
+    if (probe == null) {
+      return Result.viable(article.getLink());
+    }
+    if (pending) {
+      // 渲染线程正等着它，不占用后台探测的并发数
+      start(probe, false);
+    }
+    try {
+      return probe.result.get();
+    } catch (ExecutionException e) {
+      return Result.viable(article.getLink());
+    }
+  }
+
+  /**
+   * 后台线程：按提交顺序取出尚未开始的探测，并发数受限
+   */
+  private void dispatch() {
+    while (true) {
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        return;
+      }
+      Probe probe;
+      synchronized (this) {
+        while ((probe = queue.poll()) == null) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            permits.release();
+            return;
+          }
+        }
+      }
+      start(probe, true);
+    }
+  }
+
+  private void start(Probe probe, boolean permit) {
+    String link = probe.article.getLink();
+    CompletableFuture<Result> check;
+    try {
+      check = probe(link);
+    } catch (RuntimeException e) {
+      // 探测本身出错时放行
+      check = CompletableFuture.completedFuture(Result.viable(link));
+    }
+    check.whenComplete((result, error) -> {
+      if (permit) {
+        permits.release();
+      }
+      probe.result.complete(error == null ? result : Result.viable(link));
+    });
+  }
+
+  /**
+   * 记录未通过预检的文章
+   */
+  void reject(Article article, String reason) {
+    Rejection rejection = new Rejection();
+    rejection.title = article.getTitle();
+    rejection.link = article.getLink();
+    rejection.create_time = article.getCreate_time();
+    rejection.reason = reason;
+    rejections.add(rejection);
+  }
+
+  List<Rejection> getRejections() {
+    synchronized (rejections) {
+      return new ArrayList<>(rejections);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (dispatcher != null) {
+      dispatcher.interrupt();
+    }
+  }
+
+  private CompletableFuture<Result> probe(String link) {
+    URI uri;
+    try {
+      uri = URI.create(link == null ? "" : link.trim());
+    } catch (IllegalArgumentException e) {
+      return CompletableFuture.completedFuture(Result.rejected(link, "链接格式错误"));
+    }
+    String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase(Locale.ROOT);
+    if (!scheme.equals("http") && !scheme.equals("https")) {
+      // data:、file: 等交给浏览器
+      return CompletableFuture.completedFuture(Result.viable(link));
+    }
+    if (uri.getHost() == null) {
+      return CompletableFuture.completedFuture(Result.rejected(link, "链接格式错误"));
+    }
+    String deadReason = deadHosts.get(uri.getHost());
+    if (deadReason != null) {
+      return CompletableFuture.completedFuture(Result.rejected(link, deadReason));
+    }
+
+    HttpRequest head = request(uri).method("HEAD", HttpRequest.BodyPublishers.noBody()).build();
+    return client.sendAsync(head, HttpResponse.BodyHandlers.discarding())
+            .thenCompose(response -> {
+              if (response.statusCode() < 400 && response.headers().firstValue("content-type").isPresent()) {
+                return CompletableFuture.completedFuture(response);
+              }
+              // 不支持 HEAD 或结果不明确，只取前 1KB 再确认一次
+              HttpRequest get = request(uri).header("Range", "bytes=0-1023").GET().build();
+              return client.sendAsync(get, HttpResponse.BodyHandlers.ofInputStream()).thenApply(r -> {
+                closeQuietly(r.body());
+                return r;
+              });
+            })
+            .handle((response, error) -> error != null ? evaluate(uri, error) : evaluate(response));
+  }
+
+  private HttpRequest.Builder request(URI uri) {
+    return HttpRequest.newBuilder(uri)
+            .timeout(timeout)
+            .header("User-Agent", USER_AGENT)
+            .header("Accept", "text/html,application/xhtml+xml,*/*;q=0.8");
+  }
+
+  private Result evaluate(HttpResponse<?> response) {
+    String url = response.uri().toString();
+    int status = response.statusCode();
+    if (status == 404 || status == 410) {
+      return Result.rejected(url, "HTTP " + status);
+    }
+    if (status >= 200 && status < 300) {
+      String contentType = response.headers().firstValue("content-type").orElse("").toLowerCase(Locale.ROOT);
+      if (!contentType.isEmpty() && !contentType.contains("html") && !contentType.contains("xml")
+              && !contentType.startsWith("text/plain")) {
+        return Result.rejected(url, "非网页内容: " + contentType);
+      }
+    }
+    return Result.viable(url);
+  }
+
+  private Result evaluate(URI uri, Throwable error) {
+    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    // 域名解析失败包装在 ConnectException 中，检查整个异常链
+    for (Throwable e = cause; e != null; e = e.getCause()) {
+      if (e instanceof UnknownHostException || e instanceof UnresolvedAddressException) {
+        String reason = "域名无法解析";
+        deadHosts.put(uri.getHost(), reason);
+        return Result.rejected(uri.toString(), reason);
+      }
+    }
+    // 连接超时、连接被拒绝（可能是限流或并发探测过多）、读取超时、TLS 错误等不一定说明链接不可用，
+    // 交给浏览器，失败时按暂时性错误重试
+    log.debug("预检未能确认链接状态，放行: " + uri + "，" + cause);
+    return Result.viable(uri.toString());
+  }
+
+  private static void closeQuietly(InputStream in) {
+    try {
+      in.close();
+    } catch (IOException e) {
+      // 忽略
+    }
+  }
+}
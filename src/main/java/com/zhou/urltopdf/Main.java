@@ -11,13 +11,24 @@ import org.slf4j.LoggerFactory;
 import javax.swing.*;
 import java.awt.*;
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 @Slf4j
@@ -28,6 +39,18 @@ public class Main {
   private static int logLineCount = 0;
   private static final int MAX_LOG_LINES = 5000; // 设置最大日志行数
 
+  // 启动耗时统计（从JVM启动开始计算），首次渲染完成时输出；渲染可能在其他线程中完成
+  private static final RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+  private static volatile long playwrightStart;
+  private static volatile long browserStart;
+  private static volatile long browserReady;
+  private static final AtomicBoolean firstRender = new AtomicBoolean(true);
+
+  // 每处理这么多篇新文章才取一次到期的重试，重试不会阻塞新文章
+  private static final int RETRY_INTERLEAVE = 5;
+  // 已处理完成（成功或最终失败）的文章数
+  private static final AtomicInteger completed = new AtomicInteger();
+
   public static void main(String[] args) {
     // 设置允许图形界面，解决java.awt.HeadlessException
     System.setProperty("java.awt.headless", "false");
@@ -36,141 +59,88 @@ public class Main {
     // 配置 Logback 将日志输出到 Swing 界面
     configureLogbackAppender();
 
-    // 读取json文件，并且映射到List<Article>
-    List<Article> articles = JsonUtils.readJsonFile();
-    if (articles == null || articles.isEmpty()) {
+    // 读取运行配置（可选）
+    AppConfig config = JsonUtils.readConfigFile();
+    boolean sharded = config.getJobDir() != null && !config.getJobDir().isBlank();
+
+    // 读取json文件，并且映射到List<Article>；分片模式下可由其他进程提供，落盘队列模式下流式导入队列
+    boolean spill = config.isSpillQueue() && !sharded;
+    List<Article> articles = spill ? null : JsonUtils.readJsonFile();
+    if (!sharded && !spill && (articles == null || articles.isEmpty())) {
       log.error("没有可用数据，请检查json文件");
       return;
     }
+    if (config.isRenderOptimize()) {
+      log.info("已开启渲染优化，图片目标分辨率" + config.getRenderImageDpi() + "DPI");
+    }
+    ArticleRenderer renderer = new ArticleRenderer(config);
+    LinkPreflight preflight = config.isPreflight()
+            ? new LinkPreflight(config.getPreflightConcurrency(), config.getPreflightTimeoutSeconds()) : null;
+    RenderScheduler scheduler = new RenderScheduler(RenderScheduler.policy(config),
+            new RenderScheduler.Estimator(renderer.getProfiles()),
+            config.isSchedulerTrace() ? Paths.get(FileUtils.getDesktopPath() + FileUtils.TRACE_FILE_PATH) : null);
+    log.info("调度策略：" + scheduler.getPolicy().name());
+    OutputStore store;
+    try {
+      store = new OutputStore(outputRoot(config), config.isOutputSharding());
+    } catch (IOException e) {
+      log.error("无法创建输出目录", e);
+      return;
+    }
+    WorkQueue queue = null;
+    if (spill) {
+      try {
+        queue = WorkQueue.open(Paths.get(FileUtils.getDesktopPath() + FileUtils.QUEUE_DIR_PATH),
+                Paths.get(FileUtils.getDesktopPath() + FileUtils.JSON_FILE_PATH));
+      } catch (IOException | RuntimeException e) {
+        log.error("无法打开待渲染队列", e);
+        return;
+      }
+      if (queue == null) {
+        log.error("没有可用数据，请检查json文件");
+        return;
+      }
+      if (queue.remaining() == 0) {
+        log.info("待渲染队列中的文章都已处理完成");
+        closeQueue(queue);
+        return;
+      }
+    }
     List<Article> errorArticles = new ArrayList<>();
     // 未知异常
     boolean isUnknownException = false;
 
 
-    try (Playwright playwright = Playwright.create()) {
-      // 配置浏览器选项
-      BrowserType.LaunchOptions launchOptions = new BrowserType.LaunchOptions()
-              .setHeadless(true); // 设置为无头模式
-
-      // 创建浏览器实例
-      try (Browser browser = playwright.chromium().launch(launchOptions)) {
-        // 创建浏览器上下文
-        Browser.NewContextOptions contextOptions = new Browser.NewContextOptions()
-                .setViewportSize(1920, 1080); // 设置视口大小
-
-        try (BrowserContext context = browser.newContext(contextOptions)) {
-          // 创建新页面
-          try (Page page = context.newPage()) {
-            int i = 0;
-            log.info("共" + articles.size() + "个");
-            long startTime = System.currentTimeMillis(); // 记录开始时间
-            for (Article article : articles) {
-
-              try {
-                String dateStr = "";
-                try {
-                  LocalDateTime dateTime = LocalDateTime.ofInstant(
-                          java.time.Instant.ofEpochSecond(article.getCreate_time()),
-                          ZoneId.systemDefault()
-                  );
-                  dateStr = dateTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss"));
-                } catch (Exception e) {
-                  log.info("时间格式化错误。若无需时间字段，请忽略...");
-                }
-                String title = StringUtils.sanitizeFilename(article.getTitle());
-
-
-                String desktopPath = FileUtils.getDesktopPath();
-
-                String outputPath = desktopPath + File.separator + "urltopdf" + File.separator + dateStr + "_" + title + ".pdf";
-                log.info("开始处理：" + outputPath);
-
-                // 导航到目标URL
-                page.navigate(article.getLink());
-
-                // 等待页面完全加载
-//            page.waitForLoadState(LoadState.DOMCONTENTLOADED);
-                // 2. 滚动到底，触发懒加载
-                page.evaluate("""
-                async () => {
-                    // 适配任何网站的通用滚动逻辑
-                    // 1. 获取整个文档的高度
-                    const body = document.body;
-                    const html = document.documentElement;
-                    
-                    // 计算页面最大高度
-                    const pageHeight = Math.max(
-                        body.scrollHeight,
-                        body.offsetHeight,
-                        html.clientHeight,
-                        html.scrollHeight,
-                        html.offsetHeight
-                    );
-                    
-                    // 2. 计算每次滚动步长：取屏幕高度 * 0.8，重叠一点更保险
-                    const step = window.innerHeight * 0.8;
-                    let current = 0;
-
-                    // 3. 逐段向下滚动
-                    while (current < pageHeight) {
-                        window.scrollTo(0, current);
-                        // 等待 200 ms 让浏览器触发懒加载
-                        await new Promise(r => setTimeout(r, 200));
-                        current += step;
-                    }
-
-                    // 4. 再回顶部
-                    window.scrollTo(0, 0);
-                    // 额外等待确保所有资源加载完成
-                    await new Promise(r => setTimeout(r, 500));
-                }
-            """);
-
-                // 获取页面宽度，用于设置PDF宽度
-                Object pageWidthObj = page.evaluate("Math.max(document.body.scrollWidth, document.body.offsetWidth, document.documentElement.clientWidth, document.documentElement.scrollWidth, document.documentElement.offsetWidth)");
-                double pageWidth = Double.parseDouble(pageWidthObj.toString());
-                // 设置PDF宽度为页面宽度，高度为自动
-                String widthStr = pageWidth + "px";
-
-                // 3. 等所有网络空闲（图片加载完）
-//            page.waitForLoadState(LoadState.NETWORKIDLE);
-
-                // 配置PDF选项
-                Page.PdfOptions pdfOptions = new Page.PdfOptions()
-                        .setPath(Paths.get(outputPath))
-                        .setFormat("A4")
-                        .setWidth(widthStr)
-                        .setPrintBackground(true)
-//                    .setMargin(new Margin(20, 20, 20, 20))
-                        ; // 设置页边距
-
-                // 生成PDF文件
-                page.pdf(pdfOptions);
-
-                log.info("PDF生成成功！保存路径: " + outputPath);
-
-              } catch (Exception e) {
-                log.error("出现异常，跳过。生成 {} 时出错。", article.getTitle(), e);
-                errorArticles.add(article);
+    playwrightStart = runtime.getUptime();
+    BrowserPool pool = null;
+    try {
+      if (config.getBrowserEndpoints() != null && !config.getBrowserEndpoints().isEmpty()) {
+        // 连接远程浏览器池，不在本进程中启动浏览器
+        pool = new BrowserPool(config.getBrowserEndpoints(), config.getBrowserHealthCheckSeconds());
+      }
+      if (config.getMaxRenderers() > 1 || pool != null) {
+        // 多个浏览器同时渲染，槽位数按耗时和资源使用情况自动调整；远程浏览器断开后由槽位重新连接
+        ConcurrencyController slots = new ConcurrencyController("渲染", 1, config.getMaxRenderers(), pool == null,
+                config.getBrowserMemoryMegabytes() * 1024L * 1024, concurrencyMetricsPath());
+        if (config.getMaxRenderers() > 1) {
+          log.info("多浏览器渲染：最多" + config.getMaxRenderers() + "个，按耗时和资源使用情况自动调整");
+        }
+        try (RenderWorkers workers = new RenderWorkers(config, renderer, store, slots, pool)) {
+          errorArticles.addAll(run(workers, preflight, scheduler, config, articles, queue, sharded));
+        }
+      } else {
+        try (Playwright playwright = PlaywrightBootstrap.create(config.isFastStartup())) {
+          browserStart = runtime.getUptime();
+          // 创建浏览器实例
+          try (Browser browser = playwright.chromium().launch(launchOptions())) {
+            browserReady = runtime.getUptime();
+            // 创建浏览器上下文
+            try (BrowserContext context = browser.newContext(contextOptions())) {
+              // 创建新页面，渲染进程崩溃后重新创建
+              try (PageSlot slot = new PageSlot(context)) {
+                errorArticles.addAll(run(new InlineRenderers(slot, renderer, store), preflight, scheduler, config,
+                        articles, queue, sharded));
               }
-
-
-
-              // 剩余个数
-              i++;
-              long currentTime = System.currentTimeMillis();
-              long elapsedTime = currentTime - startTime; // 计算耗时
-              long seconds = elapsedTime / 1000;
-              long minutes = seconds / 60;
-              seconds = seconds % 60;
-              log.info("当前耗时: " + minutes + "分" + seconds + "秒");
-              log.info("已完成" + i + "个");
-              log.info("剩余" + (articles.size() - i) + "个");
-              // 随机时间睡眠
-              Random rand = new Random();
-              int randomNum = rand.nextInt(3000 - 1000 + 1) + 1000; // [1000, 3000]
-              log.info("随机等待" + randomNum + "ms");
-              Thread.sleep(randomNum);
             }
           }
         }
@@ -178,16 +148,57 @@ public class Main {
     } catch (Exception e) {
       log.error("生成PDF时出错: ", e);
       isUnknownException = true;
+      if (config.isFastStartup()) {
+        // 可能是缓存的驱动或浏览器已失效，下次启动重新检查
+        PlaywrightBootstrap.invalidate();
+      }
+    } finally {
+      if (pool != null) {
+        pool.close();
+      }
+      if (preflight != null) {
+        preflight.close();
+      }
+      if (queue != null) {
+        closeQueue(queue);
+      }
+      renderer.saveProfiles();
     }
 
     if (!isUnknownException) {
       log.info("====PDF生成完毕！");
-      if ( !errorArticles.isEmpty()) {
-        JsonUtils.writeJsonFile(errorArticles);
-        log.error("====出现{}个失败，已记录到{}文件", errorArticles.size(), FileUtils.getDesktopPath() + FileUtils.ERROR_JSON_FILE_PATH);
+      long failures = errorArticles.size();
+      long rejections = preflight != null ? preflight.getRejections().size() : 0;
+      if (queue != null) {
+        // 落盘队列模式：从队列目录中的失败记录生成，包括之前运行中失败的文章
+        try {
+          failures = queue.writeFailures(Paths.get(FileUtils.getDesktopPath() + FileUtils.ERROR_JSON_FILE_PATH), false);
+          rejections = queue.writeFailures(Paths.get(FileUtils.getDesktopPath() + FileUtils.PREFLIGHT_JSON_FILE_PATH),
+                  true);
+        } catch (IOException e) {
+          log.error("从失败记录生成失败列表时出错", e);
+        }
+      } else {
+        if (!errorArticles.isEmpty()) {
+          JsonUtils.writeJsonFile(errorArticles);
+        }
+        if (rejections > 0) {
+          JsonUtils.writePreflightReport(preflight.getRejections());
+        }
+      }
+      if (failures > 0) {
+        log.error("====出现{}个失败，已记录到{}文件", failures, FileUtils.getDesktopPath() + FileUtils.ERROR_JSON_FILE_PATH);
+      }
+      if (rejections > 0) {
+        log.info("====其中{}个未通过链接预检，原因已记录到{}文件", rejections,
+                FileUtils.getDesktopPath() + FileUtils.PREFLIGHT_JSON_FILE_PATH);
       }
 
-      extracted();
+      if (config.isBundleVolumes()) {
+        bundleVolumes(store.getRoot().toFile(), config);
+      }
+
+      extracted(store.getRoot().toFile(), config);
 
     } else {
       log.info("出现未知异常，已中断，请检查日志");
@@ -195,12 +206,293 @@ public class Main {
 
   }
 
-  private static void extracted() {
+  /**
+   * 处理全部文章：分片模式下循环领取批次，落盘队列模式下从队列中读取，否则处理文章列表
+   *
+   * @return 最终失败的文章
+   */
+  private static List<Article> run(Renderers renderers, LinkPreflight preflight, RenderScheduler scheduler,
+                                   AppConfig config, List<Article> articles, WorkQueue queue, boolean sharded)
+          throws IOException, InterruptedException {
+    long startTime = System.currentTimeMillis(); // 记录开始时间
+    if (sharded) {
+      return runShard(renderers, preflight, scheduler, config, articles, startTime);
+    } else if (queue != null) {
+      log.info("共" + queue.remaining() + "个（落盘队列）");
+      return runArticles(renderers, preflight, scheduler, config, null, queue, null, startTime, false);
+    } else {
+      log.info("共" + articles.size() + "个");
+      return runArticles(renderers, preflight, scheduler, config, articles, null, null, startTime, false);
+    }
+  }
+
+  /**
+   * 按调度策略的顺序渲染文章，开启预检时跳过未通过预检的文章。暂时性失败（超时、网络错误、崩溃等）放入低优先级的重试队列按指数退避重试：
+   * 每处理若干篇新文章才取一次到期的重试，新文章全部处理完后再等待剩余的重试。
+   * 使用落盘队列时调度器中最多保留 queueWindow 篇文章，少于一半时从队列补充，文章处理完成后在队列中标记
+   *
+   * @param queue   落盘队列，为 null 时处理 articles；最终失败的文章记入队列的失败记录，不在内存中累积
+   * @param outputs 生成的PDF路径追加到该列表，可以为 null
+   * @return 最终失败的文章，使用落盘队列时为空
+   */
+  private static List<Article> runArticles(Renderers renderers, LinkPreflight preflight, RenderScheduler scheduler,
+                                           AppConfig config, List<Article> articles, WorkQueue queue,
+                                           List<String> outputs, long startTime, boolean sharded)
+          throws IOException, InterruptedException {
+    int window = Math.max(1, config.getQueueWindow());
+    schedule(scheduler, preflight, queue != null ? queue.take(window) : articles);
+    RetryQueue retries = new RetryQueue(config.getRetryMaxAttempts(), config.getRetryBaseSeconds() * 1000L,
+            config.getRetryMaxDelaySeconds() * 1000L);
+    List<Article> failed = new ArrayList<>();
+    Map<String, Integer> failureCounts = new TreeMap<>();
+    int sinceRetry = 0;
+    while (true) {
+      if (queue != null && scheduler.size() < window / 2 && queue.pending() > 0) {
+        schedule(scheduler, preflight, queue.take(window - scheduler.size()));
+      }
+
+      // 有空闲的渲染槽位时派发新文章或到期的重试
+      while (renderers.available() > 0) {
+        RetryQueue.Entry retry = null;
+        if (scheduler.isEmpty() || sinceRetry >= RETRY_INTERLEAVE) {
+          retry = retries.pollReady();
+        }
+        Article article;
+        int attempt;
+        RenderFailure.Kind previous = null;
+        if (retry != null) {
+          article = retry.article;
+          attempt = retry.attempt;
+          previous = retry.failure.getKind();
+          sinceRetry = 0;
+          log.info("第" + attempt + "次重试（上次失败原因：" + retry.failure.describe() + "）：" + article.getTitle());
+        } else if (!scheduler.isEmpty()) {
+          article = scheduler.next(System.currentTimeMillis()).article;
+          attempt = 0;
+          sinceRetry++;
+        } else {
+          break;
+        }
+
+        // 预检结果：重定向后的地址，或未通过的原因；重试时沿用首次预检得到的地址
+        String link = retry != null ? retry.link : article.getLink();
+        if (preflight != null && retry == null) {
+          LinkPreflight.Result check = preflight.await(article);
+          if (!check.viable) {
+            log.info("未通过链接预检，跳过（" + check.reason + "）：" + article.getTitle() + " " + article.getLink());
+            failureCounts.merge("预检未通过", 1, Integer::sum);
+            if (queue == null) {
+              preflight.reject(article, check.reason);
+            }
+            fail(queue, failed, article, check.reason, true);
+            continue;
+          }
+          link = check.url;
+        }
+        renderers.submit(new RenderJob(article, link, attempt, previous, scheduler.expectedMillis(article)));
+      }
+
+      if (renderers.inFlight() == 0) {
+        if (scheduler.isEmpty() && retries.isEmpty()) {
+          break;
+        }
+        // 只剩未到期的重试
+        Thread.sleep(Math.max(1, retries.millisUntilReady()));
+        continue;
+      }
+      // 等待一篇文章渲染完成；还有空闲槽位时，在下一个重试到期时提前返回
+      boolean waitRetry = renderers.available() > 0 && !retries.isEmpty();
+      RenderJob job = renderers.take(waitRetry ? Math.max(1, retries.millisUntilReady()) : -1);
+      if (job == null) {
+        continue;
+      }
+      Article article = job.article;
+      scheduler.record(article, job.millis, job.failure == null);
+      if (job.failure == null) {
+        if (outputs != null) {
+          outputs.add(job.output);
+        }
+        finish(queue, article);
+      } else {
+        RenderFailure failure = job.failure;
+        failureCounts.merge(failure.describe(), 1, Integer::sum);
+        long delay = failure.isTransient() ? retries.schedule(article, job.link, job.attempt + 1, failure) : -1;
+        if (delay >= 0) {
+          log.info(String.format("失败原因：%s，%d秒后重试", failure.describe(), delay / 1000));
+        } else {
+          log.info("失败原因：" + failure.describe() + "，不再重试");
+          fail(queue, failed, article, failure.describe(), false);
+        }
+      }
+      logProgress(startTime, completed.get(), sharded ? -1
+              : queue != null ? queue.remaining() : scheduler.size() + retries.size() + renderers.inFlight());
+      renderers.pace();
+    }
+    if (!failureCounts.isEmpty()) {
+      log.info("失败分类统计（含重试后成功的）：" + failureCounts);
+    }
+    return failed;
+  }
+
+  /**
+   * 把文章交给调度器，预检在后台按调度顺序先行，渲染到每篇文章时等待它的结果
+   */
+  private static void schedule(RenderScheduler scheduler, LinkPreflight preflight, List<Article> articles) {
+    long now = System.currentTimeMillis();
+    scheduler.addAll(articles, now);
+    if (preflight != null) {
+      preflight.submit(scheduler.plannedOrder(now));
+    }
+  }
+
+  /**
+   * 文章处理完成（成功或最终失败）
+   */
+  private static void finish(WorkQueue queue, Article article) throws IOException {
+    completed.incrementAndGet();
+    if (queue != null) {
+      queue.complete(article);
+    }
+  }
+
+  /**
+   * 文章最终失败或未通过预检：使用落盘队列时记入队列目录中的失败记录并标记完成，否则加入失败列表
+   */
+  private static void fail(WorkQueue queue, List<Article> failed, Article article, String reason, boolean preflight)
+          throws IOException {
+    completed.incrementAndGet();
+    if (queue != null) {
+      queue.fail(article, reason, preflight);
+    } else {
+      failed.add(article);
+    }
+  }
+
+  private static void closeQueue(WorkQueue queue) {
+    try {
+      queue.close();
+    } catch (IOException e) {
+      log.error("保存待渲染队列时出错", e);
+    }
+  }
+
+  /**
+   * 渲染单篇文章
+   *
+   * @param link    实际打开的地址（预检得到的重定向后地址）
+   * @param attempt  重试次数，首次为 0
+   * @param previous 上次失败的类别，首次为 null
+   * @return 生成的PDF路径
+   * @throws RenderFailure 分类后的失败原因
+   */
+  private static String processArticle(PageSlot slot, ArticleRenderer renderer, OutputStore store,
+                                        Article article, String link, int attempt,
+                                        RenderFailure.Kind previous) throws RenderFailure {
+    OutputStore.Target target = null;
+    try {
+      target = store.reserve(article);
+      log.info("开始处理：" + target.path);
+
+      // 导航、滚动加载并生成PDF文件：先写入临时文件，完成后原子重命名
+      renderer.render(slot.get(), link, target.temp.toString(), attempt, previous);
+      String outputPath = store.commit(target).toString();
+
+      log.info("PDF生成成功！保存路径: " + outputPath);
+      // 多浏览器渲染时没有单独统计启动耗时
+      if (browserReady > 0 && firstRender.compareAndSet(true, false)) {
+        log.info(String.format("首次渲染完成：JVM启动后 %d 毫秒（启动前准备 %d 毫秒，Playwright初始化 %d 毫秒，浏览器启动 %d 毫秒）",
+                runtime.getUptime(), playwrightStart, browserStart - playwrightStart, browserReady - browserStart));
+      }
+      return outputPath;
+
+    } catch (Exception e) {
+      RenderFailure failure = RenderFailure.classify(e);
+      log.error("出现异常，跳过。生成 {} 时出错（{}）。", article.getTitle(), failure.describe(), e);
+      if (target != null) {
+        store.discard(target);
+      }
+      if (failure.getKind() == RenderFailure.Kind.CRASH) {
+        slot.reset();
+      }
+      throw failure;
+    }
+  }
+
+  /**
+   * 分片模式：从共享任务目录中循环领取批次处理，直到没有可领取的批次
+   *
+   * @return 全部批次完成且由本进程合并时返回合并后的失败文章，否则返回空列表
+   */
+  private static List<Article> runShard(Renderers renderers, LinkPreflight preflight, RenderScheduler scheduler,
+                                        AppConfig config, List<Article> articles, long startTime)
+          throws IOException, InterruptedException {
+    try (JobDirectory jobs = new JobDirectory(Paths.get(config.getJobDir()), config.getJobBatchSize(),
+            config.getJobLeaseSeconds())) {
+      jobs.initialize(articles);
+      log.info("分片模式：工作进程 " + jobs.getWorkerId() + "，任务目录 " + config.getJobDir());
+      JobDirectory.Batch batch;
+      while ((batch = jobs.claim()) != null) {
+        log.info("领取批次 " + batch.name + "，共" + batch.articles.size() + "个");
+        List<String> outputs = new ArrayList<>();
+        List<Article> failed = runArticles(renderers, preflight, scheduler, config, batch.articles, null, outputs,
+                startTime, true);
+        jobs.complete(batch, outputs, failed);
+      }
+      log.info("没有可领取的批次，本进程共处理" + completed.get() + "个");
+      List<Article> merged = jobs.mergeIfFinished();
+      return merged != null ? merged : new ArrayList<>();
+    }
+  }
+
+  private static void logProgress(long startTime, int completed, long remaining) {
+    long currentTime = System.currentTimeMillis();
+    long elapsedTime = currentTime - startTime; // 计算耗时
+    long seconds = elapsedTime / 1000;
+    long minutes = seconds / 60;
+    seconds = seconds % 60;
+    log.info("当前耗时: " + minutes + "分" + seconds + "秒");
+    log.info("已完成" + completed + "个");
+    if (remaining >= 0) {
+      log.info("剩余" + remaining + "个");
+    }
+  }
+
+  /**
+   * PDF输出目录：配置了 outputDir 时使用该目录，否则为桌面 urltopdf 文件夹
+   */
+  private static Path outputRoot(AppConfig config) {
+    if (config.getOutputDir() != null && !config.getOutputDir().isBlank()) {
+      return Paths.get(config.getOutputDir());
+    }
+    return Paths.get(FileUtils.getDesktopPath(), "urltopdf");
+  }
+
+  private static void randomSleep() throws InterruptedException {
+    // 随机时间睡眠
+    Random rand = new Random();
+    int randomNum = rand.nextInt(3000 - 1000 + 1) + 1000; // [1000, 3000]
+    log.info("随机等待" + randomNum + "ms");
+    Thread.sleep(randomNum);
+  }
+
+  /**
+   * 把输出目录中的PDF合并成分卷
+   */
+  private static void bundleVolumes(File folder, AppConfig config) {
+    try {
+      PDFBundler.bundle(folder, new File(folder, "volumes"), config.getBundleMaxArticles(),
+              config.getBundleMaxMegabytes() * 1024L * 1024L, config.isBundleByMonth());
+    } catch (Exception e) {
+      log.error("合并分卷时出错: ", e);
+    }
+  }
+
+  private static void extracted(File folder, AppConfig config) {
     // 弹出对话框让用户决定是否进行压缩处理
     SwingUtilities.invokeLater(() -> {
       int option = JOptionPane.showConfirmDialog(
           null,
-          "PDF生成已完成，是否需要对" + FileUtils.getDesktopPath() + File.separator + "urltopdf/" + "中的pdf" + "进行压缩处理？",
+          "PDF生成已完成，是否需要对" + folder.getPath() + File.separator + "中的pdf" + "进行压缩处理？",
           "PDF压缩选项",
           JOptionPane.YES_NO_OPTION,
           JOptionPane.QUESTION_MESSAGE
@@ -209,24 +501,24 @@ public class Main {
       if (option == JOptionPane.YES_OPTION) {
         // 在新线程中执行压缩操作，避免阻塞UI线程。否则无法实时看到log打印
         new Thread(() -> {
-          List<String> compressErrorArticles = new ArrayList<>();
+          List<String> compressErrorArticles = Collections.synchronizedList(new ArrayList<>());
           log.info("用户选择进行PDF压缩处理");
 
           try {
-            String folderPath = FileUtils.getDesktopPath() + File.separator + "urltopdf";
-            File folder = new File(folderPath);
+            String folderPath = folder.getPath();
             if (!folder.exists() || !folder.isDirectory()) {
               log.error("文件夹不存在: " + folderPath);
               return;
             }
 
-            File[] files = folder.listFiles((dir, name) -> name.toLowerCase().endsWith(".pdf"));
-            if (files == null || files.length == 0) {
+            // 按输出清单枚举，不扫描目录
+            List<File> files = OutputStore.listOutputs(folder);
+            if (files.isEmpty()) {
               log.info("文件夹中没有PDF文件: " + folderPath);
               return;
             }
 
-            log.info("开始批量压缩PDF文件，共" + files.length + "个文件");
+            log.info("开始批量压缩PDF文件，共" + files.size() + "个文件");
 
             // 创建compressed目录（如果不存在）
             String compressedDirPath = folderPath + File.separator + "compressed";
@@ -238,26 +530,33 @@ public class Main {
               }
             }
 
+            // 多个文件同时压缩，同时进行的数量按耗时和内存使用情况自动调整
+            int maxCompressors = config.getMaxCompressors() > 0 ? config.getMaxCompressors()
+                    : Runtime.getRuntime().availableProcessors();
+            ConcurrencyController slots = new ConcurrencyController("压缩", Math.max(1, maxCompressors / 2),
+                    maxCompressors, false, 0, concurrencyMetricsPath());
+            ExecutorService pool = Executors.newFixedThreadPool(maxCompressors, r -> {
+              Thread thread = new Thread(r, "pdf-compress");
+              thread.setDaemon(true);
+              return thread;
+            });
             for (File file : files) {
-              try {
-                String compressedFilePath = compressedDirPath + File.separator + file.getName();
-                File compressedPdf = new File(compressedFilePath);
-
-                // 执行压缩
-                PDFCompressor.compressPdf(file, compressedPdf);
-
-                // 检查压缩是否成功
-                if (compressedPdf.exists() && compressedPdf.length() > 0) {
-                  log.info("PDF压缩成功: " + file.getPath());
-                } else {
-                  log.error("PDF压缩失败或生成的文件为空: " + file.getPath());
+              slots.acquire();
+              pool.execute(() -> {
+                long start = System.currentTimeMillis();
+                try {
+                  compressFile(folder, compressedDir, file, compressErrorArticles);
+                } catch (OutOfMemoryError e) {
+                  log.error("PDF压缩时内存不足，减少同时压缩的数量: " + file.getPath());
                   compressErrorArticles.add(file.getPath());
+                  slots.backOff("内存溢出");
+                } finally {
+                  slots.release(System.currentTimeMillis() - start, file.length() / 1024.0 / 1024.0);
                 }
-              } catch (Exception e) {
-                log.error("PDF压缩失败。", e);
-                compressErrorArticles.add(file.getPath());
-              }
+              });
             }
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
             log.info("批量压缩完成");
             if (!compressErrorArticles.isEmpty()) {
               String collect = String.join("\n", compressErrorArticles);
@@ -275,6 +574,363 @@ public class Main {
     });
   }
 
+  private static BrowserType.LaunchOptions launchOptions() {
+    // 设置为无头模式
+    return new BrowserType.LaunchOptions().setHeadless(true);
+  }
+
+  private static Browser.NewContextOptions contextOptions() {
+    // 设置视口大小
+    return new Browser.NewContextOptions().setViewportSize(1920, 1080);
+  }
+
+  private static Path concurrencyMetricsPath() {
+    return Paths.get(FileUtils.getDesktopPath() + FileUtils.CONCURRENCY_FILE_PATH);
+  }
+
+  /**
+   * 一次渲染任务及其结果
+   */
+  private static class RenderJob {
+    final Article article;
+    final String link;
+    final int attempt;
+    // 上次失败的类别，首次渲染为 null
+    final RenderFailure.Kind previous;
+    // 按预计耗时计算的工作量，用于并发控制比较耗时
+    final double units;
+    String output;
+    RenderFailure failure;
+    long millis;
+
+    RenderJob(Article article, String link, int attempt, RenderFailure.Kind previous, long expectedMillis) {
+      this.article = article;
+      this.link = link;
+      this.attempt = attempt;
+      this.previous = previous;
+      this.units = expectedMillis / 1000.0;
+    }
+
+    void execute(PageSlot slot, ArticleRenderer renderer, OutputStore store) {
+      long start = System.currentTimeMillis();
+      try {
+        output = processArticle(slot, renderer, store, article, link, attempt, previous);
+      } catch (RenderFailure e) {
+        failure = e;
+      }
+      millis = System.currentTimeMillis() - start;
+    }
+  }
+
+  /**
+   * 执行渲染任务的槽位
+   */
+  private interface Renderers extends AutoCloseable {
+
+    /**
+     * 还可以派发的任务数
+     */
+    int available();
+
+    /**
+     * 已派发但还没有取回结果的任务数
+     */
+    int inFlight();
+
+    void submit(RenderJob job) throws InterruptedException;
+
+    /**
+     * 取回一个完成的任务
+     *
+     * @param timeoutMillis 最长等待时间，小于 0 表示一直等待
+     * @return 超时返回 null
+     */
+    RenderJob take(long timeoutMillis) throws InterruptedException;
+
+    /**
+     * 每处理完一篇文章后调用
+     */
+    void pace() throws InterruptedException;
+
+    @Override
+    void close();
+  }
+
+  /**
+   * 单个页面，在当前线程中依次渲染
+   */
+  private static class InlineRenderers implements Renderers {
+    private final PageSlot slot;
+    private final ArticleRenderer renderer;
+    private final OutputStore store;
+    private RenderJob done;
+
+    InlineRenderers(PageSlot slot, ArticleRenderer renderer, OutputStore store) {
+      this.slot = slot;
+      this.renderer = renderer;
+      this.store = store;
+    }
+
+    @Override
+    public int available() {
+      return done == null ? 1 : 0;
+    }
+
+    @Override
+    public int inFlight() {
+      return done == null ? 0 : 1;
+    }
+
+    @Override
+    public void submit(RenderJob job) {
+      job.execute(slot, renderer, store);
+      done = job;
+    }
+
+    @Override
+    public RenderJob take(long timeoutMillis) {
+      RenderJob job = done;
+      done = null;
+      return job;
+    }
+
+    @Override
+    public void pace() throws InterruptedException {
+      randomSleep();
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  /**
+   * 多个浏览器同时渲染：每个槽位一个线程，各自创建 Playwright 和浏览器（Playwright 对象不能跨线程使用）。
+   * 同时进行的任务数由 ConcurrencyController 决定，槽位数增加时启动新的线程，减少时多出的槽位关闭浏览器释放内存。
+   * 配置了浏览器池时各槽位连接池中负载最低的浏览器，连接断开后下次渲染前重新连接
+   */
+  private static class RenderWorkers implements Renderers {
+    private static final long POLL_MILLIS = 500;
+
+    private final AppConfig config;
+    private final ArticleRenderer renderer;
+    private final OutputStore store;
+    private final ConcurrencyController controller;
+    // 远程浏览器池，为 null 时各槽位启动本地浏览器
+    private final BrowserPool pool;
+    private final BlockingQueue<RenderJob> tasks = new LinkedBlockingQueue<>();
+    private final BlockingQueue<RenderJob> results = new LinkedBlockingQueue<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running = true;
+    private int inFlight;
+
+    RenderWorkers(AppConfig config, ArticleRenderer renderer, OutputStore store, ConcurrencyController controller,
+                  BrowserPool pool) {
+      this.config = config;
+      this.renderer = renderer;
+      this.store = store;
+      this.controller = controller;
+      this.pool = pool;
+    }
+
+    @Override
+    public int available() {
+      while (threads.size() < controller.getLimit()) {
+        int index = threads.size();
+        Thread thread = new Thread(() -> work(index), "renderer-" + index);
+        thread.setDaemon(true);
+        thread.start();
+        threads.add(thread);
+      }
+      return controller.available();
+    }
+
+    @Override
+    public int inFlight() {
+      return inFlight;
+    }
+
+    @Override
+    public void submit(RenderJob job) throws InterruptedException {
+      controller.acquire();
+      inFlight++;
+      tasks.add(job);
+    }
+
+    @Override
+    public RenderJob take(long timeoutMillis) throws InterruptedException {
+      RenderJob job = timeoutMillis < 0 ? results.take() : results.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+      if (job != null) {
+        inFlight--;
+      }
+      return job;
+    }
+
+    @Override
+    public void pace() {
+      // 各槽位在自己的线程中随机等待
+    }
+
+    @Override
+    public void close() {
+      running = false;
+      for (Thread thread : threads) {
+        try {
+          thread.join(30_000);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+
+    private void work(int index) {
+      Playwright playwright = null;
+      Browser browser = null;
+      PageSlot slot = null;
+      try {
+        while (running) {
+          if (index >= controller.getLimit()) {
+            // 槽位已停用，关闭浏览器释放内存
+            if (playwright != null) {
+              log.info("渲染槽位" + index + (pool != null ? "已停用，断开浏览器连接" : "已停用，关闭浏览器"));
+              closeQuietly(slot, browser, playwright);
+              playwright = null;
+              browser = null;
+              slot = null;
+            }
+            Thread.sleep(POLL_MILLIS);
+            continue;
+          }
+          RenderJob job = tasks.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+          if (job == null) {
+            continue;
+          }
+          if (browser == null) {
+            try {
+              if (playwright == null) {
+                // 并发创建 Playwright 时驱动安装检查可能冲突，逐个创建
+                synchronized (RenderWorkers.class) {
+                  playwright = PlaywrightBootstrap.create(config.isFastStartup());
+                }
+              }
+              browser = pool != null ? pool.connect(playwright) : playwright.chromium().launch(launchOptions());
+              slot = new PageSlot(browser.newContext(contextOptions()));
+              log.info("渲染槽位" + index + (pool != null ? "已连接浏览器" : "已启动浏览器"));
+            } catch (RuntimeException e) {
+              log.error("渲染槽位" + index + (pool != null ? "连接浏览器失败" : "启动浏览器失败"), e);
+              closeQuietly(slot, browser, playwright);
+              playwright = null;
+              browser = null;
+              slot = null;
+              job.failure = new RenderFailure(RenderFailure.Kind.CRASH,
+                      pool != null ? "连接浏览器失败" : "浏览器启动失败", e);
+              finish(job);
+              continue;
+            }
+          }
+          job.execute(slot, renderer, store);
+          if (!browser.isConnected()) {
+            // 浏览器已退出或连接断开，下次渲染前重新启动或连接
+            log.warn("渲染槽位" + index + "的浏览器连接已断开");
+            closeQuietly(slot, browser, null);
+            browser = null;
+            slot = null;
+          }
+          finish(job);
+          randomSleep();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } finally {
+        closeQuietly(slot, browser, playwright);
+      }
+    }
+
+    private void finish(RenderJob job) {
+      results.add(job);
+      controller.release(job.millis, job.units);
+    }
+
+    private static void closeQuietly(PageSlot slot, Browser browser, Playwright playwright) {
+      try {
+        if (slot != null) {
+          slot.close();
+        }
+        if (browser != null) {
+          browser.close();
+        }
+        if (playwright != null) {
+          playwright.close();
+        }
+      } catch (RuntimeException e) {
+        log.debug("关闭浏览器时出错", e);
+      }
+    }
+  }
+
+  /**
+   * 压缩单个PDF，保持与输出目录相同的子目录结构
+   */
+  private static void compressFile(File folder, File compressedDir, File file, List<String> compressErrorArticles) {
+    try {
+      File compressedPdf = new File(compressedDir, folder.toPath().relativize(file.toPath()).toString());
+      File parent = compressedPdf.getParentFile();
+      if (!parent.exists() && !parent.mkdirs()) {
+        log.error("无法创建目录: " + parent.getPath());
+      }
+
+      // 执行压缩
+      PDFCompressor.compressPdf(file, compressedPdf);
+
+      // 检查压缩是否成功
+      if (compressedPdf.exists() && compressedPdf.length() > 0) {
+        log.info("PDF压缩成功: " + file.getPath());
+      } else {
+        log.error("PDF压缩失败或生成的文件为空: " + file.getPath());
+        compressErrorArticles.add(file.getPath());
+      }
+    } catch (Exception e) {
+      log.error("PDF压缩失败。", e);
+      compressErrorArticles.add(file.getPath());
+    }
+  }
+
+  /**
+   * 当前使用的浏览器页面，渲染进程崩溃后关闭，下次使用时重新创建
+   */
+  private static class PageSlot implements AutoCloseable {
+    private final BrowserContext context;
+    private Page page;
+
+    PageSlot(BrowserContext context) {
+      this.context = context;
+    }
+
+    Page get() {
+      if (page == null) {
+        page = context.newPage();
+      }
+      return page;
+    }
+
+    void reset() {
+      if (page != null) {
+        try {
+          page.close();
+        } catch (PlaywrightException e) {
+          // 页面已崩溃
+        }
+        page = null;
+      }
+    }
+
+    @Override
+    public void close() {
+      reset();
+    }
+  }
+
   private static void createAndShowGUI() {
     JFrame frame = new JFrame("实时日志监控");
     frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
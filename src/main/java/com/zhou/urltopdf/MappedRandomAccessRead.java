@@ -0,0 +1,181 @@
+package com.zhou.urltopdf;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.io.RandomAccessRead;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 基于内存映射文件的 RandomAccessRead
+ * <p>
+ * 用 FileChannel.map 映射整个PDF文件，解析器追踪 xref 偏移时的频繁跳转只是移动位置，
+ * 不再经过带缓冲的文件流反复读取和复制；文件内容由操作系统页缓存提供，多个进程/线程读取同一文件时共享。
+ * 超过 1GB 的文件按段映射。关闭时主动释放映射，避免 Windows 上文件在GC之前一直被占用。
+ */
+@Slf4j
+class MappedRandomAccessRead implements RandomAccessRead {
+
+  // 每段映射的大小
+  private static final long SEGMENT_SIZE = 1L << 30;
+
+  private MappedByteBuffer[] segments;
+  private final long length;
+  private long position;
+
+  MappedRandomAccessRead(File file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      length = channel.size();
+      int count = (int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+      segments = new MappedByteBuffer[Math.max(1, count)];
+      for (int i = 0; i < count; i++) {
+        long start = i * SEGMENT_SIZE;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, length - start));
+      }
+      if (count == 0) {
+        segments[0] = channel.map(FileChannel.MapMode.READ_ONLY, 0, 0);
+      }
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    checkClosed();
+    if (position >= length) {
+      return -1;
+    }
+    int value = segments[(int) (position / SEGMENT_SIZE)].get((int) (position % SEGMENT_SIZE)) & 0xFF;
+    position++;
+    return value;
+  }
+
+  @Override
+  public int read(byte[] b) throws IOException {
+    return read(b, 0, b.length);
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    checkClosed();
+    if (position >= length) {
+      return -1;
+    }
+    int total = 0;
+    while (total < len && position < length) {
+      MappedByteBuffer segment = segments[(int) (position / SEGMENT_SIZE)];
+      int offset = (int) (position % SEGMENT_SIZE);
+      int n = Math.min(len - total, segment.limit() - offset);
+      // 绝对位置的批量读取，不修改缓冲区自身的位置
+      segment.get(offset, b, off + total, n);
+      total += n;
+      position += n;
+    }
+    return total;
+  }
+
+  @Override
+  public long getPosition() throws IOException {
+    checkClosed();
+    return position;
+  }
+
+  @Override
+  public void seek(long position) throws IOException {
+    checkClosed();
+    if (position < 0) {
+      throw new IOException("无效的位置: " + position);
+    }
+    this.position = Math.min(position, length);
+  }
+
+  @Override
+  public long length() throws IOException {
+    checkClosed();
+    return length;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return segments == null;
+  }
+
+  @Override
+  public int peek() throws IOException {
+    int value = read();
+    if (value != -1) {
+      position--;
+    }
+    return value;
+  }
+
+  @Override
+  public void rewind(int bytes) throws IOException {
+    checkClosed();
+    seek(position - bytes);
+  }
+
+  @Override
+  public byte[] readFully(int length) throws IOException {
+    byte[] bytes = new byte[length];
+    int total = 0;
+    while (total < length) {
+      int n = read(bytes, total, length - total);
+      if (n < 0) {
+        throw new EOFException();
+      }
+      total += n;
+    }
+    return bytes;
+  }
+
+  @Override
+  public boolean isEOF() throws IOException {
+    checkClosed();
+    return position >= length;
+  }
+
+  @Override
+  public int available() throws IOException {
+    checkClosed();
+    return (int) Math.min(length - position, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public void close() {
+    if (segments == null) {
+      return;
+    }
+    for (MappedByteBuffer segment : segments) {
+      unmap(segment);
+    }
+    segments = null;
+  }
+
+  private void checkClosed() throws IOException {
+    if (segments == null) {
+      throw new IOException("文件已关闭");
+    }
+  }
+
+  /**
+   * 立即释放映射（JDK 9+ 的 Unsafe.invokeCleaner），失败时留给GC回收
+   */
+  private static void unmap(MappedByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field field = unsafeClass.getDeclaredField("theUnsafe");
+      field.setAccessible(true);
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      invokeCleaner.invoke(field.get(null), buffer);
+    } catch (Exception e) {
+      log.debug("释放内存映射失败，等待GC回收: ", e);
+    }
+  }
+}
@@ -0,0 +1,294 @@
+package com.zhou.urltopdf;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 生成PDF的输出目录
+ * <p>
+ * 文件名为“日期时间_标题.pdf”。开启分目录时按链接的哈希值放入 256 个子目录之一，避免单个目录下文件过多。
+ * 先写入同目录下的临时文件（文件名包含进程号和序号，同时渲染的文章互不干扰），完成后原子重命名为目标文件，
+ * 崩溃时不会留下不完整的PDF。
+ * 最终文件名在提交时持有清单文件锁确定（多个渲染槽位或多进程共用同一输出目录时安全）：
+ * 同名文件已属于其他链接时，在文件名后追加链接哈希，同一链接重复处理时总是得到同一个文件名。
+ * 每生成一个文件向 manifest.jsonl 追加一行记录，压缩等后续步骤按清单枚举输出，不需要扫描目录。
+ */
+@Slf4j
+class OutputStore {
+
+  static final String MANIFEST_FILE = "manifest.jsonl";
+
+  private static final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+  private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
+
+  private final Path root;
+  private final boolean sharded;
+  // 临时文件序号
+  private final AtomicLong tempSeq = new AtomicLong();
+
+  /**
+   * 清单中的一条记录
+   */
+  static class ManifestEntry {
+    String path;
+    String link;
+    String title;
+    long createTime;
+    long size;
+    long time;
+  }
+
+  /**
+   * 预留的输出位置：先写临时文件，再提交为目标文件
+   */
+  static class Target {
+    // 首选的目标文件，提交时同名文件属于其他链接则改用带链接哈希的文件名
+    final Path path;
+    // 带链接哈希的文件名
+    final Path hashedPath;
+    final Path temp;
+    final Article article;
+
+    Target(Path path, Path hashedPath, Path temp, Article article) {
+      this.path = path;
+      this.hashedPath = hashedPath;
+      this.temp = temp;
+      this.article = article;
+    }
+  }
+
+  OutputStore(Path root, boolean sharded) throws IOException {
+    this.root = root;
+    this.sharded = sharded;
+    Files.createDirectories(root);
+  }
+
+  Path getRoot() {
+    return root;
+  }
+
+  /**
+   * 为文章预留输出位置
+   */
+  Target reserve(Article article) throws IOException {
+    String dateStr = "";
+    try {
+      LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochSecond(article.getCreate_time()),
+              ZoneId.systemDefault());
+      dateStr = dateTime.format(DATE_FORMAT);
+    } catch (Exception e) {
+      log.info("时间格式化错误。若无需时间字段，请忽略...");
+    }
+    String title = StringUtils.sanitizeFilename(article.getTitle());
+    String link = article.getLink() == null ? "" : article.getLink();
+    String hash = sha1(link);
+
+    Path dir = sharded ? root.resolve(hash.substring(0, 2)) : root;
+    Files.createDirectories(dir);
+    Path path = dir.resolve(dateStr + "_" + title + ".pdf");
+    Path hashedPath = dir.resolve(dateStr + "_" + title + "_" + hash.substring(0, 8) + ".pdf");
+    Path temp = dir.resolve("." + hash.substring(0, 8) + "-" + ProcessHandle.current().pid() + "-"
+            + tempSeq.incrementAndGet() + ".pdf.tmp");
+    return new Target(path, hashedPath, temp, article);
+  }
+
+  /**
+   * 确定最终文件名，把写好的临时文件原子重命名为目标文件，并追加清单记录
+   *
+   * @return 最终的文件路径
+   */
+  synchronized Path commit(Target target) throws IOException {
+    String link = target.article.getLink() == null ? "" : target.article.getLink();
+    try (FileChannel channel = FileChannel.open(root.resolve(MANIFEST_FILE), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      // 持有锁期间其他进程不能提交，同名文件的归属不会变化
+      FileLock lock = channel.lock();
+      try {
+        Path path = target.path;
+        if (Files.exists(path) && !link.equals(owner(path))) {
+          // 同名文件属于其他链接，按链接哈希区分
+          path = target.hashedPath;
+        }
+        Files.move(target.temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        ManifestEntry entry = new ManifestEntry();
+        entry.path = relativize(path);
+        entry.link = target.article.getLink();
+        entry.title = target.article.getTitle();
+        entry.createTime = target.article.getCreate_time();
+        entry.size = Files.size(path);
+        entry.time = System.currentTimeMillis();
+        byte[] line = (gson.toJson(entry) + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        return path;
+      } finally {
+        lock.release();
+      }
+    }
+  }
+
+  /**
+   * 放弃写入，删除临时文件
+   */
+  void discard(Target target) {
+    try {
+      Files.deleteIfExists(target.temp);
+    } catch (IOException e) {
+      log.warn("删除临时文件失败: " + target.temp, e);
+    }
+  }
+
+  String relativize(Path path) {
+    return root.relativize(path).toString().replace(File.separatorChar, '/');
+  }
+
+  /**
+   * 已有文件所属的链接（清单中该路径的最后一条记录），没有记录时返回 null。
+   * 逐行读取清单，只在首选文件名已存在时调用；只解析包含该路径的行
+   */
+  private String owner(Path path) throws IOException {
+    Path manifest = root.resolve(MANIFEST_FILE);
+    String relative = relativize(path);
+    String needle = gson.toJson(relative);
+    String owner = null;
+    try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.contains(needle)) {
+          continue;
+        }
+        ManifestEntry entry = parse(line);
+        if (entry != null && relative.equals(entry.path)) {
+          owner = entry.link == null ? "" : entry.link;
+        }
+      }
+    }
+    return owner;
+  }
+
+  /**
+   * 列出输出目录中的PDF
+   */
+  static List<File> listOutputs(File folder) {
+    List<File> files = new ArrayList<>();
+    for (ManifestEntry entry : readEntries(folder)) {
+      files.add(new File(folder, entry.path));
+    }
+    return files;
+  }
+
+  /**
+   * 读取输出目录中各PDF的记录：有清单时按清单枚举（同一路径取最后一条，跳过已不存在的文件），
+   * 没有清单时（旧版本生成的目录）扫描目录，标题和创建时间从文件名中解析
+   */
+  static List<ManifestEntry> readEntries(File folder) {
+    Path manifest = folder.toPath().resolve(MANIFEST_FILE);
+    if (!Files.exists(manifest)) {
+      return scanEntries(folder);
+    }
+    Map<String, ManifestEntry> entries = new LinkedHashMap<>();
+    try (BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        ManifestEntry entry = parse(line);
+        if (entry != null) {
+          entries.remove(entry.path);
+          entries.put(entry.path, entry);
+        }
+      }
+    } catch (IOException e) {
+      log.error("读取输出清单失败: " + manifest, e);
+    }
+    List<ManifestEntry> result = new ArrayList<>();
+    for (ManifestEntry entry : entries.values()) {
+      if (new File(folder, entry.path).isFile()) {
+        result.add(entry);
+      }
+    }
+    return result;
+  }
+
+  private static List<ManifestEntry> scanEntries(File folder) {
+    List<ManifestEntry> result = new ArrayList<>();
+    File[] files = folder.listFiles((dir, name) -> name.toLowerCase().endsWith(".pdf"));
+    if (files == null) {
+      return result;
+    }
+    for (File file : files) {
+      ManifestEntry entry = new ManifestEntry();
+      String name = file.getName();
+      entry.path = name;
+      entry.title = name.substring(0, name.length() - ".pdf".length());
+      entry.size = file.length();
+      entry.createTime = file.lastModified() / 1000;
+      // 文件名格式：yyyy-MM-dd_HH-mm-ss_标题.pdf
+      int prefix = "yyyy-MM-dd_HH-mm-ss_".length();
+      if (entry.title.length() > prefix) {
+        try {
+          entry.createTime = LocalDateTime.parse(name.substring(0, prefix - 1), DATE_FORMAT)
+                  .atZone(ZoneId.systemDefault()).toEpochSecond();
+          entry.title = entry.title.substring(prefix);
+        } catch (DateTimeParseException e) {
+          // 不是程序生成的文件名，保留完整文件名作为标题
+        }
+      }
+      result.add(entry);
+    }
+    return result;
+  }
+
+  private static ManifestEntry parse(String line) {
+    if (line.isBlank()) {
+      return null;
+    }
+    try {
+      ManifestEntry entry = gson.fromJson(line, ManifestEntry.class);
+      return entry != null && entry.path != null ? entry : null;
+    } catch (JsonParseException e) {
+      // 崩溃时写了一半的行
+      return null;
+    }
+  }
+
+  private static String sha1(String text) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+      StringBuilder hex = new StringBuilder();
+      for (byte b : digest) {
+        hex.append(String.format("%02x", b));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
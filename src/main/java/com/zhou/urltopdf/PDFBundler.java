@@ -0,0 +1,561 @@
+package com.zhou.urltopdf;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSBoolean;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSFloat;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdfwriter.COSWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.zhou.urltopdf.CompactPdfWriter.ascii;
+
+/**
+ * 把输出目录中的文章PDF按创建时间顺序合并成分卷，每篇文章对应一个书签
+ * <p>
+ * 不使用 PDFMergerUtility：它把所有页面的对象树导入同一个 PDDocument，内存随分卷大小增长。
+ * 这里逐篇加载（临时文件缓存），把页面及其引用的对象重新编号后直接写入分卷文件，流数据按原样复制；
+ * 关闭文章后只保留对象偏移、页面编号和书签标题。字体和图片按内容哈希去重，多篇文章共用的字体、
+ * 图标等只写一次。分卷按文章数、大小或月份切分。
+ * 文章内部通过命名目标实现的链接（目录锚点等）不保留。
+ */
+@Slf4j
+public class PDFBundler {
+
+  private static final DateTimeFormatter MONTH_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM");
+
+  private PDFBundler() {
+  }
+
+  /**
+   * 合并输出目录中的PDF
+   *
+   * @param folder      输出目录（按 manifest.jsonl 枚举文章）
+   * @param outputDir   分卷保存目录
+   * @param maxArticles 每卷最多文章数，0 表示不限
+   * @param maxBytes    每卷最大字节数（按原文件大小估算），0 表示不限
+   * @param byMonth     是否按文章创建时间的月份分卷
+   * @return 生成的分卷文件
+   */
+  public static List<File> bundle(File folder, File outputDir, int maxArticles, long maxBytes,
+                                  boolean byMonth) throws IOException {
+    List<OutputStore.ManifestEntry> entries = new ArrayList<>(OutputStore.readEntries(folder));
+    entries.sort(Comparator.comparingLong((OutputStore.ManifestEntry entry) -> entry.createTime)
+            .thenComparing(entry -> entry.path));
+    if (entries.isEmpty()) {
+      log.info("文件夹中没有PDF文件: " + folder.getPath());
+      return Collections.emptyList();
+    }
+    if (!outputDir.exists() && !outputDir.mkdirs()) {
+      throw new IOException("无法创建分卷目录: " + outputDir.getPath());
+    }
+    log.info("开始合并分卷，共" + entries.size() + "篇文章");
+
+    List<File> volumes = new ArrayList<>();
+    List<String> failed = new ArrayList<>();
+    Volume volume = null;
+    String group = null;
+    int part = 0;
+    try {
+      for (OutputStore.ManifestEntry entry : entries) {
+        File file = new File(folder, entry.path);
+        String entryGroup = byMonth ? Instant.ofEpochSecond(entry.createTime)
+                .atZone(ZoneId.systemDefault()).format(MONTH_FORMAT) : "";
+        boolean full = volume != null && ((maxArticles > 0 && volume.articles >= maxArticles)
+                || (maxBytes > 0 && volume.size() + file.length() > maxBytes));
+        if (volume != null && (full || !entryGroup.equals(group))) {
+          volumes.add(volume.finish());
+          volume = null;
+        }
+        if (volume == null) {
+          part = entryGroup.equals(group) ? part + 1 : 1;
+          group = entryGroup;
+          String name = (byMonth ? "urltopdf_" + group : "urltopdf") + String.format("_%03d", part);
+          volume = new Volume(new File(outputDir, name + ".pdf"));
+        }
+        String title = entry.title != null && !entry.title.isEmpty() ? entry.title : file.getName();
+        try {
+          volume.append(file, title);
+        } catch (IOException | RuntimeException e) {
+          log.error("合并失败，跳过: " + file.getPath(), e);
+          failed.add(file.getPath());
+        }
+      }
+      if (volume != null) {
+        volumes.add(volume.finish());
+        volume = null;
+      }
+    } finally {
+      if (volume != null) {
+        volume.close();
+      }
+    }
+    log.info("合并分卷完成，共" + volumes.size() + "卷，保存在 " + outputDir.getPath());
+    if (!failed.isEmpty()) {
+      log.error("====出现{}个pdf合并失败。如下：\n [{}]", failed.size(), String.join("\n", failed));
+    }
+    return volumes;
+  }
+
+  /**
+   * 正在写出的一个分卷
+   * <p>
+   * 固定编号：1 目录（Catalog），2 页面树根节点，3 书签根节点，4 文档信息；文章对象从 5 开始编号。
+   */
+  static class Volume implements Closeable {
+
+    private static final int CATALOG = 1;
+    private static final int PAGES = 2;
+    private static final int OUTLINES = 3;
+    private static final int INFO = 4;
+
+    private final File target;
+    private final File temp;
+    private final CompactPdfWriter.CountingOutputStream out;
+
+    // 对象编号 -> 文件偏移，0 表示未写出（追加失败的文章遗留的编号）
+    private long[] offsets = new long[1024];
+    private int nextNumber = INFO + 1;
+    private final List<Integer> pages = new ArrayList<>();
+    private final List<String> titles = new ArrayList<>();
+    private final List<Integer> firstPages = new ArrayList<>();
+    // 内容哈希 -> 已写出的字体/图片对象编号
+    private final Map<String, Integer> shared = new HashMap<>();
+    private int sharedHits;
+    private long sharedSavedBytes;
+    int articles;
+
+    Volume(File target) throws IOException {
+      this.target = target;
+      this.temp = new File(target.getParentFile(), "." + target.getName() + ".tmp");
+      this.out = new CompactPdfWriter.CountingOutputStream(
+              new BufferedOutputStream(Files.newOutputStream(temp.toPath()), 64 * 1024));
+      ascii(out, "%PDF-1.7\n");
+      out.write(new byte[]{'%', (byte) 0xE2, (byte) 0xE3, (byte) 0xCF, (byte) 0xD3, '\n'});
+    }
+
+    long size() {
+      return out.getCount();
+    }
+
+    /**
+     * 追加一篇文章的全部页面
+     */
+    void append(File file, String title) throws IOException {
+      try (PDDocument document = PDDocument.load(file, MemoryUsageSetting.setupTempFileOnly())) {
+        if (document.isEncrypted()) {
+          throw new IOException("不支持加密的PDF");
+        }
+        if (document.getNumberOfPages() == 0) {
+          log.info("没有页面，跳过: " + file.getPath());
+          return;
+        }
+        firstPages.add(new DocumentCopier().copy(document));
+      }
+      titles.add(title);
+      articles++;
+    }
+
+    /**
+     * 写出页面树、书签、文档信息和交叉引用表，并把临时文件重命名为分卷文件
+     */
+    File finish() throws IOException {
+      writeObject(PAGES, pagesTree());
+      writeObject(OUTLINES, outlines());
+      writeObject(INFO, "<</Title" + pdfString(target.getName().replaceFirst("\\.pdf$", ""))
+              + "/CreationDate" + pdfString(creationDate()) + ">>");
+      writeObject(CATALOG, "<</Type/Catalog/Pages " + PAGES + " 0 R/Outlines " + OUTLINES
+              + " 0 R/PageMode/UseOutlines>>");
+
+      long xrefOffset = out.getCount();
+      StringBuilder table = new StringBuilder("xref\n0 " + nextNumber + "\n0000000000 65535 f\r\n");
+      for (int number = 1; number < nextNumber; number++) {
+        if (offsets[number] > 0) {
+          table.append(String.format(Locale.ROOT, "%010d 00000 n\r\n", offsets[number]));
+        } else {
+          table.append("0000000000 00001 f\r\n");
+        }
+      }
+      ascii(out, table.toString());
+      String id = documentId();
+      ascii(out, "trailer\n<</Size " + nextNumber + "/Root " + CATALOG + " 0 R/Info " + INFO + " 0 R/ID[<"
+              + id + "><" + id + ">]>>\nstartxref\n" + xrefOffset + "\n%%EOF\n");
+      out.close();
+      Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      log.info(String.format("分卷 %s：%d篇文章，%d页，%.2f MB，字体和图片去重%d次，节省 %.2f KB",
+              target.getName(), articles, pages.size(), target.length() / 1024.0 / 1024.0,
+              sharedHits, sharedSavedBytes / 1024.0));
+      return target;
+    }
+
+    /**
+     * 未完成时关闭并删除临时文件
+     */
+    @Override
+    public void close() throws IOException {
+      out.close();
+      Files.deleteIfExists(temp.toPath());
+    }
+
+    private String pagesTree() {
+      StringBuilder kids = new StringBuilder();
+      for (int page : pages) {
+        kids.append(page).append(" 0 R ");
+      }
+      return "<</Type/Pages/Count " + pages.size() + "/Kids[" + kids.toString().trim() + "]>>";
+    }
+
+    /**
+     * 每篇文章一个书签，指向文章首页
+     */
+    private String outlines() throws IOException {
+      if (titles.isEmpty()) {
+        return "<</Type/Outlines/Count 0>>";
+      }
+      int first = nextNumber;
+      for (int i = 0; i < titles.size(); i++) {
+        int number = first + i;
+        StringBuilder item = new StringBuilder("<</Title").append(pdfString(titles.get(i)))
+                .append("/Parent ").append(OUTLINES).append(" 0 R");
+        if (i > 0) {
+          item.append("/Prev ").append(number - 1).append(" 0 R");
+        }
+        if (i < titles.size() - 1) {
+          item.append("/Next ").append(number + 1).append(" 0 R");
+        }
+        item.append("/Dest[").append(firstPages.get(i)).append(" 0 R/XYZ null null null]>>");
+        writeObject(allocate(), item.toString());
+      }
+      return "<</Type/Outlines/First " + first + " 0 R/Last " + (first + titles.size() - 1)
+              + " 0 R/Count " + titles.size() + ">>";
+    }
+
+    private int allocate() {
+      int number = nextNumber++;
+      if (number >= offsets.length) {
+        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      }
+      return number;
+    }
+
+    private void writeObject(int number, String body) throws IOException {
+      offsets[number] = out.getCount();
+      ascii(out, number + " 0 obj\n");
+      out.write(body.getBytes(StandardCharsets.ISO_8859_1));
+      ascii(out, "\nendobj\n");
+    }
+
+    private void writeObject(int number, ByteArrayOutputStream body) throws IOException {
+      offsets[number] = out.getCount();
+      ascii(out, number + " 0 obj\n");
+      body.writeTo(out);
+      ascii(out, "\nendobj\n");
+    }
+
+    private static String pdfString(String text) throws IOException {
+      ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+      COSWriter.writeString(new COSString(text), buffer);
+      return new String(buffer.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    private static String creationDate() {
+      return "D:" + DateTimeFormatter.ofPattern("yyyyMMddHHmmss").format(LocalDateTime.now());
+    }
+
+    private String documentId() throws IOException {
+      MessageDigest md5 = digest("MD5");
+      md5.update(target.getName().getBytes(StandardCharsets.UTF_8));
+      md5.update(Long.toString(System.currentTimeMillis()).getBytes(StandardCharsets.US_ASCII));
+      md5.update(Long.toString(out.getCount()).getBytes(StandardCharsets.US_ASCII));
+      return hex(md5.digest());
+    }
+
+    /**
+     * 复制一篇文章的对象：页面先统一编号（注释等可能引用其他页面），其余间接对象在首次引用时编号后排队写出
+     */
+    private class DocumentCopier {
+
+      private final Map<COSBase, Integer> numbers = new IdentityHashMap<>();
+      private final Deque<COSBase> pending = new ArrayDeque<>();
+      // 正在计算哈希的共享对象，出现循环引用时不再去重
+      private final Map<COSBase, Boolean> hashing = new IdentityHashMap<>();
+
+      /**
+       * @return 文章首页的对象编号
+       */
+      int copy(PDDocument document) throws IOException {
+        List<PDPage> documentPages = new ArrayList<>();
+        List<Integer> documentNumbers = new ArrayList<>();
+        for (PDPage page : document.getPages()) {
+          int number = allocate();
+          numbers.put(page.getCOSObject(), number);
+          documentPages.add(page);
+          documentNumbers.add(number);
+        }
+        for (int i = 0; i < documentPages.size(); i++) {
+          writePage(documentNumbers.get(i), documentPages.get(i).getCOSObject());
+        }
+        while (!pending.isEmpty()) {
+          COSBase object = pending.poll();
+          writeIndirect(numbers.get(object), object);
+        }
+        // 全部写出后才加入页面树，失败的文章不会留下无效的页面引用
+        pages.addAll(documentNumbers);
+        return documentNumbers.get(0);
+      }
+
+      /**
+       * 页面的 Parent 指向分卷的页面树，从上级节点继承的属性直接写到页面上
+       */
+      private void writePage(int number, COSDictionary page) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ascii(body, "<<");
+        for (Map.Entry<COSName, COSBase> entry : page.entrySet()) {
+          if (!COSName.PARENT.equals(entry.getKey())) {
+            writeEntry(body, entry.getKey(), entry.getValue(), false);
+          }
+        }
+        for (COSName key : new COSName[]{COSName.RESOURCES, COSName.MEDIA_BOX, COSName.CROP_BOX, COSName.ROTATE}) {
+          if (!page.containsKey(key)) {
+            COSBase inherited = inherited(page, key);
+            if (inherited != null) {
+              writeEntry(body, key, inherited, false);
+            }
+          }
+        }
+        ascii(body, "/Parent " + PAGES + " 0 R>>");
+        writeObject(number, body);
+      }
+
+      private COSBase inherited(COSDictionary page, COSName key) {
+        COSBase parent = page.getDictionaryObject(COSName.PARENT);
+        for (int depth = 0; parent instanceof COSDictionary && depth < 64; depth++) {
+          COSDictionary node = (COSDictionary) parent;
+          if (node.containsKey(key)) {
+            return node.getItem(key);
+          }
+          parent = node.getDictionaryObject(COSName.PARENT);
+        }
+        return null;
+      }
+
+      private void writeIndirect(int number, COSBase object) throws IOException {
+        if (!(object instanceof COSStream)) {
+          ByteArrayOutputStream body = new ByteArrayOutputStream();
+          writeValue(body, object, false);
+          writeObject(number, body);
+          return;
+        }
+        // 流长度写成间接对象，数据不经过内存缓冲直接复制
+        COSStream stream = (COSStream) object;
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream();
+        writeStreamDictionary(dictionary, stream, false);
+        int lengthNumber = allocate();
+        offsets[number] = out.getCount();
+        ascii(out, number + " 0 obj\n<<");
+        dictionary.writeTo(out);
+        ascii(out, "/Length " + lengthNumber + " 0 R>>stream\n");
+        long start = out.getCount();
+        try (InputStream in = stream.createRawInputStream()) {
+          in.transferTo(out);
+        }
+        long length = out.getCount() - start;
+        ascii(out, "\nendstream\nendobj\n");
+        writeObject(lengthNumber, Long.toString(length));
+      }
+
+      /**
+       * 间接对象的编号：字体和图片按内容去重，其余对象分配新编号并排队写出
+       */
+      private int reference(COSBase object, boolean inShared) throws IOException {
+        Integer number = numbers.get(object);
+        if (number != null) {
+          return number;
+        }
+        if ((inShared || isShared(object)) && !hashing.containsKey(object)) {
+          number = writeShared(object);
+        } else {
+          number = allocate();
+          pending.add(object);
+        }
+        numbers.put(object, number);
+        return number;
+      }
+
+      /**
+       * 字体字典（连同字形文件、ToUnicode 等下级对象）和图片
+       */
+      private boolean isShared(COSBase object) {
+        if (object instanceof COSStream) {
+          return COSName.IMAGE.equals(((COSStream) object).getCOSName(COSName.SUBTYPE));
+        }
+        return object instanceof COSDictionary
+                && COSName.FONT.equals(((COSDictionary) object).getCOSName(COSName.TYPE));
+      }
+
+      /**
+       * 按内容写出共享对象：下级间接对象先按同样方式写出，相同内容的对象编号相同，
+       * 因此引用它们的上级对象序列化结果也相同
+       */
+      private int writeShared(COSBase object) throws IOException {
+        hashing.put(object, Boolean.TRUE);
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        MessageDigest sha = digest("SHA-256");
+        long streamLength = 0;
+        try {
+          if (object instanceof COSStream) {
+            writeStreamDictionary(body, (COSStream) object, true);
+            sha.update(body.toByteArray());
+            try (InputStream in = new DigestInputStream(((COSStream) object).createRawInputStream(), sha)) {
+              streamLength = in.transferTo(OutputStream.nullOutputStream());
+            }
+          } else {
+            writeValue(body, object, true);
+            sha.update(body.toByteArray());
+          }
+        } finally {
+          hashing.remove(object);
+        }
+        String key = (object instanceof COSStream ? "S" : "D") + hex(sha.digest());
+        Integer existing = shared.get(key);
+        if (existing != null) {
+          sharedHits++;
+          sharedSavedBytes += body.size() + streamLength;
+          return existing;
+        }
+
+        int number = allocate();
+        if (object instanceof COSStream) {
+          offsets[number] = out.getCount();
+          ascii(out, number + " 0 obj\n<<");
+          body.writeTo(out);
+          ascii(out, "/Length " + streamLength + ">>stream\n");
+          try (InputStream in = ((COSStream) object).createRawInputStream()) {
+            in.transferTo(out);
+          }
+          ascii(out, "\nendstream\nendobj\n");
+        } else {
+          writeObject(number, body);
+        }
+        shared.put(key, number);
+        return number;
+      }
+
+      /**
+       * 流字典的条目（不含 Length 和外层尖括号）
+       */
+      private void writeStreamDictionary(OutputStream body, COSStream stream, boolean inShared) throws IOException {
+        for (Map.Entry<COSName, COSBase> entry : stream.entrySet()) {
+          if (!COSName.LENGTH.equals(entry.getKey())) {
+            writeEntry(body, entry.getKey(), entry.getValue(), inShared);
+          }
+        }
+      }
+
+      private void writeEntry(OutputStream body, COSName key, COSBase value, boolean inShared) throws IOException {
+        key.writePDF(body);
+        body.write(' ');
+        writeValue(body, value, inShared);
+      }
+
+      /**
+       * 写出对象：间接对象写成引用，直接字典和数组内联
+       */
+      private void writeValue(OutputStream body, COSBase base, boolean inShared) throws IOException {
+        COSBase value = base;
+        if (base instanceof COSObject) {
+          value = ((COSObject) base).getObject();
+          if (value instanceof COSDictionary || value instanceof COSArray) {
+            ascii(body, reference(value, inShared) + " 0 R");
+            return;
+          }
+        }
+        if (value instanceof COSStream) {
+          ascii(body, reference(value, inShared) + " 0 R");
+        } else if (value instanceof COSDictionary) {
+          ascii(body, "<<");
+          for (Map.Entry<COSName, COSBase> entry : ((COSDictionary) value).entrySet()) {
+            writeEntry(body, entry.getKey(), entry.getValue(), inShared);
+          }
+          ascii(body, ">>");
+        } else if (value instanceof COSArray) {
+          body.write('[');
+          boolean first = true;
+          for (COSBase item : (COSArray) value) {
+            if (!first) {
+              body.write(' ');
+            }
+            writeValue(body, item, inShared);
+            first = false;
+          }
+          body.write(']');
+        } else if (value instanceof COSName) {
+          ((COSName) value).writePDF(body);
+        } else if (value instanceof COSString) {
+          COSWriter.writeString((COSString) value, body);
+        } else if (value instanceof COSInteger) {
+          ((COSInteger) value).writePDF(body);
+        } else if (value instanceof COSFloat) {
+          ((COSFloat) value).writePDF(body);
+        } else if (value instanceof COSBoolean) {
+          ((COSBoolean) value).writePDF(body);
+        } else {
+          ascii(body, "null");
+        }
+      }
+    }
+  }
+
+  private static MessageDigest digest(String algorithm) throws IOException {
+    try {
+      return MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder();
+    for (byte b : bytes) {
+      hex.append(String.format("%02x", b));
+    }
+    return hex.toString();
+  }
+}
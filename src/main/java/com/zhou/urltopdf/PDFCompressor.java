@@ -1,27 +1,34 @@
 package com.zhou.urltopdf;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.pdfbox.contentstream.PDFStreamEngine;
-import org.apache.pdfbox.contentstream.operator.Operator;
-import org.apache.pdfbox.contentstream.operator.state.*;
-import org.apache.pdfbox.contentstream.operator.text.*;
-import org.apache.pdfbox.cos.COSBase;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSObjectKey;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdfparser.PDFParser;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDDocumentCatalog;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.PDMetadata;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.CCITTFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
 import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
 
-import javax.imageio.ImageIO;
+import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 @Slf4j
 public class PDFCompressor {
@@ -37,6 +44,74 @@ public class PDFCompressor {
     CUSTOM    // 自定义压缩
   }
 
+  // 是否通过内存映射读取输入PDF，关闭时使用PDFBox默认的缓冲文件流（用于基准测试对比）
+  private static volatile boolean memoryMappedInput = true;
+
+  static void setMemoryMappedInput(boolean enabled) {
+    memoryMappedInput = enabled;
+  }
+
+  static boolean isMemoryMappedInput() {
+    return memoryMappedInput;
+  }
+
+  // 是否使用对象流和交叉引用流写出紧凑的PDF（1.5+），关闭时使用PDFBox默认的传统 xref 表格式
+  private static volatile boolean compactOutput = true;
+
+  static void setCompactOutput(boolean enabled) {
+    compactOutput = enabled;
+  }
+
+  static boolean isCompactOutput() {
+    return compactOutput;
+  }
+
+  // 紧凑输出时是否再按传统格式完整序列化一次，得到结构压缩节省字节数的精确值（需要重新读取所有流，只用于基准测试）；
+  // 关闭时使用写出过程中的估算值
+  private static volatile boolean measureStructureSavings = false;
+
+  static void setMeasureStructureSavings(boolean enabled) {
+    measureStructureSavings = enabled;
+  }
+
+  /**
+   * 加载PDF文档，默认通过内存映射读取输入文件，文档关闭时释放映射
+   */
+  static PDDocument loadDocument(File inputFile) throws IOException {
+    if (!memoryMappedInput) {
+      return PDDocument.load(inputFile);
+    }
+    MappedRandomAccessRead source = new MappedRandomAccessRead(inputFile);
+    try {
+      PDFParser parser = new PDFParser(source);
+      parser.parse();
+      return parser.getPDDocument();
+    } catch (IOException | RuntimeException e) {
+      source.close();
+      throw e;
+    }
+  }
+
+  /**
+   * 保存文档；开启紧凑输出时把非流对象打包进对象流，并记录结构压缩单独节省的字节数
+   */
+  static void saveDocument(PDDocument document, File outputFile, CompressionStats stats) throws IOException {
+    if (!compactOutput || document.isEncrypted()) {
+      document.save(outputFile);
+      return;
+    }
+    long compactSize = CompactPdfWriter.write(document, outputFile, stats);
+    if (!measureStructureSavings) {
+      log.info(String.format("对象流+交叉引用流：结构压缩节省约 %.2f KB", stats.structureSavedBytes / 1024.0));
+      return;
+    }
+    long classicSize = CompactPdfWriter.measureClassic(document);
+    log.info(String.format("对象流+交叉引用流：传统格式 %.2f KB，紧凑格式 %.2f KB，结构压缩节省 %.2f KB（估算 %.2f KB）",
+            classicSize / 1024.0, compactSize / 1024.0, (classicSize - compactSize) / 1024.0,
+            stats.structureSavedBytes / 1024.0));
+    stats.structureSavedBytes = classicSize - compactSize;
+  }
+
   /**
    * 压缩PDF文件
    *
@@ -46,20 +121,29 @@ public class PDFCompressor {
    * @throws IOException IO异常
    */
   public static void compressPdf(File inputFile, File outputFile, CompressionLevel level) throws IOException {
+    compressPdf(inputFile, outputFile, level, ImageSettings.forLevel(level));
+  }
+
+  /**
+   * 按压缩等级压缩PDF文件，图片使用给定的压缩参数
+   */
+  static CompressionStats compressPdf(File inputFile, File outputFile, CompressionLevel level,
+                                     ImageSettings imageSettings) throws IOException {
     log.info("开始压缩PDF文件：" + inputFile.getName());
     long startTime = System.currentTimeMillis();
     long originalSize = inputFile.length();
+    CompressionStats stats;
 
-    try (PDDocument document = PDDocument.load(inputFile)) {
+    try (PDDocument document = loadDocument(inputFile)) {
       if (CompressionLevel.CUSTOM != level) {
         // 1. 移除不必要的元数据
         removeUnnecessaryMetadata(document);
 
         // 2. 优化图片（最有效的压缩策略）
-        optimizeImages(document, level);
+        stats = optimizeImages(document, imageSettings);
 
         // 3. 优化字体
-        optimizeFonts(document, level);
+        optimizeFonts(document);
 
         // 4. 优化内容流
         optimizeContentStreams(document);
@@ -79,11 +163,11 @@ public class PDFCompressor {
         }
       } else {
         // 优化图片（最有效的压缩策略）
-        optimizeImages(document, level);
+        stats = optimizeImages(document, imageSettings);
       }
 
-      // 9. 保存文档时强制压缩
-      document.save(outputFile);
+      // 9. 保存文档
+      saveDocument(document, outputFile, stats);
     }
 
     long endTime = System.currentTimeMillis();
@@ -96,6 +180,7 @@ public class PDFCompressor {
             compressedSize / 1024.0 / 1024.0,
             compressionRatio,
             (endTime - startTime) / 1000));
+    return stats;
   }
 
   /**
@@ -109,6 +194,21 @@ public class PDFCompressor {
     compressPdf(inputFile, outputFile, CompressionLevel.CUSTOM);
   }
 
+  /**
+   * 压缩PDF文件，使输出不超过目标大小
+   * <p>
+   * 先对每张图片的小样本做试编码建立大小模型，在质量/DPI阶梯上二分搜索满足目标的最高质量，
+   * 只对整份文档做一次（模型偏差时最多几次）完整重编码
+   *
+   * @param inputFile       输入PDF文件
+   * @param outputFile      输出PDF文件
+   * @param targetSizeBytes 目标大小（字节）
+   * @throws IOException IO异常
+   */
+  public static void compressPdfToTargetSize(File inputFile, File outputFile, long targetSizeBytes) throws IOException {
+    TargetSizeCompressor.compress(inputFile, outputFile, targetSizeBytes);
+  }
+
   /**
    * 移除不必要的元数据
    */
@@ -132,48 +232,59 @@ public class PDFCompressor {
   }
 
   /**
-   * 优化图片
+   * 图片压缩参数
    */
-  private static void optimizeImages(PDDocument document, CompressionLevel level) {
-    try {
-      float quality = 0.8f; // 默认质量
-      int maxDPI = 300;     // 默认最大DPI
-      boolean convertToGrayscale = false; // 是否转换为灰度
-      boolean downsampleAllImages = false; // 是否下采样所有图片（无论原始DPI）
-      boolean useJPEG2000 = false; // 是否使用JPEG 2000格式
-      boolean forceWebOptimizedFormat = false; // 是否强制使用网络优化格式
-      boolean binarizeMonochrome = false; // 是否二值化单色图像
-
-      // 根据压缩等级调整参数
+  static class ImageSettings {
+    float quality = 0.8f;                // 默认质量
+    int maxDPI = 300;                    // 默认最大DPI
+    boolean convertToGrayscale = false;  // 是否转换为灰度
+    boolean downsampleAllImages = false; // 是否下采样所有图片（无论原始DPI）
+    boolean useJPEG2000 = false;         // 是否使用JPEG 2000格式
+    boolean binarizeMonochrome = false;  // 是否二值化单色图像
+    boolean fastScaling = false;         // 是否使用快速缩放
+    // 按图片对象编号单独指定的参数（目标大小模式逐图选择档位），未列出的图片使用本参数
+    Map<COSObjectKey, ImageSettings> perImage;
+
+    ImageSettings forImage(COSObjectKey key) {
+      ImageSettings settings = perImage == null || key == null ? null : perImage.get(key);
+      return settings != null ? settings : this;
+    }
+
+    /**
+     * 根据压缩等级生成图片压缩参数
+     */
+    static ImageSettings forLevel(CompressionLevel level) {
+      ImageSettings settings = new ImageSettings();
       switch (level) {
         case LOW:
-          quality = 0.9f;
-          maxDPI = 300;
+          settings.quality = 0.9f;
+          settings.maxDPI = 300;
           break;
         case MEDIUM:
-          quality = 0.7f;
-          maxDPI = 200;
+          settings.quality = 0.7f;
+          settings.maxDPI = 200;
           break;
         case HIGH:
-          quality = 0.5f;
-          maxDPI = 150;
-          convertToGrayscale = true; // 高压缩时转换为灰度
+          settings.quality = 0.5f;
+          settings.maxDPI = 150;
+          settings.convertToGrayscale = true; // 高压缩时转换为灰度
           break;
         case EXTREME:
-          quality = 0.3f;
-          maxDPI = 100;
-          convertToGrayscale = true;
-          downsampleAllImages = true;
-          binarizeMonochrome = true;
+          settings.quality = 0.3f;
+          settings.maxDPI = 100;
+          settings.convertToGrayscale = true;
+          settings.downsampleAllImages = true;
+          settings.binarizeMonochrome = true;
           break;
         case ULTRA_EXTREME:
-          quality = 0.15f; // 超极限压缩的图片质量
-          maxDPI = 72;     // PDF默认DPI
-          convertToGrayscale = true;
-          downsampleAllImages = true;
-          forceWebOptimizedFormat = true;
-          binarizeMonochrome = true;
-          useJPEG2000 = true;
+          settings.quality = 0.15f; // 超极限压缩的图片质量
+          settings.maxDPI = 72;     // PDF默认DPI
+          settings.convertToGrayscale = true;
+          settings.downsampleAllImages = true;
+          settings.binarizeMonochrome = true;
+          settings.useJPEG2000 = true;
+          // 为超极限压缩使用更快速的缩放方法以提高压缩速度
+          settings.fastScaling = true;
           break;
         case CUSTOM:
           /**
@@ -181,159 +292,308 @@ public class PDFCompressor {
            * quality = 0.15f; // 超极限压缩的图片质量
            * maxDPI = 72;     // PDF默认DPI
            * downsampleAllImages = true;
-           * forceWebOptimizedFormat = true;
            * binarizeMonochrome = true;
            */
 
-          quality = 0.5f;
-          maxDPI = 150;
-          downsampleAllImages = true;
-          forceWebOptimizedFormat = true;
-          binarizeMonochrome = true;
+          settings.quality = 0.5f;
+          settings.maxDPI = 150;
+          settings.downsampleAllImages = true;
+          settings.binarizeMonochrome = true;
           break;
       }
+      return settings;
+    }
+  }
 
-      // 遍历所有页面
-      for (PDPage page : document.getPages()) {
-        PDResources resources = page.getResources();
-        Iterable<COSName> xObjectNames = resources.getXObjectNames();
-
-        if (xObjectNames != null) {
-          for (COSName name : xObjectNames) {
-            if (resources.isImageXObject(name)) {
-              PDImageXObject image = (PDImageXObject) resources.getXObject(name);
-
-              // 压缩策略1: 获取原始图像
-              BufferedImage bufferedImage = image.getImage();
-
-              // 压缩策略2: 二值化单色图像（对于ULTRA_EXTREME和EXTREME）
-              if (binarizeMonochrome && isMonochromeImage(bufferedImage)) {
-                bufferedImage = binarizeImage(bufferedImage);
-              }
-
-              // 压缩策略3: 转换为灰度图像（对于高压缩等级）
-              if (convertToGrayscale && bufferedImage.getType() != BufferedImage.TYPE_BYTE_GRAY) {
-                bufferedImage = convertToGrayscale(bufferedImage);
-              }
-
-              // 计算当前DPI（假设页面大小为A4）
-              float pageWidth = page.getMediaBox().getWidth();
-              float dpi = (bufferedImage.getWidth() / pageWidth) * 72; // 72是PDF默认DPI
-
-              // 压缩策略4: 降低图片分辨率
-              boolean needsResizing = downsampleAllImages || dpi > maxDPI;
-
-              if (needsResizing) {
-                // 创建一个新的低分辨率图像
-                int targetDPI = downsampleAllImages ? maxDPI : Math.min((int) dpi, maxDPI);
-                int newWidth = (int) (bufferedImage.getWidth() * targetDPI / dpi);
-                int newHeight = (int) (bufferedImage.getHeight() * targetDPI / dpi);
-
-                // 为超极限压缩使用更快速的缩放方法以提高压缩速度
-                int scalingMethod = level == CompressionLevel.ULTRA_EXTREME ?
-                        BufferedImage.SCALE_FAST : BufferedImage.SCALE_SMOOTH;
-
-                BufferedImage resizedImage = new BufferedImage(
-                        newWidth, newHeight,
-                        bufferedImage.getType() == BufferedImage.TYPE_BYTE_GRAY ?
-                                BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
-
-                resizedImage.createGraphics().drawImage(
-                        bufferedImage.getScaledInstance(newWidth, newHeight, scalingMethod),
-                        0, 0, null);
-
-                bufferedImage = resizedImage;
-              }
-
-              // 压缩策略5: 根据图像类型和压缩等级选择最佳输出格式
-              String outputFormat = "png";
-              if (forceWebOptimizedFormat) {
-                // 对于网络优化，JPEG通常比PNG更高效
-                outputFormat = "jpg";
-              }
-
-              // 替换原始图像
-              PDImageXObject newImage = PDImageXObject.createFromByteArray(
-                      document, imageToByteArrayWithQuality(bufferedImage, outputFormat, quality), "image");
-              resources.put(name, newImage);
-            }
-          }
+  /**
+   * 图片在文档中的一处引用：所在资源字典、资源名称，以及实际绘制尺寸（单位：点）
+   */
+  static class ImagePlacement {
+    final PDResources resources;
+    final COSName name;
+    final PDImageXObject image;
+    final float drawnWidth;
+    final float drawnHeight;
+
+    ImagePlacement(PDResources resources, COSName name, PDImageXObject image, float drawnWidth, float drawnHeight) {
+      this.resources = resources;
+      this.name = name;
+      this.image = image;
+      this.drawnWidth = drawnWidth;
+      this.drawnHeight = drawnHeight;
+    }
+
+    /**
+     * 按图片像素尺寸和绘制尺寸计算有效DPI，取两个方向中较低的一个
+     */
+    float dpi() {
+      float dpiX = image.getWidth() / drawnWidth;
+      float dpiY = image.getHeight() / drawnHeight;
+      return Math.min(dpiX, dpiY) * 72; // 72是PDF默认DPI
+    }
+  }
+
+  /**
+   * 按给定参数优化图片
+   */
+  static CompressionStats optimizeImages(PDDocument document, ImageSettings settings) {
+    CompressionStats stats = new CompressionStats();
+    try {
+      // 同一图片对象可能被多个页面引用，只处理一次
+      Map<COSStream, PDXObject> processed = new IdentityHashMap<>();
+      Map<COSStream, COSObjectKey> keys = settings.perImage != null ? objectKeys(document) : null;
+
+      for (ImagePlacement placement : collectImages(document)) {
+        COSStream original = placement.image.getCOSObject();
+        PDXObject newImage = processed.get(original);
+        if (newImage == null) {
+          ImageSettings imageSettings = keys != null ? settings.forImage(keys.get(original)) : settings;
+          newImage = processImage(document, placement, imageSettings, stats);
+          processed.put(original, newImage);
+        }
+
+        // 替换原始图像
+        if (newImage != placement.image) {
+          placement.resources.put(placement.name, newImage);
         }
       }
+      log.info(stats.toString());
     } catch (Exception e) {
       log.error("优化图片时出错: ", e);
     }
+    return stats;
   }
 
   /**
-   * 优化字体
+   * 文档中各流对象的对象编号；同一文件每次解析得到的编号相同，可用于在两次加载之间对应图片
    */
-  private static void optimizeFonts(PDDocument document, CompressionLevel level) {
-    try {
-      // 对于ULTRA_EXTREME和EXTREME等级，我们可以尝试更多字体优化
-      if (level == CompressionLevel.ULTRA_EXTREME || level == CompressionLevel.EXTREME) {
-        // 遍历所有页面查找并移除未使用的字体
-        removeUnusedFonts(document);
+  static Map<COSStream, COSObjectKey> objectKeys(PDDocument document) {
+    Map<COSStream, COSObjectKey> keys = new IdentityHashMap<>();
+    for (COSObject object : document.getDocument().getObjects()) {
+      if (object.getObject() instanceof COSStream) {
+        keys.put((COSStream) object.getObject(),
+                new COSObjectKey(object.getObjectNumber(), object.getGenerationNumber()));
       }
-    } catch (Exception e) {
-      log.error("优化字体时出错: ", e);
     }
+    return keys;
   }
 
   /**
-   * 移除未使用的字体
+   * 预检查、重新编码单张图片，并在结果没有变小时保留原图
+   *
+   * @return 替换后的图片（分条处理的照片为 Form XObject）；跳过或保留原图时返回原图片对象
    */
-  private static void removeUnusedFonts(PDDocument document) {
-    try {
-      Set<String> usedFontNames = new HashSet<>();
-
-      // 创建一个自定义的PDFStreamEngine来跟踪使用的字体
-      PDFStreamEngine engine = new PDFStreamEngine() {
-        {
-          addOperator(new Concatenate());
-          addOperator(new Restore());
-          addOperator(new Save());
-          addOperator(new SetGraphicsStateParameters());
-          addOperator(new SetMatrix());
-          addOperator(new BeginText());
-          addOperator(new EndText());
-          addOperator(new ShowText());
-          addOperator(new ShowTextAdjusted());
-          addOperator(new MoveText());
-          addOperator(new MoveTextSetLeading());
-          addOperator(new SetCharSpacing());
-          addOperator(new SetFontAndSize() {
-            @Override
-            public void process(Operator operator, List<COSBase> arguments) throws IOException {
-              super.process(operator, arguments);
-              if (arguments.size() >= 2 && arguments.get(0) instanceof COSName) {
-                COSName fontName = (COSName) arguments.get(0);
-                usedFontNames.add(fontName.getName());
-              }
-            }
-          });
-          addOperator(new SetTextHorizontalScaling());
-          addOperator(new SetTextLeading());
-          addOperator(new SetTextRenderingMode());
-          addOperator(new SetTextRise());
-          addOperator(new SetWordSpacing());
-        }
-      };
+  private static PDXObject processImage(PDDocument document, ImagePlacement placement,
+                                             ImageSettings settings, CompressionStats stats) throws IOException {
+    // 预检查：根据原始流长度、编码方式和像素尺寸，跳过无法再压缩的图片，避免无谓的解码
+    String skipReason = skipReason(placement, settings);
+    if (skipReason != null) {
+      stats.skippedImages++;
+      log.debug("跳过图片{}：{}", placement.name.getName(), skipReason);
+      return placement.image;
+    }
 
-      // 处理所有页面以识别使用的字体
-      for (PDPage page : document.getPages()) {
-        try {
-          engine.processPage(page);
-        } catch (Exception e) {
-          // 忽略页面处理错误，继续处理其他页面
-          log.debug("处理页面字体时出错: ", e);
-        }
+    PDXObject newImage = optimizeImage(document, placement, settings, stats);
+
+    // 后检查：重新编码后没有变小则保留原图（新图不带蒙版，原图大小算上蒙版）
+    long originalLength = encodedLength(placement.image);
+    long newLength = encodedLength(newImage);
+    if (newLength >= originalLength) {
+      stats.keptImages++;
+      log.debug("图片{}重新编码后未变小（{} -> {} 字节），保留原图", placement.name.getName(), originalLength, newLength);
+      return placement.image;
+    }
+    stats.replacedImages++;
+    stats.savedBytes += originalLength - newLength;
+    return newImage;
+  }
+
+  // 小于该像素数或流长度的图片，重新编码的收益抵不过对象开销
+  private static final long MIN_IMAGE_PIXELS = 48 * 48;
+  private static final long MIN_IMAGE_STREAM_BYTES = 1024;
+  // 平均每像素不足该位数的图片已高度压缩（如大片纯色的Flate图片）
+  private static final double MIN_WORTHWHILE_BITS_PER_PIXEL = 0.25;
+
+  /**
+   * 判断图片是否没有必要重新编码
+   *
+   * @return 跳过原因；需要重新编码时返回null
+   */
+  private static String skipReason(ImagePlacement placement, ImageSettings settings) throws IOException {
+    PDImageXObject image = placement.image;
+    long pixels = (long) image.getWidth() * image.getHeight();
+    long length = image.getCOSObject().getLength();
+    if (pixels < MIN_IMAGE_PIXELS || length < MIN_IMAGE_STREAM_BYTES) {
+      return "图片过小";
+    }
+
+    // 需要降低分辨率时总能变小
+    if (placement.dpi() > settings.maxDPI) {
+      return null;
+    }
+
+    double bitsPerPixel = length * 8.0 / pixels;
+    List<COSName> filters = image.getStream().getFilters();
+    if (filters.contains(COSName.CCITTFAX_DECODE) || filters.contains(COSName.JBIG2_DECODE)) {
+      return "已是二值编码";
+    }
+    if (filters.contains(COSName.DCT_DECODE) || filters.contains(COSName.JPX_DECODE)) {
+      boolean color = image.getColorSpace().getNumberOfComponents() > 1;
+      if (bitsPerPixel <= expectedJpegBitsPerPixel(settings, color)) {
+        return String.format("已是高压缩率JPEG（%.2f 位/像素）", bitsPerPixel);
       }
+    }
+    if (bitsPerPixel < MIN_WORTHWHILE_BITS_PER_PIXEL) {
+      return String.format("已高度压缩（%.2f 位/像素）", bitsPerPixel);
+    }
+    return null;
+  }
 
-      // 这里可以添加移除未使用字体的代码
-      // 注意：完整的字体移除需要更复杂的实现，因为需要考虑字体的引用关系
+  /**
+   * 按压缩质量粗略估算JPEG编码的平均每像素位数
+   */
+  private static double expectedJpegBitsPerPixel(ImageSettings settings, boolean color) {
+    double bitsPerPixel = 0.4 + 2.4 * Math.pow(settings.quality, 1.5);
+    if (color && settings.convertToGrayscale) {
+      // 转为灰度后色度数据被去掉
+      bitsPerPixel *= 0.7;
+    }
+    return bitsPerPixel;
+  }
+
+  /**
+   * 图片编码后的字节数（包括软蒙版；分条拼接的表单包括其中所有图片）
+   */
+  private static long encodedLength(PDXObject xObject) throws IOException {
+    long length = xObject.getCOSObject().getLength();
+    if (xObject instanceof PDImageXObject) {
+      PDImageXObject softMask = ((PDImageXObject) xObject).getSoftMask();
+      if (softMask != null) {
+        length += softMask.getCOSObject().getLength();
+      }
+    } else if (xObject instanceof PDFormXObject) {
+      PDResources resources = ((PDFormXObject) xObject).getResources();
+      for (COSName name : resources.getXObjectNames()) {
+        length += encodedLength(resources.getXObject(name));
+      }
+    }
+    return length;
+  }
+
+  /**
+   * 收集文档中所有被绘制的图片，包括嵌套在 Form XObject 中的图片
+   */
+  static List<ImagePlacement> collectImages(PDDocument document) throws IOException {
+    return ImagePlacementCollector.collect(document);
+  }
+
+  /**
+   * 按给定参数重新编码单张图片
+   */
+  private static PDXObject optimizeImage(PDDocument document, ImagePlacement placement,
+                                              ImageSettings settings, CompressionStats stats) throws IOException {
+    // 按原始像素尺寸和实际绘制尺寸计算DPI，确定目标尺寸
+    int sourceWidth = placement.image.getWidth();
+    int sourceHeight = placement.image.getHeight();
+    float dpi = placement.dpi();
+    boolean needsResizing = settings.downsampleAllImages || dpi > settings.maxDPI;
+    int targetWidth = sourceWidth;
+    int targetHeight = sourceHeight;
+    if (needsResizing) {
+      int targetDPI = settings.downsampleAllImages ? settings.maxDPI : Math.min((int) dpi, settings.maxDPI);
+      targetWidth = (int) (sourceWidth * targetDPI / dpi);
+      targetHeight = (int) (sourceHeight * targetDPI / dpi);
+    }
+
+    // 超大图片（整页截图等）逐行分条处理，内存占用只与宽度有关
+    if (StripImageProcessor.supports(placement.image)) {
+      return StripImageProcessor.process(document, placement.image, targetWidth, targetHeight, settings, stats);
+    }
+
+    // 压缩策略1: 获取原始图像（JPEG在解码器内直接降采样，只生成接近目标分辨率的图像）
+    int subsampling = decodeSubsampling(placement.image, sourceWidth, targetWidth, settings.fastScaling);
+    long decodeStart = System.nanoTime();
+    BufferedImage bufferedImage = subsampling > 1
+            ? placement.image.getImage(null, subsampling)
+            : placement.image.getImage();
+    stats.decodeNanos += System.nanoTime() - decodeStart;
+    stats.sourcePixels += (long) sourceWidth * sourceHeight;
+    stats.decodedPixels += (long) bufferedImage.getWidth() * bufferedImage.getHeight();
+    if (subsampling > 1) {
+      stats.subsampledImages++;
+    }
+
+    // 压缩策略2: 按内容分类（二值/索引色/照片），为每张图片选择最省空间的编码方式
+    ImageClassifier.Classification classification = ImageClassifier.classify(bufferedImage);
+    ImageClassifier.ImageKind kind = effectiveKind(classification, settings);
+    stats.kindCounts[kind.ordinal()]++;
+    log.debug("图片{}分类结果: {}", placement.name.getName(), classification);
+
+    // 压缩策略3: 转换为灰度图像（对于高压缩等级，二值图像稍后单独处理）
+    if (settings.convertToGrayscale && kind != ImageClassifier.ImageKind.BILEVEL
+            && bufferedImage.getType() != BufferedImage.TYPE_BYTE_GRAY) {
+      bufferedImage = convertToGrayscale(bufferedImage);
+    }
+
+    // 压缩策略4: 降低图片分辨率
+    if (bufferedImage.getWidth() > targetWidth || bufferedImage.getHeight() > targetHeight) {
+      long resizeStart = System.nanoTime();
+      bufferedImage = resizeImage(bufferedImage, targetWidth, targetHeight, settings.fastScaling);
+      stats.resizeNanos += System.nanoTime() - resizeStart;
+    }
+
+    // 压缩策略5: 根据分类结果选择编码方式
+    long encodeStart = System.nanoTime();
+    PDImageXObject newImage = encodeImage(document, bufferedImage, kind, classification, settings.quality);
+    stats.encodeNanos += System.nanoTime() - encodeStart;
+    return newImage;
+  }
+
+  /**
+   * 计算JPEG图片解码时的降采样倍数
+   * <p>
+   * 解码器降采样是逐点取样，为避免锯齿，默认只降到目标尺寸的两倍左右，最后一级由缩放器做均值；
+   * 快速缩放时直接降到接近目标尺寸。非JPEG图片返回1（完整解码）。
+   */
+  private static int decodeSubsampling(PDImageXObject image, int sourceWidth, int targetWidth, boolean fast) {
+    if (targetWidth >= sourceWidth) {
+      return 1;
+    }
+    List<COSName> filters = image.getStream().getFilters();
+    if (filters.isEmpty() || !COSName.DCT_DECODE.equals(filters.get(filters.size() - 1))) {
+      return 1;
+    }
+    int factor = sourceWidth / Math.max(1, targetWidth);
+    return Math.max(1, fast ? factor : factor / 2);
+  }
+
+  /**
+   * 结合压缩参数确定图片最终的编码类别
+   */
+  static ImageClassifier.ImageKind effectiveKind(ImageClassifier.Classification classification,
+                                                 ImageSettings settings) {
+    ImageClassifier.ImageKind kind = classification.getKind();
+    if (kind == ImageClassifier.ImageKind.BILEVEL && !settings.binarizeMonochrome) {
+      // 不允许二值化时，黑白图像走无损的索引色编码，保留抗锯齿灰阶
+      kind = ImageClassifier.ImageKind.INDEXED;
+    }
+    return kind;
+  }
+
+  /**
+   * 缩小图像（逐级减半后插值，不会放大）
+   */
+  static BufferedImage resizeImage(BufferedImage image, int newWidth, int newHeight, boolean fast) {
+    return ImageScaler.downscale(image, newWidth, newHeight, fast);
+  }
+  /**
+   * 优化字体：移除未使用的字体、合并重复字体程序、子集化嵌入字体（均为无损操作）
+   */
+  private static void optimizeFonts(PDDocument document) {
+    try {
+      FontOptimizer.optimize(document);
     } catch (Exception e) {
-      log.error("移除未使用字体时出错: ", e);
+      log.error("优化字体时出错: ", e);
     }
   }
 
@@ -469,9 +729,7 @@ public class PDFCompressor {
    */
   private static byte[] imageToByteArray(BufferedImage image, String format) {
     try {
-      java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-      ImageIO.write(image, format, baos);
-      return baos.toByteArray();
+      return ImageEncoderPool.get().encode(image, format, -1);
     } catch (IOException e) {
       log.error("转换图像时出错: ", e);
       return null;
@@ -479,27 +737,11 @@ public class PDFCompressor {
   }
 
   /**
-   * 将BufferedImage以指定质量转换为byte数组
+   * 将BufferedImage以指定质量转换为byte数组（复用当前线程的编码器和缓冲区）
    */
   private static byte[] imageToByteArrayWithQuality(BufferedImage image, String format, float quality) {
     try {
-      java.io.ByteArrayOutputStream baos = new java.io.ByteArrayOutputStream();
-
-      // 获取图像写入器
-      javax.imageio.ImageWriter writer = javax.imageio.ImageIO.getImageWritersByFormatName(format).next();
-      javax.imageio.ImageWriteParam param = writer.getDefaultWriteParam();
-
-      // 设置压缩质量（仅对支持压缩的格式有效）
-      if (param.canWriteCompressed()) {
-        param.setCompressionMode(javax.imageio.ImageWriteParam.MODE_EXPLICIT);
-        param.setCompressionQuality(quality);
-      }
-
-      writer.setOutput(javax.imageio.ImageIO.createImageOutputStream(baos));
-      writer.write(null, new javax.imageio.IIOImage(image, null, null), param);
-      writer.dispose();
-
-      return baos.toByteArray();
+      return ImageEncoderPool.get().encode(image, format, quality);
     } catch (Exception e) {
       log.error("转换图像时出错: ", e);
       // 如果设置质量失败，回退到普通转换
@@ -508,83 +750,168 @@ public class PDFCompressor {
   }
 
   /**
-   * 检查图像是否为单色图像
+   * 按图片分类结果编码为PDF图像对象
+   * <p>
+   * 二值图像使用CCITT G4编码，索引色图像使用调色板PNG（灰度图直接无损Flate），照片使用JPEG
    */
-  private static boolean isMonochromeImage(BufferedImage image) {
-    // 检查图像类型是否为灰度
-    if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
-      return true;
+  static PDImageXObject encodeImage(PDDocument document, BufferedImage image,
+                                            ImageClassifier.ImageKind kind,
+                                            ImageClassifier.Classification classification,
+                                            float quality) throws IOException {
+    switch (kind) {
+      case BILEVEL:
+        return CCITTFactory.createFromImage(document, binarizeImage(image));
+      case INDEXED:
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY || classification.getPalette() == null) {
+          return LosslessFactory.createFromImage(document, image);
+        }
+        return PDImageXObject.createFromByteArray(
+                document, imageToByteArray(toIndexedImage(image, classification.getPalette()), "png"), "image");
+      case PHOTO:
+      default:
+        return PDImageXObject.createFromByteArray(
+                document, imageToByteArrayWithQuality(toRgbImage(image), "jpg", quality), "image");
     }
+  }
 
-    // 对于其他类型，采样检查是否只有黑白颜色
-    int sampleSize = Math.min(image.getWidth(), image.getHeight()) / 10;
-    if (sampleSize < 1) sampleSize = 1;
+  /**
+   * 使用给定调色板将图像量化为索引色图像（最近颜色匹配，按15位颜色缓存匹配结果）
+   */
+  private static BufferedImage toIndexedImage(BufferedImage image, int[] palette) {
+    int size = palette.length;
+    byte[] reds = new byte[size];
+    byte[] greens = new byte[size];
+    byte[] blues = new byte[size];
+    for (int i = 0; i < size; i++) {
+      reds[i] = (byte) (palette[i] >> 16);
+      greens[i] = (byte) (palette[i] >> 8);
+      blues[i] = (byte) palette[i];
+    }
+    IndexColorModel colorModel = new IndexColorModel(8, size, reds, greens, blues);
+    BufferedImage indexedImage = new BufferedImage(
+            image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_INDEXED, colorModel);
 
-    for (int x = 0; x < image.getWidth(); x += sampleSize) {
-      for (int y = 0; y < image.getHeight(); y += sampleSize) {
-        int rgb = image.getRGB(x, y);
-        int r = (rgb >> 16) & 0xFF;
-        int g = (rgb >> 8) & 0xFF;
-        int b = rgb & 0xFF;
+    int[] cache = new int[1 << 15];
+    Arrays.fill(cache, -1);
+    int width = image.getWidth();
+    int[] row = new int[width];
+    int[] indices = new int[width];
+    WritableRaster raster = indexedImage.getRaster();
+    for (int y = 0; y < image.getHeight(); y++) {
+      image.getRGB(0, y, width, 1, row, 0, width);
+      for (int x = 0; x < width; x++) {
+        int rgb = row[x];
+        int key = ((rgb >> 9) & 0x7C00) | ((rgb >> 6) & 0x03E0) | ((rgb >> 3) & 0x001F);
+        int index = cache[key];
+        if (index < 0) {
+          index = nearestColor(palette, rgb);
+          cache[key] = index;
+        }
+        indices[x] = index;
+      }
+      raster.setSamples(0, y, width, 1, 0, indices);
+    }
+    return indexedImage;
+  }
 
-        // 如果不是灰度颜色
-        if (r != g || g != b) {
-          return false;
+  /**
+   * 在调色板中查找与给定颜色距离最近的颜色下标
+   */
+  static int nearestColor(int[] palette, int rgb) {
+    int r = (rgb >> 16) & 0xFF;
+    int g = (rgb >> 8) & 0xFF;
+    int b = rgb & 0xFF;
+    int best = 0;
+    int bestDistance = Integer.MAX_VALUE;
+    for (int i = 0; i < palette.length; i++) {
+      int dr = r - ((palette[i] >> 16) & 0xFF);
+      int dg = g - ((palette[i] >> 8) & 0xFF);
+      int db = b - (palette[i] & 0xFF);
+      int distance = dr * dr + dg * dg + db * db;
+      if (distance < bestDistance) {
+        bestDistance = distance;
+        best = i;
+        if (distance == 0) {
+          break;
         }
       }
     }
+    return best;
+  }
 
-    return true;
+  /**
+   * 将带透明通道或其他类型的图像转换为JPEG可编码的RGB/灰度图像
+   */
+  private static BufferedImage toRgbImage(BufferedImage image) {
+    if (image.getType() == BufferedImage.TYPE_INT_RGB || image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+      return image;
+    }
+    BufferedImage rgbImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = rgbImage.createGraphics();
+    try {
+      g.setColor(Color.WHITE);
+      g.fillRect(0, 0, image.getWidth(), image.getHeight());
+      g.drawImage(image, 0, 0, null);
+    } finally {
+      g.dispose();
+    }
+    return rgbImage;
   }
 
   /**
    * 将图像转换为灰度
    */
-  private static BufferedImage convertToGrayscale(BufferedImage image) {
-    BufferedImage grayImage = new BufferedImage(
-            image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
-
-    for (int x = 0; x < image.getWidth(); x++) {
-      for (int y = 0; y < image.getHeight(); y++) {
-        int rgb = image.getRGB(x, y);
-        int r = (rgb >> 16) & 0xFF;
-        int g = (rgb >> 8) & 0xFF;
-        int b = rgb & 0xFF;
-
-        // 计算灰度值（使用 luminance 公式）
-        int gray = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-        int grayRGB = (gray << 16) | (gray << 8) | gray;
-
-        grayImage.setRGB(x, y, grayRGB);
+  static BufferedImage convertToGrayscale(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    BufferedImage grayImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+    byte[] gray = ((DataBufferByte) grayImage.getRaster().getDataBuffer()).getData();
+
+    // 逐行批量读取像素，直接写入灰度栅格
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      image.getRGB(0, y, width, 1, row, 0, width);
+      int offset = y * width;
+      for (int x = 0; x < width; x++) {
+        gray[offset + x] = (byte) luminance(row[x]);
       }
     }
 
     return grayImage;
   }
 
+  /**
+   * 计算亮度（使用 luminance 公式，定点运算）
+   */
+  private static int luminance(int rgb) {
+    int r = (rgb >> 16) & 0xFF;
+    int g = (rgb >> 8) & 0xFF;
+    int b = rgb & 0xFF;
+    return (299 * r + 587 * g + 114 * b) / 1000;
+  }
+
   /**
    * 二值化图像（转换为黑白）
    */
   private static BufferedImage binarizeImage(BufferedImage image) {
-    BufferedImage binaryImage = new BufferedImage(
-            image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_BINARY);
+    int width = image.getWidth();
+    int height = image.getHeight();
+    BufferedImage binaryImage = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+    byte[] data = ((DataBufferByte) binaryImage.getRaster().getDataBuffer()).getData();
+    int stride = (width + 7) / 8;
 
     // 使用Otsu阈值法计算最佳阈值
     int threshold = calculateOtsuThreshold(image);
 
-    for (int x = 0; x < image.getWidth(); x++) {
-      for (int y = 0; y < image.getHeight(); y++) {
-        int rgb = image.getRGB(x, y);
-        int r = (rgb >> 16) & 0xFF;
-        int g = (rgb >> 8) & 0xFF;
-        int b = rgb & 0xFF;
-
-        // 计算亮度
-        int brightness = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-
-        // 根据阈值设置黑白
-        int binaryColor = brightness > threshold ? 0xFFFFFF : 0x000000;
-        binaryImage.setRGB(x, y, binaryColor);
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      image.getRGB(0, y, width, 1, row, 0, width);
+      int offset = y * stride;
+      for (int x = 0; x < width; x++) {
+        // 亮度高于阈值为白色（默认调色板中1为白色）
+        if (luminance(row[x]) > threshold) {
+          data[offset + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+        }
       }
     }
 
@@ -594,22 +921,17 @@ public class PDFCompressor {
   /**
    * 使用Otsu算法计算图像阈值
    */
-  private static int calculateOtsuThreshold(BufferedImage image) {
+  static int calculateOtsuThreshold(BufferedImage image) {
     int width = image.getWidth();
     int height = image.getHeight();
     int[] histogram = new int[256];
 
     // 计算直方图
-    for (int x = 0; x < width; x++) {
-      for (int y = 0; y < height; y++) {
-        int rgb = image.getRGB(x, y);
-        int r = (rgb >> 16) & 0xFF;
-        int g = (rgb >> 8) & 0xFF;
-        int b = rgb & 0xFF;
-
-        // 计算亮度
-        int brightness = (int) (0.299 * r + 0.587 * g + 0.114 * b);
-        histogram[brightness]++;
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      image.getRGB(0, y, width, 1, row, 0, width);
+      for (int x = 0; x < width; x++) {
+        histogram[luminance(row[x])]++;
       }
     }
 
@@ -623,7 +945,8 @@ public class PDFCompressor {
     int wF = 0;
 
     double varMax = 0;
-    int threshold = 0;
+    // 只有一种亮度时没有类间方差，按中间值划分，深色保持黑色、浅色保持白色
+    int threshold = 127;
 
     for (int i = 0; i < 256; i++) {
       wB += histogram[i];
@@ -660,13 +983,14 @@ public class PDFCompressor {
       return;
     }
 
-    File[] files = folder.listFiles((dir, name) -> name.toLowerCase().endsWith(".pdf"));
-    if (files == null || files.length == 0) {
+    // 按输出清单枚举，包括分目录存放的PDF；没有清单时扫描文件夹
+    List<File> files = OutputStore.listOutputs(folder);
+    if (files.isEmpty()) {
       log.info("文件夹中没有PDF文件: " + folderPath);
       return;
     }
 
-    log.info("开始批量压缩PDF文件，共" + files.length + "个文件");
+    log.info("开始批量压缩PDF文件，共" + files.size() + "个文件");
 
     for (File file : files) {
       try {
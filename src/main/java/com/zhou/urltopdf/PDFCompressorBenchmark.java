@@ -0,0 +1,183 @@
+package com.zhou.urltopdf;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * PDFCompressor的基准测试，对比不同实现方式的耗时和内存分配量
+ * <p>
+ * 用法：java -cp <classpath> com.zhou.urltopdf.PDFCompressorBenchmark [PDF文件或文件夹] [迭代次数] [压缩等级]
+ */
+public class PDFCompressorBenchmark {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.out.println("用法: java -cp <classpath> com.zhou.urltopdf.PDFCompressorBenchmark [PDF文件或文件夹] [迭代次数] [压缩等级]");
+      return;
+    }
+    List<File> files = listPdfFiles(new File(args[0]));
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+    PDFCompressor.CompressionLevel level = args.length > 2
+            ? PDFCompressor.CompressionLevel.valueOf(args[2].toUpperCase())
+            : PDFCompressor.CompressionLevel.CUSTOM;
+    if (files.isEmpty()) {
+      System.out.println("没有找到PDF文件: " + args[0]);
+      return;
+    }
+
+    System.out.println("文件数: " + files.size() + "，迭代次数: " + iterations + "，压缩等级: " + level);
+
+    // 预热一次，排除类加载和JIT的影响
+    run(files, level);
+
+    // 只解析文档，对比内存映射和缓冲文件流两种读取方式
+    reportParse("内存映射读取", files, iterations, true);
+    reportParse("缓冲文件流读取", files, iterations, false);
+    PDFCompressor.setMemoryMappedInput(true);
+
+    // 编码器复用
+    ImageEncoderPool.setEnabled(true);
+    report("复用编码器和缓冲区", files, iterations, level);
+
+    // 每张图片重新创建编码器和缓冲区
+    ImageEncoderPool.setEnabled(false);
+    report("每次新建编码器", files, iterations, level);
+    ImageEncoderPool.setEnabled(true);
+
+    // 单独运行一次统计对象流+交叉引用流节省字节数的精确值（每次保存额外按传统格式序列化一次，不计入上面的耗时）
+    PDFCompressor.setMeasureStructureSavings(true);
+    long structureSaved = 0;
+    for (File file : files) {
+      CompressionStats stats = run(Collections.singletonList(file), level);
+      structureSaved += stats.getStructureSavedBytes();
+    }
+    PDFCompressor.setMeasureStructureSavings(false);
+    System.out.println(String.format("全部文件对象流+交叉引用流节省: %.2f KB", structureSaved / 1024.0));
+  }
+
+  private static void report(String name, List<File> files, int iterations,
+                             PDFCompressor.CompressionLevel level) throws IOException {
+    long totalMillis = 0;
+    long totalAllocated = 0;
+    CompressionStats lastStats = null;
+    System.gc();
+    resetPeakHeap();
+    for (int i = 0; i < iterations; i++) {
+      long allocatedBefore = allocatedBytes();
+      long start = System.nanoTime();
+      lastStats = run(files, level);
+      totalMillis += (System.nanoTime() - start) / 1_000_000;
+      totalAllocated += allocatedBytes() - allocatedBefore;
+    }
+    System.out.println(String.format("[%s] 平均耗时: %d 毫秒，平均内存分配: %.2f MB，堆峰值: %.2f MB",
+            name, totalMillis / iterations, totalAllocated / (double) iterations / 1024 / 1024,
+            peakHeap() / 1024.0 / 1024));
+    System.out.println(String.format("[%s] 最后一次迭代最后一个文件: %s", name, lastStats));
+  }
+
+  private static void reportParse(String name, List<File> files, int iterations, boolean mapped) throws IOException {
+    PDFCompressor.setMemoryMappedInput(mapped);
+    long totalNanos = 0;
+    long totalAllocated = 0;
+    for (int i = 0; i < iterations; i++) {
+      long allocatedBefore = allocatedBytes();
+      long start = System.nanoTime();
+      for (File file : files) {
+        try (PDDocument document = PDFCompressor.loadDocument(file)) {
+          touchObjects(document);
+        }
+      }
+      totalNanos += System.nanoTime() - start;
+      totalAllocated += allocatedBytes() - allocatedBefore;
+    }
+    System.out.println(String.format("[%s] 平均解析耗时: %.1f 毫秒，平均内存分配: %.2f MB",
+            name, totalNanos / 1e6 / iterations, totalAllocated / (double) iterations / 1024 / 1024));
+  }
+
+  /**
+   * 访问所有页面引用的资源，迫使解析器读取对应的对象和流
+   */
+  private static void touchObjects(PDDocument document) throws IOException {
+    for (PDPage page : document.getPages()) {
+      PDResources resources = page.getResources();
+      if (resources == null) {
+        continue;
+      }
+      for (COSName name : resources.getXObjectNames()) {
+        resources.getXObject(name).getCOSObject().getLength();
+      }
+      for (COSName name : resources.getFontNames()) {
+        resources.getFont(name);
+      }
+    }
+  }
+
+  private static CompressionStats run(List<File> files, PDFCompressor.CompressionLevel level) throws IOException {
+    CompressionStats stats = null;
+    for (File file : files) {
+      File output = File.createTempFile("urltopdf-benchmark", ".pdf");
+      try {
+        stats = PDFCompressor.compressPdf(file, output, level, PDFCompressor.ImageSettings.forLevel(level));
+      } finally {
+        output.delete();
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * 当前线程累计分配的字节数（HotSpot 支持）
+   */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return 0;
+  }
+
+  private static void resetPeakHeap() {
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  /**
+   * 各堆内存池峰值之和（近似的堆峰值）
+   */
+  private static long peakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+  private static List<File> listPdfFiles(File target) {
+    List<File> files = new ArrayList<>();
+    if (target.isFile()) {
+      files.add(target);
+    } else if (target.isDirectory()) {
+      File[] pdfFiles = target.listFiles((dir, name) -> name.toLowerCase().endsWith(".pdf"));
+      if (pdfFiles != null) {
+        files.addAll(List.of(pdfFiles));
+      }
+    }
+    return files;
+  }
+}
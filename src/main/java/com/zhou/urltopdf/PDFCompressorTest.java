@@ -16,6 +16,7 @@ public class PDFCompressorTest {
    * 2. 传入一个PDF文件路径：压缩指定的PDF文件
    * 3. 传入一个文件夹路径：批量压缩文件夹中的所有PDF文件
    * 4. 传入参数 "help"：显示帮助信息
+   * 5. 传入一个PDF文件路径和目标大小（MB）：压缩到不超过目标大小
    */
   public static void main(String[] args) {
     try {
@@ -30,7 +31,10 @@ public class PDFCompressorTest {
 
         File target = new File(path);
         if (target.exists()) {
-          if (target.isFile() && path.toLowerCase().endsWith(".pdf")) {
+          if (target.isFile() && path.toLowerCase().endsWith(".pdf") && args.length > 1) {
+            // 压缩单个PDF文件到目标大小
+            compressToTargetSize(target, Double.parseDouble(args[1]));
+          } else if (target.isFile() && path.toLowerCase().endsWith(".pdf")) {
             // 压缩单个PDF文件
             compressSingleFile(target);
           } else if (target.isDirectory()) {
@@ -93,6 +97,18 @@ public class PDFCompressorTest {
     System.out.println("\n单个PDF文件压缩测试完成！");
   }
 
+  /**
+   * 压缩单个PDF文件到目标大小
+   */
+  private static void compressToTargetSize(File inputFile, double targetSizeMB) throws IOException {
+    System.out.println("开始测试目标大小压缩: " + inputFile.getName() + "，目标大小: " + targetSizeMB + " MB");
+
+    String outputPath = inputFile.getAbsolutePath().replace(".pdf", "_target_compressed.pdf");
+    PDFCompressor.compressPdfToTargetSize(inputFile, new File(outputPath), (long) (targetSizeMB * 1024 * 1024));
+
+    System.out.println("\n目标大小压缩测试完成！");
+  }
+
   /**
    * 测试不同压缩等级的效果
    */
@@ -156,6 +172,7 @@ public class PDFCompressorTest {
     System.out.println("  java -cp <classpath> com.zhou.urltopdf.PDFCompressorTest [选项]");
     System.out.println("\n选项:");
     System.out.println("  [PDF文件路径]    : 压缩指定的PDF文件");
+    System.out.println("  [PDF文件路径] [目标大小MB] : 压缩指定的PDF文件，使其不超过目标大小");
     System.out.println("  [文件夹路径]     : 批量压缩文件夹中的所有PDF文件");
     System.out.println("  help             : 显示此帮助信息");
     System.out.println("  无参数           : 使用默认测试路径");
@@ -163,6 +180,7 @@ public class PDFCompressorTest {
     System.out.println("  1. 支持多种压缩等级：低(保持高质量)、中(平衡)、高(牺牲部分质量)、极限(可能明显影响质量)、超极限(最大化减小文件大小)");
     System.out.println("  2. 压缩策略包括：图片优化、元数据移除、内容流优化等");
     System.out.println("  3. 提供详细的压缩统计信息：原始大小、压缩后大小、压缩率、耗时");
+    System.out.println("  4. 目标大小模式：搜索满足目标大小的最高图片质量/DPI，并报告搜索次数和耗时");
     System.out.println("----------------------------------------");
   }
 }
\ No newline at end of file
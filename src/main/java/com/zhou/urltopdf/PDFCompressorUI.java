@@ -8,6 +8,7 @@ import java.io.File;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 
 /**
  * PDF压缩演示程序，提供图形界面来演示和使用PDF压缩功能
@@ -17,10 +18,12 @@ public class PDFCompressorUI extends JFrame {
     private static final long serialVersionUID = 1L;
     private JTextArea logTextArea;
     private JComboBox<String> compressionLevelComboBox;
+    private JTextField targetSizeTextField;
     private JFileChooser fileChooser;
     private JButton selectFileButton;
     private JButton selectFolderButton;
     private JButton compressButton;
+    private JButton bundleButton;
     private File selectedFile;
     private File selectedFolder;
 
@@ -57,11 +60,17 @@ public class PDFCompressorUI extends JFrame {
         compressionLevelComboBox = new JComboBox<>(compressionLevels);
         compressionLevelComboBox.setSelectedIndex(1); // 默认选择中等压缩
 
+        // 创建目标大小输入框（留空表示按压缩等级压缩）
+        JLabel targetSizeLabel = new JLabel("目标大小(MB):");
+        targetSizeTextField = new JTextField(5);
+
         // 创建文件选择按钮
         selectFileButton = new JButton("选择文件");
         selectFolderButton = new JButton("选择文件夹");
         compressButton = new JButton("开始压缩");
         compressButton.setEnabled(false);
+        bundleButton = new JButton("合并分卷");
+        bundleButton.setEnabled(false);
 
         // 创建文件选择器
         fileChooser = new JFileChooser();
@@ -71,9 +80,12 @@ public class PDFCompressorUI extends JFrame {
         // 添加组件到控制面板
         controlPanel.add(levelLabel);
         controlPanel.add(compressionLevelComboBox);
+        controlPanel.add(targetSizeLabel);
+        controlPanel.add(targetSizeTextField);
         controlPanel.add(selectFileButton);
         controlPanel.add(selectFolderButton);
         controlPanel.add(compressButton);
+        controlPanel.add(bundleButton);
 
         // 创建日志区域
         logTextArea = new JTextArea();
@@ -94,7 +106,9 @@ public class PDFCompressorUI extends JFrame {
                         "3. 高压缩率适合对文件大小有严格要求的场景\n" +
                         "4. 极限压缩率仅适用于对质量要求不高的场景\n" +
                         "5. 超极限压缩率会最大化减小文件大小，但可能显著影响文档质量\n" +
-                        "   （超极限压缩会应用额外策略：所有图片下采样至72DPI、强制转换为灰度、移除所有注释和交互元素）\n"
+                        "   （超极限压缩会应用额外策略：所有图片下采样至72DPI、强制转换为灰度、移除所有注释和交互元素）\n" +
+                        "6. 填写目标大小后，会自动搜索满足大小要求的最高图片质量，忽略压缩等级\n" +
+                        "7. 选择文件夹后可合并分卷：按文章创建时间每月合并为一卷（超过500MB时拆分），每篇文章一个书签\n"
         );
         infoTextArea.setEditable(false);
         infoTextArea.setOpaque(false);
@@ -119,6 +133,7 @@ public class PDFCompressorUI extends JFrame {
                     selectedFolder = null;
                     logMessage("已选择文件: " + selectedFile.getAbsolutePath());
                     compressButton.setEnabled(true);
+                    bundleButton.setEnabled(false);
                 }
             }
         });
@@ -134,6 +149,7 @@ public class PDFCompressorUI extends JFrame {
                     selectedFile = null;
                     logMessage("已选择文件夹: " + selectedFolder.getAbsolutePath());
                     compressButton.setEnabled(true);
+                    bundleButton.setEnabled(true);
                 }
             }
         });
@@ -164,13 +180,23 @@ public class PDFCompressorUI extends JFrame {
                             }
 
                             logMessage("\n====== 开始压缩任务 ======");
-                            logMessage("选择的压缩等级: " + level);
 
                             // 执行压缩任务
-                            if (selectedFile != null) {
+                            String targetSizeText = targetSizeTextField.getText().trim();
+                            if (!targetSizeText.isEmpty()) {
+                                double targetSizeMB = Double.parseDouble(targetSizeText);
+                                logMessage("目标大小: " + targetSizeMB + " MB");
+                                if (selectedFile != null) {
+                                    compressToTargetSize(selectedFile, targetSizeMB);
+                                } else if (selectedFolder != null) {
+                                    batchCompressToTargetSize(selectedFolder, targetSizeMB);
+                                }
+                            } else if (selectedFile != null) {
+                                logMessage("选择的压缩等级: " + level);
                                 // 压缩单个文件
                                 compressSingleFile(selectedFile, level);
                             } else if (selectedFolder != null) {
+                                logMessage("选择的压缩等级: " + level);
                                 // 批量压缩文件夹
                                 batchCompressFolder(selectedFolder, level);
                             }
@@ -192,6 +218,47 @@ public class PDFCompressorUI extends JFrame {
                 }).start();
             }
         });
+
+        // 合并分卷按钮事件
+        bundleButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                bundleButton.setEnabled(false);
+                final File folder = selectedFolder;
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            logMessage("\n====== 开始合并分卷 ======");
+                            bundleFolder(folder);
+                            logMessage("====== 合并分卷完成 ======\n");
+                        } finally {
+                            SwingUtilities.invokeLater(new Runnable() {
+                                @Override
+                                public void run() {
+                                    bundleButton.setEnabled(selectedFolder != null);
+                                }
+                            });
+                        }
+                    }
+                }).start();
+            }
+        });
+    }
+
+    private void bundleFolder(File folder) {
+        try {
+            logMessage("开始合并分卷: " + folder.getAbsolutePath());
+            File outputDir = new File(folder, "volumes");
+            java.util.List<File> volumes = PDFBundler.bundle(folder, outputDir, 0, 500L * 1024 * 1024, true);
+            for (File volume : volumes) {
+                logMessage("分卷: " + volume.getName() + String.format("（%.2f MB）", volume.length() / 1024.0 / 1024.0));
+            }
+            logMessage("合并完成，共" + volumes.size() + "卷，保存在 " + outputDir.getAbsolutePath());
+        } catch (IOException ex) {
+            logMessage("合并分卷时出错: " + ex.getMessage());
+            ex.printStackTrace();
+        }
     }
 
     private void compressSingleFile(File inputFile, PDFCompressor.CompressionLevel level) {
@@ -230,6 +297,36 @@ public class PDFCompressorUI extends JFrame {
         }
     }
 
+    private void compressToTargetSize(File inputFile, double targetSizeMB) {
+        try {
+            logMessage("开始压缩文件: " + inputFile.getName());
+
+            String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+            String outputPath = inputFile.getAbsolutePath().replace(".pdf", "_compressed_" + timestamp + ".pdf");
+            File outputFile = new File(outputPath);
+
+            PDFCompressor.compressPdfToTargetSize(inputFile, outputFile, (long) (targetSizeMB * 1024 * 1024));
+
+            logMessage("文件压缩完成，保存路径: " + outputPath + "，大小: "
+                    + String.format("%.2f MB", outputFile.length() / 1024.0 / 1024.0));
+        } catch (IOException ex) {
+            logMessage("压缩文件时出错: " + ex.getMessage());
+            ex.printStackTrace();
+        }
+    }
+
+    private void batchCompressToTargetSize(File folder, double targetSizeMB) {
+        // 按输出清单枚举，包括分目录存放的PDF；没有清单时扫描文件夹
+        List<File> files = OutputStore.listOutputs(folder);
+        if (files.isEmpty()) {
+            logMessage("文件夹中没有PDF文件: " + folder.getAbsolutePath());
+            return;
+        }
+        for (File file : files) {
+            compressToTargetSize(file, targetSizeMB);
+        }
+    }
+
     private void batchCompressFolder(File folder, PDFCompressor.CompressionLevel level) {
         try {
             logMessage("开始批量压缩文件夹中的PDF文件: " + folder.getAbsolutePath());
@@ -0,0 +1,146 @@
+package com.zhou.urltopdf;
+
+import com.microsoft.playwright.Playwright;
+import com.microsoft.playwright.impl.driver.Driver;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Stream;
+
+/**
+ * 创建 Playwright 实例，快速启动模式下缓存驱动和浏览器的安装检查结果
+ * <p>
+ * Playwright.create() 每次都会把 jar 中的驱动（Node.js 及脚本）解压到临时目录，并检查浏览器是否已安装。
+ * 快速启动模式下第一次启动仍走完整流程，完成后把解压出的驱动复制到用户目录下的缓存中并写入标记文件；
+ * 之后的启动通过 playwright.cli.dir 直接使用缓存的驱动，并跳过浏览器安装检查。
+ * 缓存按程序 jar 的路径、大小和修改时间区分，升级后会自动重新检查。浏览器启动失败时应调用 invalidate 清除缓存。
+ */
+@Slf4j
+class PlaywrightBootstrap {
+
+  private static final Path CACHE_DIR = Paths.get(System.getProperty("user.home"), ".urltopdf", "playwright");
+  private static final String MARKER_FILE = "installed.properties";
+
+  private PlaywrightBootstrap() {
+  }
+
+  /**
+   * 创建 Playwright 实例
+   *
+   * @param fastStartup 是否使用缓存的驱动
+   */
+  static Playwright create(boolean fastStartup) {
+    if (!fastStartup) {
+      return Playwright.create();
+    }
+    String key = cacheKey();
+    Path driverDir = CACHE_DIR.resolve("driver");
+    if (key.equals(readMarker()) && Files.isDirectory(driverDir)) {
+      System.setProperty("playwright.cli.dir", driverDir.toString());
+      Map<String, String> env = Collections.singletonMap("PLAYWRIGHT_SKIP_BROWSER_DOWNLOAD", "1");
+      return Playwright.create(new Playwright.CreateOptions().setEnv(env));
+    }
+
+    log.info("首次快速启动，检查 Playwright 驱动和浏览器安装...");
+    Driver driver = Driver.ensureDriverInstalled(Collections.emptyMap(), true);
+    try {
+      deleteRecursively(driverDir);
+      copyRecursively(driver.driverDir(), driverDir);
+      writeMarker(key);
+      log.info("已缓存 Playwright 驱动: " + driverDir);
+    } catch (IOException e) {
+      log.warn("缓存 Playwright 驱动失败，下次启动将重新检查", e);
+    }
+    // 驱动实例已初始化，create 直接复用
+    return Playwright.create();
+  }
+
+  /**
+   * 清除缓存，下次启动重新检查驱动和浏览器安装
+   */
+  static void invalidate() {
+    try {
+      Files.deleteIfExists(CACHE_DIR.resolve(MARKER_FILE));
+    } catch (IOException e) {
+      log.warn("清除 Playwright 缓存标记失败", e);
+    }
+  }
+
+  /**
+   * 程序 jar（或类目录）的路径、大小和修改时间
+   */
+  private static String cacheKey() {
+    try {
+      File location = new File(Playwright.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+      return location.getAbsolutePath() + "|" + location.length() + "|" + location.lastModified();
+    } catch (URISyntaxException | RuntimeException e) {
+      return "unknown";
+    }
+  }
+
+  private static String readMarker() {
+    Path marker = CACHE_DIR.resolve(MARKER_FILE);
+    if (!Files.exists(marker)) {
+      return null;
+    }
+    Properties properties = new Properties();
+    try (InputStream in = Files.newInputStream(marker)) {
+      properties.load(in);
+      return properties.getProperty("key");
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private static void writeMarker(String key) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty("key", key);
+    try (OutputStream out = Files.newOutputStream(CACHE_DIR.resolve(MARKER_FILE))) {
+      properties.store(out, "urltopdf playwright install check");
+    }
+  }
+
+  private static void copyRecursively(Path source, Path target) throws IOException {
+    Files.walkFileTree(source, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+        Files.createDirectories(target.resolve(source.relativize(dir).toString()));
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        // 保留可执行权限（node）
+        Files.copy(file, target.resolve(source.relativize(file).toString()),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private static void deleteRecursively(Path dir) throws IOException {
+    if (!Files.exists(dir)) {
+      return;
+    }
+    try (Stream<Path> paths = Files.walk(dir)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(path);
+      }
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package com.zhou.urltopdf;
+
+import com.microsoft.playwright.Page;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+
+/**
+ * 阅读模式：在页面中提取正文，重建一个只包含标题和正文的精简文档后再打印
+ * <p>
+ * 正文识别参考 Readability 的打分方式：以段落为单位按文字长度、逗号数打分并累加到父级和祖父级节点，
+ * 再按类名/ID 的正负特征加减分、按链接密度折算，取得分最高的节点及其得分足够高的兄弟节点作为正文。
+ * 图片保留原始地址（懒加载的 data-src 等会还原）。识别出的正文太短时认为失败，按原页面打印。
+ */
+@Slf4j
+class ReaderExtractor {
+
+  // 重建文档使用的样式，正文宽度与 A4 打印宽度相当
+  private static final String READER_CSS = """
+          html, body { margin: 0; padding: 0; background: #fff; }
+          body { font: 17px/1.75 -apple-system, "PingFang SC", "Microsoft YaHei", "Noto Sans CJK SC", serif; color: #222; }
+          article { max-width: 720px; margin: 0 auto; padding: 24px; }
+          h1 { font-size: 28px; line-height: 1.4; margin: 0 0 24px; }
+          img, video, svg { max-width: 100% !important; height: auto !important; }
+          figure { margin: 16px 0; }
+          pre { white-space: pre-wrap; word-break: break-all; background: #f6f8fa; padding: 12px; }
+          table { border-collapse: collapse; max-width: 100%; }
+          td, th { border: 1px solid #ddd; padding: 4px 8px; }
+          a { color: inherit; text-decoration: none; }
+          """;
+
+  private static final String EXTRACT_SCRIPT = """
+          async ({css, minTextLength}) => {
+            const unlikely = /combx|comment|community|disqus|extra|foot|header|menu|remark|rss|shoutbox|sidebar|sponsor|ad-break|agegate|pagination|pager|popup|related|recommend|share|social|breadcrumb/i;
+            const maybe = /and|article|body|column|main|shadow|content/i;
+            const positive = /article|body|content|entry|hentry|main|page|post|text|blog|story/i;
+            const negative = /hidden|combx|comment|com-|contact|foot|footer|footnote|masthead|media|meta|outbrain|promo|related|scroll|shoutbox|sidebar|sponsor|shopping|tags|tool|widget/i;
+
+            const signature = el => (typeof el.className === 'string' ? el.className : '') + ' ' + (el.id || '');
+            const classWeight = el => {
+              const s = signature(el);
+              return (positive.test(s) ? 25 : 0) - (negative.test(s) ? 25 : 0);
+            };
+            const tagWeight = el => {
+              switch (el.tagName) {
+                case 'ARTICLE': case 'MAIN': return 10;
+                case 'DIV': case 'SECTION': return 5;
+                case 'PRE': case 'TD': case 'BLOCKQUOTE': return 3;
+                case 'FORM': case 'UL': case 'OL': case 'LI': case 'DL': case 'DD': case 'DT': return -3;
+                case 'H1': case 'H2': case 'H3': case 'H4': case 'H5': case 'H6': case 'TH': return -5;
+                default: return 0;
+              }
+            };
+            const textOf = el => (el.innerText || el.textContent || '').trim();
+            const linkDensity = el => {
+              const length = textOf(el).length;
+              if (!length) return 0;
+              let links = 0;
+              el.querySelectorAll('a').forEach(a => links += textOf(a).length);
+              return links / length;
+            };
+            const isUnlikely = el => {
+              for (let node = el; node && node !== document.body; node = node.parentElement) {
+                const s = signature(node);
+                if (unlikely.test(s) && !maybe.test(s) && node.tagName !== 'ARTICLE' && node.tagName !== 'MAIN') return true;
+                if (node.tagName === 'NAV' || node.tagName === 'ASIDE' || node.tagName === 'FOOTER') return true;
+              }
+              return false;
+            };
+
+            // 1. 段落打分，分数累加到各级祖先
+            const scores = new Map();
+            const addScore = (el, score) => {
+              if (!scores.has(el)) scores.set(el, tagWeight(el) + classWeight(el));
+              scores.set(el, scores.get(el) + score);
+            };
+            for (const p of document.body.querySelectorAll('p, pre, td, blockquote, section > div, article div')) {
+              if (p.tagName === 'DIV' && p.querySelector('p, div, pre, table')) continue;
+              const text = textOf(p);
+              if (text.length < 25 || isUnlikely(p)) continue;
+              const score = 1 + (text.match(/[,，、。]/g) || []).length + Math.min(Math.floor(text.length / 100), 3);
+              let ancestor = p.parentElement;
+              for (let level = 0; ancestor && ancestor !== document.documentElement && level < 4; level++) {
+                addScore(ancestor, score / (level === 0 ? 1 : level === 1 ? 2 : level * 3));
+                ancestor = ancestor.parentElement;
+              }
+            }
+
+            // 2. 按链接密度折算后取最高分
+            let top = null, topScore = 0;
+            for (const [el, score] of scores) {
+              const adjusted = score * (1 - linkDensity(el));
+              scores.set(el, adjusted);
+              if (adjusted > topScore) { top = el; topScore = adjusted; }
+            }
+            if (!top) return null;
+
+            // 3. 收集得分足够高的兄弟节点
+            const threshold = Math.max(10, topScore * 0.2);
+            const parts = [];
+            const siblings = top.parentElement && top !== document.body ? Array.from(top.parentElement.children) : [top];
+            for (const sibling of siblings) {
+              let append = sibling === top;
+              if (!append && scores.has(sibling) && scores.get(sibling) >= threshold) append = true;
+              if (!append && sibling.tagName === 'P') {
+                const text = textOf(sibling);
+                append = (text.length > 80 && linkDensity(sibling) < 0.25) || (text.length > 0 && linkDensity(sibling) === 0 && /[.。]\\s*$/.test(text));
+              }
+              if (append && (sibling === top || !isUnlikely(sibling))) parts.push(sibling);
+            }
+
+            const article = document.createElement('article');
+            for (const part of parts) article.appendChild(part.cloneNode(true));
+            article.querySelectorAll('script, style, link, noscript, iframe, form, button, input, select, textarea, nav, aside, footer')
+                .forEach(n => n.remove());
+            const textLength = textOf(article).length;
+            if (textLength < minTextLength) return null;
+
+            // 4. 还原懒加载图片并重建文档
+            const images = Array.from(article.querySelectorAll('img'));
+            for (const img of images) {
+              const lazy = img.getAttribute('data-src') || img.getAttribute('data-original') || img.getAttribute('data-lazy-src');
+              const src = img.getAttribute('src') || '';
+              if (lazy && (!src || src.startsWith('data:'))) img.setAttribute('src', new URL(lazy, document.baseURI).href);
+              img.setAttribute('loading', 'eager');
+              img.removeAttribute('width');
+              img.removeAttribute('height');
+              img.removeAttribute('style');
+            }
+            if (!article.querySelector('h1')) {
+              const h1 = document.createElement('h1');
+              const heading = document.querySelector('h1');
+              h1.textContent = heading && textOf(heading) ? textOf(heading) : document.title;
+              article.insertBefore(h1, article.firstChild);
+            }
+            document.querySelectorAll('style, link[rel="stylesheet"]').forEach(n => n.remove());
+            document.documentElement.removeAttribute('style');
+            document.documentElement.removeAttribute('class');
+            document.body.removeAttribute('style');
+            document.body.removeAttribute('class');
+            document.body.innerHTML = '';
+            const style = document.createElement('style');
+            style.textContent = css;
+            document.head.appendChild(style);
+            document.body.appendChild(article);
+            await Promise.all(images.map(img => img.complete ? null : new Promise(resolve => {
+              img.addEventListener('load', resolve);
+              img.addEventListener('error', resolve);
+              setTimeout(resolve, 10000);
+            })));
+            return {textLength, images: images.length};
+          }
+          """;
+
+  // 识别出的正文少于该字数时认为识别失败
+  private static final int MIN_TEXT_LENGTH = 200;
+
+  private ReaderExtractor() {
+  }
+
+  /**
+   * 提取正文并重建页面，需在滚动加载完成之后调用
+   *
+   * @return 是否成功重建；失败时页面保持原样
+   */
+  static boolean extract(Page page) {
+    Object result = page.evaluate(EXTRACT_SCRIPT, Map.of("css", READER_CSS, "minTextLength", MIN_TEXT_LENGTH));
+    if (!(result instanceof Map)) {
+      log.info("阅读模式：未识别到正文，按原页面打印");
+      return false;
+    }
+    Map<?, ?> stats = (Map<?, ?>) result;
+    log.info("阅读模式：正文" + stats.get("textLength") + "字，图片" + stats.get("images") + "张");
+    return true;
+  }
+}
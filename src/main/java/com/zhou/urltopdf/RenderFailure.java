@@ -0,0 +1,147 @@
+package com.zhou.urltopdf;
+
+import com.microsoft.playwright.PlaywrightException;
+import com.microsoft.playwright.TimeoutError;
+
+import java.io.IOException;
+
+/**
+ * 渲染单篇文章失败的原因
+ * <p>
+ * 超时、网络错误、域名解析失败、渲染进程崩溃、PDF写入失败以及 408/425/429/5xx 状态码通常是暂时性的，
+ * 可以在本次运行中稍后重试；其他 HTTP 错误状态码和未知异常不重试。
+ */
+class RenderFailure extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  enum Kind {
+    TIMEOUT("超时"),
+    DNS("域名解析失败"),
+    NETWORK("网络错误"),
+    HTTP_STATUS("HTTP错误状态码"),
+    CRASH("渲染进程崩溃"),
+    WRITE_ERROR("PDF写入失败"),
+    UNKNOWN("未知错误");
+
+    final String description;
+
+    Kind(String description) {
+      this.description = description;
+    }
+  }
+
+  private final Kind kind;
+  // HTTP 状态码，非 HTTP_STATUS 时为 0
+  private final int status;
+  // 服务器通过 Retry-After 要求的等待时间（毫秒），没有时为 0
+  private final long retryAfterMillis;
+
+  RenderFailure(Kind kind, String message, Throwable cause) {
+    this(kind, 0, 0, message, cause);
+  }
+
+  private RenderFailure(Kind kind, int status, long retryAfterMillis, String message, Throwable cause) {
+    super(message, cause);
+    this.kind = kind;
+    this.status = status;
+    this.retryAfterMillis = retryAfterMillis;
+  }
+
+  /**
+   * 页面返回错误状态码
+   *
+   * @param retryAfter Retry-After 响应头，可以为 null
+   */
+  static RenderFailure httpStatus(int status, String retryAfter) {
+    long retryAfterMillis = 0;
+    if (retryAfter != null) {
+      try {
+        retryAfterMillis = Long.parseLong(retryAfter.trim()) * 1000;
+      } catch (NumberFormatException e) {
+        // HTTP 日期格式，按默认退避处理
+      }
+    }
+    return new RenderFailure(Kind.HTTP_STATUS, status, retryAfterMillis, "HTTP " + status, null);
+  }
+
+  /**
+   * 按异常类型和 Playwright 的错误信息分类
+   */
+  static RenderFailure classify(Throwable e) {
+    if (e instanceof RenderFailure) {
+      return (RenderFailure) e;
+    }
+    return new RenderFailure(kindOf(e), String.valueOf(e.getMessage()), e);
+  }
+
+  /**
+   * 打印阶段的异常：超时和崩溃照常分类，其余都算作PDF写入失败
+   */
+  static RenderFailure whilePrinting(Throwable e) {
+    Kind kind = kindOf(e);
+    if (kind != Kind.TIMEOUT && kind != Kind.CRASH) {
+      kind = Kind.WRITE_ERROR;
+    }
+    return new RenderFailure(kind, String.valueOf(e.getMessage()), e);
+  }
+
+  private static Kind kindOf(Throwable e) {
+    if (e instanceof TimeoutError) {
+      return Kind.TIMEOUT;
+    }
+    if (e instanceof PlaywrightException) {
+      String message = String.valueOf(e.getMessage());
+      if (message.contains("ERR_NAME_NOT_RESOLVED") || message.contains("ERR_NAME_RESOLUTION_FAILED")) {
+        return Kind.DNS;
+      }
+      if (message.contains("ERR_TIMED_OUT") || message.contains("ERR_CONNECTION_TIMED_OUT")) {
+        return Kind.TIMEOUT;
+      }
+      if (message.contains("net::ERR_")) {
+        return Kind.NETWORK;
+      }
+      if (message.contains("crashed") || message.contains("has been closed")) {
+        return Kind.CRASH;
+      }
+      return Kind.UNKNOWN;
+    }
+    if (e instanceof IOException) {
+      return Kind.WRITE_ERROR;
+    }
+    return Kind.UNKNOWN;
+  }
+
+  Kind getKind() {
+    return kind;
+  }
+
+  int getStatus() {
+    return status;
+  }
+
+  long getRetryAfterMillis() {
+    return retryAfterMillis;
+  }
+
+  /**
+   * 是否值得在本次运行中重试
+   */
+  boolean isTransient() {
+    switch (kind) {
+      case HTTP_STATUS:
+        return status == 408 || status == 425 || status == 429 || status >= 500;
+      case UNKNOWN:
+        return false;
+      default:
+        return true;
+    }
+  }
+
+  /**
+   * 用于日志和统计的分类名称
+   */
+  String describe() {
+    return kind == Kind.HTTP_STATUS ? kind.description + " " + status : kind.description;
+  }
+}
@@ -0,0 +1,139 @@
+package com.zhou.urltopdf;
+
+import com.microsoft.playwright.Page;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 渲染阶段的体积优化：在 Chromium 打印之前直接处理页面
+ * <p>
+ * page.pdf 会把网页原图按原始分辨率嵌入PDF，之后 PDFCompressor 还要再解码、缩放、重新编码一遍。
+ * 这里在打印前完成这部分工作：注入打印样式隐藏导航、评论、广告等，冻结动画，
+ * 并把明显大于打印尺寸的图片用 canvas 缩小到目标分辨率后替换。
+ * 跨域图片会污染 canvas，无法导出，这类图片保持原样；CSS 背景图不处理。
+ */
+@Slf4j
+class RenderOptimizer {
+
+  // 默认隐藏的页面元素
+  static final List<String> DEFAULT_HIDE_SELECTORS = Arrays.asList(
+          "nav", "aside", "footer",
+          "[role=\"navigation\"]", "[role=\"complementary\"]", "[role=\"contentinfo\"]",
+          "iframe", "ins.adsbygoogle", "[id^=\"ad-\"]", "[class*=\"advert\"]",
+          "#comments", ".comments", "[class*=\"comment-list\"]",
+          "[class*=\"share\"]", "[class*=\"cookie\"]");
+
+  // 冻结动画和过渡；fixed 元素在每个打印页上都会重复出现，由脚本隐藏，sticky 元素改为普通定位
+  private static final String FREEZE_CSS = """
+          *, *::before, *::after {
+            animation: none !important;
+            transition: none !important;
+            caret-color: transparent !important;
+          }
+          """;
+
+  private static final String FREEZE_SCRIPT = """
+          () => {
+            document.getAnimations().forEach(a => { try { a.finish(); } catch (e) { a.pause(); } });
+            document.querySelectorAll('video, audio').forEach(m => m.pause());
+            let hidden = 0;
+            for (const el of document.body.querySelectorAll('*')) {
+              const position = getComputedStyle(el).position;
+              if (position === 'fixed') {
+                el.style.setProperty('display', 'none', 'important');
+                hidden++;
+              } else if (position === 'sticky') {
+                el.style.setProperty('position', 'static', 'important');
+              }
+            }
+            return hidden;
+          }
+          """;
+
+  // 按打印尺寸缩小图片：CSS 像素按 96 DPI 打印，目标像素 = 显示尺寸 * dpi / 96，保持原图宽高比
+  private static final String DOWNSCALE_SCRIPT = """
+          async ({dpi, quality}) => {
+            const scale = dpi / 96;
+            const result = {replaced: 0, tainted: 0, sourcePixels: 0, targetPixels: 0};
+            for (const img of Array.from(document.images)) {
+              if (!img.complete || !img.naturalWidth || !img.naturalHeight) continue;
+              const src = img.currentSrc || img.src;
+              if (/\\.svg(\\?|#|$)/i.test(src) || src.startsWith('data:image/svg')) continue;
+              const rect = img.getBoundingClientRect();
+              if (rect.width < 1 || rect.height < 1) continue;
+              const ratio = Math.max(rect.width * scale / img.naturalWidth, rect.height * scale / img.naturalHeight);
+              // 超过目标尺寸不到 25% 的图片不值得重新编码
+              if (ratio > 0.8) continue;
+              const width = Math.max(1, Math.round(img.naturalWidth * ratio));
+              const height = Math.max(1, Math.round(img.naturalHeight * ratio));
+              const sourcePixels = img.naturalWidth * img.naturalHeight;
+              const canvas = document.createElement('canvas');
+              canvas.width = width;
+              canvas.height = height;
+              const ctx = canvas.getContext('2d');
+              ctx.imageSmoothingQuality = 'high';
+              ctx.drawImage(img, 0, 0, width, height);
+              let url;
+              try {
+                const data = ctx.getImageData(0, 0, width, height).data;
+                let opaque = true;
+                for (let i = 3; i < data.length; i += 4) {
+                  if (data[i] < 255) { opaque = false; break; }
+                }
+                url = canvas.toDataURL(opaque ? 'image/jpeg' : 'image/png', quality);
+              } catch (e) {
+                result.tainted++;
+                continue;
+              }
+              // 固定显示尺寸，避免替换后按新的固有尺寸重新布局
+              img.style.width = rect.width + 'px';
+              img.style.height = rect.height + 'px';
+              img.removeAttribute('srcset');
+              img.removeAttribute('sizes');
+              img.removeAttribute('loading');
+              if (img.parentElement && img.parentElement.tagName === 'PICTURE') {
+                img.parentElement.querySelectorAll('source').forEach(s => s.remove());
+              }
+              img.src = url;
+              try { await img.decode(); } catch (e) {}
+              result.replaced++;
+              result.sourcePixels += sourcePixels;
+              result.targetPixels += width * height;
+            }
+            return result;
+          }
+          """;
+
+  private RenderOptimizer() {
+  }
+
+  /**
+   * 打印前优化页面，需在滚动加载完成之后调用
+   */
+  static void optimize(Page page, AppConfig config) {
+    List<String> selectors = config.getHideSelectors() == null || config.getHideSelectors().isEmpty()
+            ? DEFAULT_HIDE_SELECTORS : config.getHideSelectors();
+    String hideCss = "@media print { " + String.join(", ", selectors) + " { display: none !important; } }\n";
+    page.addStyleTag(new Page.AddStyleTagOptions().setContent(hideCss + FREEZE_CSS));
+    Object hidden = page.evaluate(FREEZE_SCRIPT);
+
+    Map<String, Object> args = new HashMap<>();
+    args.put("dpi", config.getRenderImageDpi());
+    args.put("quality", config.getRenderJpegQuality());
+    Object result = page.evaluate(DOWNSCALE_SCRIPT, args);
+    if (result instanceof Map) {
+      Map<?, ?> stats = (Map<?, ?>) result;
+      log.info(String.format("渲染优化：隐藏固定定位元素%s个，缩小图片%d张（%.1f -> %.1f 百万像素），跨域无法处理%d张",
+              hidden, number(stats.get("replaced")), number(stats.get("sourcePixels")) / 1e6,
+              number(stats.get("targetPixels")) / 1e6, number(stats.get("tainted"))));
+    }
+  }
+
+  private static long number(Object value) {
+    return value instanceof Number ? ((Number) value).longValue() : 0;
+  }
+}
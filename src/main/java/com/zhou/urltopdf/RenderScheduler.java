@@ -0,0 +1,392 @@
+package com.zhou.urltopdf;
+
+import com.google.gson.Gson;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 决定文章的渲染顺序
+ * <p>
+ * 按域名的历史耗时估计每篇文章的渲染时间：本次运行的实测值优先，其次是站点画像中记录的耗时（旧画像按PDF大小折算），
+ * 都没有时取本次运行的平均值。调度策略可以在配置中选择：
+ * <ul>
+ *   <li>fifo：按文件顺序</li>
+ *   <li>sejf：预计耗时短的先处理，使平均完成时间最短。实际按响应比（已等待时间 + 预计耗时）/ 预计耗时 从高到低选择，
+ *   同时提交的文章之间就是短作业优先；等待越久响应比越高，长作业不会一直被后来的短作业推后</li>
+ *   <li>newest：按创建时间分成优先级类别（默认 7 天内、30 天内、更早），新文章先处理，类别内按 sejf；
+ *   每等待 schedulerAgingMinutes 分钟提升一个类别，旧文章不会被一直推后</li>
+ * </ul>
+ * 同一域名的文章预计耗时相同，按（类别，提交顺序）排在同一个队列中，选择时只比较各域名的队首。
+ * 开启 schedulerTrace 时每次渲染的域名、耗时和结果追加到 urltopdf_trace.jsonl，可用 RenderSchedulerBenchmark 回放对比各策略。
+ */
+@Slf4j
+class RenderScheduler {
+
+  private static final Gson gson = new Gson();
+
+  /**
+   * 调度策略
+   */
+  interface Policy {
+
+    String name();
+
+    /**
+     * 优先级类别，越小越优先；同一域名内按类别和提交顺序排列
+     */
+    default int priorityClass(Article article) {
+      return 0;
+    }
+
+    /**
+     * 任务的调度分数，越小越先处理；分数相同时预计耗时短的优先，再按提交顺序
+     *
+     * @param expectedMillis 预计耗时，至少为 1
+     * @param now            当前时间（毫秒），回放时为模拟时间
+     */
+    double score(Task task, long expectedMillis, long now);
+  }
+
+  /**
+   * 按文件顺序
+   */
+  static class Fifo implements Policy {
+
+    @Override
+    public String name() {
+      return "fifo";
+    }
+
+    @Override
+    public double score(Task task, long expectedMillis, long now) {
+      return task.seq;
+    }
+  }
+
+  /**
+   * 短作业优先，按响应比防止饥饿
+   */
+  static class ShortestExpectedFirst implements Policy {
+
+    @Override
+    public String name() {
+      return "sejf";
+    }
+
+    @Override
+    public double score(Task task, long expectedMillis, long now) {
+      // 响应比的倒数，取值 (0, 1]
+      long waited = Math.max(0, now - task.enqueuedAt);
+      return expectedMillis / (double) (expectedMillis + waited);
+    }
+  }
+
+  /**
+   * 新文章优先，类别内短作业优先，等待时间长的文章逐级提升类别
+   */
+  static class NewestFirst extends ShortestExpectedFirst {
+
+    private final long referenceSeconds;
+    private final List<Integer> classDays;
+    private final long agingMillis;
+
+    /**
+     * @param referenceSeconds 计算文章新旧的基准时间（秒）
+     * @param classDays        各类别的天数上限，如 [7, 30] 表示 7 天内、30 天内、更早三个类别
+     * @param agingMillis      每等待这么久提升一个类别，0 表示不提升
+     */
+    NewestFirst(long referenceSeconds, List<Integer> classDays, long agingMillis) {
+      this.referenceSeconds = referenceSeconds;
+      this.classDays = classDays != null ? classDays : List.of();
+      this.agingMillis = agingMillis;
+    }
+
+    @Override
+    public String name() {
+      return "newest";
+    }
+
+    @Override
+    public int priorityClass(Article article) {
+      long ageDays = Math.max(0, referenceSeconds - article.getCreate_time()) / 86400;
+      int priorityClass = 0;
+      while (priorityClass < classDays.size() && ageDays > classDays.get(priorityClass)) {
+        priorityClass++;
+      }
+      return priorityClass;
+    }
+
+    @Override
+    public double score(Task task, long expectedMillis, long now) {
+      long waited = Math.max(0, now - task.enqueuedAt);
+      long promoted = agingMillis > 0 ? waited / agingMillis : 0;
+      long effectiveClass = Math.max(0, task.priorityClass - promoted);
+      // 父类分数不超过 1，类别优先
+      return effectiveClass * 2 + super.score(task, expectedMillis, now);
+    }
+  }
+
+  /**
+   * 一篇待渲染的文章
+   */
+  static class Task {
+    final Article article;
+    // 域名，不是 http/https 链接时为空字符串
+    final String host;
+    final long seq;
+    final long enqueuedAt;
+    final int priorityClass;
+
+    Task(Article article, String host, long seq, long enqueuedAt, int priorityClass) {
+      this.article = article;
+      this.host = host;
+      this.seq = seq;
+      this.enqueuedAt = enqueuedAt;
+      this.priorityClass = priorityClass;
+    }
+  }
+
+  /**
+   * 按域名估计渲染耗时
+   */
+  static class Estimator {
+
+    // 没有任何记录时的估计值
+    private static final long DEFAULT_MILLIS = 15_000;
+
+    // 站点画像，可以为 null
+    private final DomainProfiles profiles;
+    private final Map<String, Long> observed = new HashMap<>();
+    // 站点画像中的估计值，每个域名只查一次
+    private final Map<String, Long> profiled = new HashMap<>();
+    private long totalMillis;
+    private int samples;
+
+    Estimator(DomainProfiles profiles) {
+      this.profiles = profiles;
+    }
+
+    /**
+     * 预计耗时，至少为 1 毫秒
+     */
+    long expectedMillis(String host) {
+      Long millis = observed.get(host);
+      if (millis == null && profiles != null && !host.isEmpty()) {
+        long prior = profiled.computeIfAbsent(host, profiles::expectedMillis);
+        millis = prior >= 0 ? prior : null;
+      }
+      if (millis == null) {
+        millis = samples > 0 ? totalMillis / samples : DEFAULT_MILLIS;
+      }
+      return Math.max(1, millis);
+    }
+
+    /**
+     * 记录一次渲染（成功或失败）的实际耗时
+     */
+    void record(String host, long millis) {
+      observed.merge(host, millis, (average, sample) -> Math.round(average * 0.7 + sample * 0.3));
+      totalMillis += millis;
+      samples++;
+    }
+  }
+
+  /**
+   * 回放用的渲染记录，对应 urltopdf_trace.jsonl 中的一行
+   */
+  static class TraceRecord {
+    String host;
+    String link;
+    long create_time;
+    // 本次渲染耗时（毫秒）
+    long millis;
+    boolean success;
+    // 记录时间（秒）
+    long time;
+  }
+
+  private final Policy policy;
+  private final Estimator estimator;
+  // 渲染记录文件，为 null 时不记录
+  private final Path traceFile;
+  private final Map<String, PriorityQueue<Task>> queues = new HashMap<>();
+  private long nextSeq;
+  private int size;
+
+  RenderScheduler(Policy policy, Estimator estimator, Path traceFile) {
+    this.policy = policy;
+    this.estimator = estimator;
+    this.traceFile = traceFile;
+  }
+
+  /**
+   * 按配置创建调度策略，未知的名称使用 sejf
+   */
+  static Policy policy(AppConfig config) {
+    String name = config.getSchedulerPolicy() == null ? "" : config.getSchedulerPolicy().trim().toLowerCase(Locale.ROOT);
+    switch (name) {
+      case "fifo":
+        return new Fifo();
+      case "newest":
+        return new NewestFirst(System.currentTimeMillis() / 1000, config.getSchedulerClassDays(),
+                config.getSchedulerAgingMinutes() * 60_000L);
+      case "sejf":
+        return new ShortestExpectedFirst();
+      default:
+        log.warn("未知的调度策略 " + config.getSchedulerPolicy() + "，使用 sejf");
+        return new ShortestExpectedFirst();
+    }
+  }
+
+  Policy getPolicy() {
+    return policy;
+  }
+
+  Estimator getEstimator() {
+    return estimator;
+  }
+
+  /**
+   * 提交文章
+   */
+  void addAll(List<Article> articles, long now) {
+    for (Article article : articles) {
+      Task task = new Task(article, hostOf(article), nextSeq++, now, policy.priorityClass(article));
+      queues.computeIfAbsent(task.host, key -> new PriorityQueue<>(
+              Comparator.comparingInt((Task t) -> t.priorityClass).thenComparingLong(t -> t.seq))).add(task);
+      size++;
+    }
+  }
+
+  /**
+   * 取出下一篇要渲染的文章，没有时返回 null
+   */
+  Task next(long now) {
+    PriorityQueue<Task> best = null;
+    double bestScore = 0;
+    long bestExpected = 0;
+    for (PriorityQueue<Task> queue : queues.values()) {
+      Task head = queue.peek();
+      long expected = estimator.expectedMillis(head.host);
+      double score = policy.score(head, expected, now);
+      if (best == null || score < bestScore
+              || score == bestScore && (expected < bestExpected
+              || expected == bestExpected && head.seq < best.peek().seq)) {
+        best = queue;
+        bestScore = score;
+        bestExpected = expected;
+      }
+    }
+    if (best == null) {
+      return null;
+    }
+    Task task = best.poll();
+    if (best.isEmpty()) {
+      queues.remove(task.host);
+    }
+    size--;
+    return task;
+  }
+
+  /**
+   * 文章的预计渲染耗时
+   */
+  long expectedMillis(Article article) {
+    return estimator.expectedMillis(hostOf(article));
+  }
+
+  /**
+   * 记录一次渲染（包括重试）的实际耗时，更新该域名的估计值
+   */
+  void record(Article article, long millis, boolean success) {
+    String host = hostOf(article);
+    estimator.record(host, millis);
+    if (traceFile != null) {
+      appendTrace(traceFile, host, article, millis, success);
+    }
+  }
+
+  /**
+   * 按当前估计值排出的处理顺序，用于让预检按相同顺序进行；实际顺序随耗时记录变化
+   */
+  List<Article> plannedOrder(long now) {
+    List<Task> tasks = new ArrayList<>(size);
+    Map<String, Long> expected = new HashMap<>();
+    for (PriorityQueue<Task> queue : queues.values()) {
+      tasks.addAll(queue);
+      String host = queue.peek().host;
+      expected.put(host, estimator.expectedMillis(host));
+    }
+    tasks.sort(Comparator.comparingDouble((Task t) -> policy.score(t, expected.get(t.host), now))
+            .thenComparingLong(t -> expected.get(t.host))
+            .thenComparingInt(t -> t.priorityClass)
+            .thenComparingLong(t -> t.seq));
+    List<Article> order = new ArrayList<>(tasks.size());
+    for (Task task : tasks) {
+      order.add(task.article);
+    }
+    return order;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private static String hostOf(Article article) {
+    String host = DomainProfiles.hostOf(article.getLink());
+    return host == null ? "" : host;
+  }
+
+  private static void appendTrace(Path file, String host, Article article, long millis, boolean success) {
+    TraceRecord record = new TraceRecord();
+    record.host = host;
+    record.link = article.getLink();
+    record.create_time = article.getCreate_time();
+    record.millis = millis;
+    record.success = success;
+    record.time = System.currentTimeMillis() / 1000;
+    try {
+      Files.writeString(file, gson.toJson(record) + "\n", StandardCharsets.UTF_8,
+              StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    } catch (IOException e) {
+      log.warn("写入渲染记录失败: " + file, e);
+    }
+  }
+
+  /**
+   * 读取渲染记录，跳过无法解析的行
+   */
+  static List<TraceRecord> readTrace(Path file) throws IOException {
+    List<TraceRecord> records = new ArrayList<>();
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      if (line.isBlank()) {
+        continue;
+      }
+      try {
+        TraceRecord record = gson.fromJson(line, TraceRecord.class);
+        if (record != null && record.host != null) {
+          records.add(record);
+        }
+      } catch (RuntimeException e) {
+        // 写入中断的行
+      }
+    }
+    return records;
+  }
+}
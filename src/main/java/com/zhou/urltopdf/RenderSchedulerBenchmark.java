@@ -0,0 +1,126 @@
+package com.zhou.urltopdf;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用 urltopdf_trace.jsonl 中记录的实际耗时回放渲染过程，对比各调度策略的完成时间
+ * <p>
+ * 单个浏览器页面依次渲染，每篇文章的耗时取记录值。记录按顺序分成若干批次，依次在前一批次的预计完成时刻到达
+ * （只有一批时全部在开始时到达）。每种策略分别在没有历史（本次运行边渲染边学习）和已有历史（事先记录了全部耗时）下回放。
+ * <p>
+ * 用法：java -cp <classpath> com.zhou.urltopdf.RenderSchedulerBenchmark [渲染记录文件] [批次数]
+ */
+public class RenderSchedulerBenchmark {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.out.println("用法: java -cp <classpath> com.zhou.urltopdf.RenderSchedulerBenchmark [渲染记录文件] [批次数]");
+      return;
+    }
+    List<RenderScheduler.TraceRecord> records = RenderScheduler.readTrace(Paths.get(args[0]));
+    int batches = args.length > 1 ? Math.max(1, Integer.parseInt(args[1])) : 1;
+    if (records.isEmpty()) {
+      System.out.println("没有渲染记录: " + args[0]);
+      return;
+    }
+
+    long totalMillis = 0;
+    long referenceSeconds = 0;
+    for (RenderScheduler.TraceRecord record : records) {
+      totalMillis += record.millis;
+      referenceSeconds = Math.max(referenceSeconds, record.time);
+    }
+    System.out.println(String.format("记录数: %d，总耗时: %.1f 分钟，批次数: %d", records.size(),
+            totalMillis / 60000.0, batches));
+
+    List<RenderScheduler.Policy> policies = Arrays.asList(
+            new RenderScheduler.Fifo(),
+            new RenderScheduler.ShortestExpectedFirst(),
+            new RenderScheduler.NewestFirst(referenceSeconds, List.of(7, 30), 60 * 60_000L));
+    // 按 newest 的类别统计新文章的完成时间
+    RenderScheduler.NewestFirst classes = new RenderScheduler.NewestFirst(referenceSeconds, List.of(7, 30), 0);
+    for (boolean warm : new boolean[]{false, true}) {
+      for (RenderScheduler.Policy policy : policies) {
+        report(policy, warm, records, batches, totalMillis, classes);
+      }
+    }
+  }
+
+  private static void report(RenderScheduler.Policy policy, boolean warm, List<RenderScheduler.TraceRecord> records,
+                             int batches, long totalMillis, RenderScheduler.NewestFirst classes) {
+    RenderScheduler.Estimator estimator = new RenderScheduler.Estimator(null);
+    RenderScheduler scheduler = new RenderScheduler(policy, estimator, null);
+
+    // 记录转为文章，分批到达
+    List<List<Article>> arrivals = new ArrayList<>();
+    Map<Article, RenderScheduler.TraceRecord> recordOf = new IdentityHashMap<>();
+    Map<Article, Long> arrivedAt = new IdentityHashMap<>();
+    int batchSize = (records.size() + batches - 1) / batches;
+    for (int i = 0; i < records.size(); i++) {
+      RenderScheduler.TraceRecord record = records.get(i);
+      Article article = new Article();
+      article.setLink(record.link != null ? record.link : "https://" + record.host + "/");
+      article.setCreate_time(record.create_time);
+      recordOf.put(article, record);
+      if (i % batchSize == 0) {
+        arrivals.add(new ArrayList<>());
+      }
+      arrivals.get(arrivals.size() - 1).add(article);
+      if (warm) {
+        estimator.record(record.host, record.millis);
+      }
+    }
+    long interval = totalMillis / arrivals.size();
+
+    long now = 0;
+    int nextBatch = 0;
+    List<Long> completions = new ArrayList<>();
+    List<Long> newestCompletions = new ArrayList<>();
+    while (nextBatch < arrivals.size() || !scheduler.isEmpty()) {
+      if (scheduler.isEmpty()) {
+        now = Math.max(now, nextBatch * interval);
+      }
+      while (nextBatch < arrivals.size() && nextBatch * interval <= now) {
+        for (Article article : arrivals.get(nextBatch)) {
+          arrivedAt.put(article, nextBatch * interval);
+        }
+        scheduler.addAll(arrivals.get(nextBatch), nextBatch * interval);
+        nextBatch++;
+      }
+      RenderScheduler.Task task = scheduler.next(now);
+      RenderScheduler.TraceRecord record = recordOf.get(task.article);
+      now += record.millis;
+      long completion = now - arrivedAt.get(task.article);
+      completions.add(completion);
+      if (classes.priorityClass(task.article) == 0) {
+        newestCompletions.add(completion);
+      }
+      if (!warm) {
+        scheduler.record(task.article, record.millis, record.success);
+      }
+    }
+
+    completions.sort(null);
+    System.out.println(String.format("[%s%s] 平均完成时间: %.1f 分钟，中位数: %.1f 分钟，95分位: %.1f 分钟，最长: %.1f 分钟，"
+                    + "7天内文章平均: %s",
+            policy.name(), warm ? "，已有历史" : "，边渲染边学习", mean(completions) / 60000.0,
+            completions.get(completions.size() / 2) / 60000.0,
+            completions.get(Math.min(completions.size() - 1, (int) Math.ceil(completions.size() * 0.95) - 1)) / 60000.0,
+            completions.get(completions.size() - 1) / 60000.0,
+            newestCompletions.isEmpty() ? "-" : String.format("%.1f 分钟", mean(newestCompletions) / 60000.0)));
+  }
+
+  private static double mean(List<Long> values) {
+    double sum = 0;
+    for (long value : values) {
+      sum += value;
+    }
+    return sum / values.size();
+  }
+}
@@ -0,0 +1,95 @@
+package com.zhou.urltopdf;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 暂时性失败的重试队列，按可重试时间排序
+ * <p>
+ * 第 n 次重试前等待 base * 2^(n-1)（不超过上限），实际等待时间在该值的一半到全部之间随机取值，
+ * 避免同一网站的多篇文章在同一时刻重试；服务器给出 Retry-After 时至少等待该时间。
+ * 重试优先级低于新文章：由调用方决定何时取出到期的重试。
+ */
+class RetryQueue {
+
+  /**
+   * 一次待执行的重试
+   */
+  static class Entry {
+    final Article article;
+    // 实际打开的地址（预检得到的重定向后地址）
+    final String link;
+    // 本次是第几次重试（从1开始）
+    final int attempt;
+    final long readyAt;
+    final RenderFailure failure;
+
+    Entry(Article article, String link, int attempt, long readyAt, RenderFailure failure) {
+      this.article = article;
+      this.link = link;
+      this.attempt = attempt;
+      this.readyAt = readyAt;
+      this.failure = failure;
+    }
+  }
+
+  private final PriorityQueue<Entry> queue = new PriorityQueue<>(Comparator.comparingLong((Entry entry) -> entry.readyAt));
+  private final int maxAttempts;
+  private final long baseMillis;
+  private final long maxDelayMillis;
+
+  RetryQueue(int maxAttempts, long baseMillis, long maxDelayMillis) {
+    this.maxAttempts = maxAttempts;
+    this.baseMillis = Math.max(1, baseMillis);
+    this.maxDelayMillis = Math.max(this.baseMillis, maxDelayMillis);
+  }
+
+  /**
+   * 安排重试
+   *
+   * @param link    上次实际打开的地址，重试时直接使用
+   * @param attempt 即将进行的是第几次重试
+   * @return 超过最大重试次数时返回 -1，否则返回等待的毫秒数
+   */
+  long schedule(Article article, String link, int attempt, RenderFailure failure) {
+    if (attempt > maxAttempts) {
+      return -1;
+    }
+    long delay = Math.min(maxDelayMillis, baseMillis << Math.min(attempt - 1, 30));
+    delay = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    delay = Math.max(delay, failure.getRetryAfterMillis());
+    queue.add(new Entry(article, link, attempt, System.currentTimeMillis() + delay, failure));
+    return delay;
+  }
+
+  /**
+   * 取出已到期的重试，没有时返回 null
+   */
+  Entry pollReady() {
+    Entry head = queue.peek();
+    if (head != null && head.readyAt <= System.currentTimeMillis()) {
+      return queue.poll();
+    }
+    return null;
+  }
+
+  /**
+   * 距离最早的重试到期还有多久（毫秒），已到期时返回 0，队列为空时返回 -1
+   */
+  long millisUntilReady() {
+    Entry head = queue.peek();
+    if (head == null) {
+      return -1;
+    }
+    return Math.max(0, head.readyAt - System.currentTimeMillis());
+  }
+
+  boolean isEmpty() {
+    return queue.isEmpty();
+  }
+
+  int size() {
+    return queue.size();
+  }
+}
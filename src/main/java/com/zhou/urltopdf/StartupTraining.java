@@ -0,0 +1,65 @@
+package com.zhou.urltopdf;
+
+import com.microsoft.playwright.Browser;
+import com.microsoft.playwright.BrowserType;
+import com.microsoft.playwright.Page;
+import com.microsoft.playwright.Playwright;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import java.io.File;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * AppCDS 训练运行：走一遍启动、渲染和压缩的主要流程后退出，用于生成类数据共享归档
+ * <p>
+ * 由 appcds 构建配置调用：java -XX:ArchiveClassesAtExit=target/urltopdf.jsa -cp urltopdf.jar com.zhou.urltopdf.StartupTraining
+ * 运行时通过 -XX:SharedArchiveFile=target/urltopdf.jsa 使用归档，Playwright、PDFBox、Gson、logback 和 Swing
+ * 的类直接从归档映射，不再逐个从 shade 后的 jar 中解析、校验。训练运行同时会建立快速启动的驱动缓存。
+ */
+@Slf4j
+public class StartupTraining {
+
+  private static final String SAMPLE_HTML = "<html><head><title>urltopdf</title></head><body>"
+          + "<article><h1>urltopdf</h1><p>AppCDS training page, 训练页面。</p>"
+          + "<img src=\"data:image/gif;base64,R0lGODlhAQABAIAAAP///wAAACH5BAEAAAAALAAAAAABAAEAAAICRAEAOw==\">"
+          + "</article></body></html>";
+
+  public static void main(String[] args) throws Exception {
+    long start = System.currentTimeMillis();
+    // 配置读取和 Gson
+    AppConfig config = JsonUtils.readConfigFile();
+    config.setFastStartup(true);
+    // 训练页面不记录站点画像
+    config.setDomainProfiles(false);
+
+    // Swing 日志界面用到的组件（无图形环境时只加载类）
+    try {
+      new JScrollPane(new JTextArea());
+    } catch (Throwable e) {
+      log.info("无图形环境，跳过 Swing 组件初始化");
+    }
+
+    Path dir = Files.createTempDirectory("urltopdf-training");
+    File pdf = dir.resolve("training.pdf").toFile();
+    File compressed = dir.resolve("training_compressed.pdf").toFile();
+    try (Playwright playwright = PlaywrightBootstrap.create(true);
+         Browser browser = playwright.chromium().launch(new BrowserType.LaunchOptions().setHeadless(true));
+         Page page = browser.newPage()) {
+      String link = "data:text/html;charset=utf-8," + URLEncoder.encode(SAMPLE_HTML, StandardCharsets.UTF_8).replace("+", "%20");
+      new ArticleRenderer(config).render(page, link, pdf.getPath());
+    }
+
+    // 压缩流程（PDFBox、ImageIO）
+    PDFCompressor.compressPdf(pdf, compressed, PDFCompressor.CompressionLevel.HIGH);
+
+    Files.deleteIfExists(compressed.toPath());
+    Files.deleteIfExists(pdf.toPath());
+    Files.deleteIfExists(dir);
+    log.info("AppCDS 训练运行完成，耗时 " + (System.currentTimeMillis() - start) + " 毫秒");
+  }
+}
@@ -1,6 +1,11 @@
 package com.zhou.urltopdf;
 
+import java.util.regex.Pattern;
+
 public class StringUtils {
+  // Windows文件名中不允许的字符: \ / : * ? " < > |，同时替换其他可能有问题的字符
+  private static final Pattern INVALID_FILENAME_CHARS = Pattern.compile("[\\\\/:*?\"<>|\\r\\n]");
+
   /**
    * 清理字符串，使其可以作为Windows文件名使用
    * @param filename 原始文件名
@@ -11,9 +16,7 @@ public class StringUtils {
       return "unnamed";
     }
 
-    // Windows文件名中不允许的字符: \ / : * ? " < > |
-    // 同时替换其他可能有问题的字符
-    String sanitized = filename.replaceAll("[\\\\/:*?\"<>|\\r\\n]", "_");
+    String sanitized = INVALID_FILENAME_CHARS.matcher(filename).replaceAll("_");
 
     // 限制文件名长度（Windows路径总长度限制为260个字符，但这里我们限制文件名为150个字符）
     if (sanitized.length() > 150) {
@@ -0,0 +1,669 @@
+package com.zhou.urltopdf;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.color.PDICCBased;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.CCITTFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 超大图片（如整页网页截图，1920×60000像素）的分条处理
+ * <p>
+ * 直接从 Flate 压缩的原始数据逐行解码，逐行完成灰度转换、区域平均缩放和编码，
+ * 内存占用只与图片宽度有关，与高度无关：
+ * <ul>
+ *   <li>索引色和无损图像逐行写入带PNG预测的 Flate 流；</li>
+ *   <li>照片按固定行数切成多条JPEG，放进一个 Form XObject 中上下拼接，相邻两条重叠一行避免接缝；</li>
+ *   <li>二值图像按1位/像素累积后整体CCITT编码（内存约为原图RGB的1/32）。</li>
+ * </ul>
+ * 分类和Otsu阈值基于第一遍扫描时抽取的缩略样本。只处理8位 DeviceRGB/DeviceGray/ICCBased、
+ * 没有蒙版和 Decode 数组的 Flate 图片，其他图片仍走整图解码的路径。
+ */
+@Slf4j
+class StripImageProcessor {
+
+  // 像素数超过该值的图片走分条处理
+  static final long STRIP_MIN_PIXELS = 8_000_000L;
+  // 每条JPEG的行数（16的倍数，与JPEG的MCU对齐）
+  private static final int JPEG_STRIP_ROWS = 512;
+  // 分类用缩略样本的最大像素数
+  private static final int SAMPLE_PIXELS = 1_000_000;
+
+  private StripImageProcessor() {
+  }
+
+  /**
+   * 图片是否适合（并且需要）分条处理
+   */
+  static boolean supports(PDImageXObject image) throws IOException {
+    if ((long) image.getWidth() * image.getHeight() < STRIP_MIN_PIXELS) {
+      return false;
+    }
+    COSStream stream = image.getCOSObject();
+    List<COSName> filters = image.getStream().getFilters();
+    if (filters.size() != 1 || !COSName.FLATE_DECODE.equals(filters.get(0))
+            || image.getBitsPerComponent() != 8 || image.isStencil()
+            || stream.containsKey(COSName.SMASK) || stream.containsKey(COSName.MASK)
+            || stream.containsKey(COSName.DECODE) || stream.getInt(COSName.getPDFName("SMaskInData"), 0) != 0) {
+      return false;
+    }
+    PDColorSpace colorSpace = image.getColorSpace();
+    if (!(colorSpace instanceof PDDeviceRGB || colorSpace instanceof PDDeviceGray
+            || colorSpace instanceof PDICCBased)) {
+      return false;
+    }
+    int components = colorSpace.getNumberOfComponents();
+    if (components != 1 && components != 3) {
+      return false;
+    }
+    COSDictionary parms = decodeParms(stream);
+    int predictor = parms == null ? 1 : parms.getInt(COSName.PREDICTOR, 1);
+    if (predictor == 1) {
+      return true;
+    }
+    // 只支持PNG预测，且参数必须与图片一致
+    return predictor >= 10
+            && parms.getInt(COSName.COLORS, 1) == components
+            && parms.getInt(COSName.BITS_PER_COMPONENT, 8) == 8
+            && parms.getInt(COSName.COLUMNS, 1) == image.getWidth();
+  }
+
+  /**
+   * 分条处理图片
+   *
+   * @return 新的图片，照片可能是由多条JPEG拼成的 Form XObject
+   */
+  static PDXObject process(PDDocument document, PDImageXObject image, int targetWidth, int targetHeight,
+                           PDFCompressor.ImageSettings settings, CompressionStats stats) throws IOException {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int components = image.getColorSpace().getNumberOfComponents();
+    targetWidth = Math.max(1, Math.min(targetWidth, width));
+    targetHeight = Math.max(1, Math.min(targetHeight, height));
+
+    // 第一遍：抽取缩略样本用于分类和计算阈值
+    long decodeStart = System.nanoTime();
+    BufferedImage sample = sample(image, components);
+    stats.decodeNanos += System.nanoTime() - decodeStart;
+    ImageClassifier.Classification classification = ImageClassifier.classify(sample);
+    ImageClassifier.ImageKind kind = PDFCompressor.effectiveKind(classification, settings);
+    stats.kindCounts[kind.ordinal()]++;
+    stats.stripImages++;
+    stats.sourcePixels += (long) width * height;
+    stats.decodedPixels += (long) width * height;
+    log.debug("分条处理图片（{}x{} -> {}x{}），分类结果: {}", width, height, targetWidth, targetHeight, classification);
+
+    boolean gray = components == 1
+            || (settings.convertToGrayscale && kind != ImageClassifier.ImageKind.BILEVEL);
+    int outComponents = gray ? 1 : 3;
+    COSBase colorSpace = gray && components == 3
+            ? COSName.DEVICEGRAY : image.getCOSObject().getDictionaryObject(COSName.COLORSPACE);
+
+    RowSink sink;
+    switch (kind) {
+      case BILEVEL:
+        sink = new BilevelSink(document, targetWidth, targetHeight, outComponents,
+                PDFCompressor.calculateOtsuThreshold(sample));
+        break;
+      case INDEXED:
+        if (gray || classification.getPalette() == null) {
+          sink = new FlateSink(document, targetWidth, targetHeight, outComponents, colorSpace, null);
+        } else {
+          sink = new FlateSink(document, targetWidth, targetHeight, outComponents, colorSpace,
+                  classification.getPalette());
+        }
+        break;
+      case PHOTO:
+      default:
+        sink = new JpegStripSink(document, targetWidth, targetHeight, outComponents, colorSpace, settings.quality);
+        break;
+    }
+
+    // 第二遍：逐行解码、转换、缩放、编码
+    RowScaler scaler = new RowScaler(width, height, targetWidth, targetHeight, outComponents, sink, stats);
+    byte[] grayRow = gray && components == 3 ? new byte[width] : null;
+    try (RowReader reader = new RowReader(image, components)) {
+      for (int y = 0; y < height; y++) {
+        long start = System.nanoTime();
+        byte[] row = reader.readRow();
+        if (grayRow != null) {
+          toGray(row, grayRow, width);
+          row = grayRow;
+        }
+        stats.decodeNanos += System.nanoTime() - start;
+        scaler.push(row);
+      }
+    }
+    long encodeStart = System.nanoTime();
+    PDXObject result = sink.finish();
+    stats.encodeNanos += System.nanoTime() - encodeStart;
+    return result;
+  }
+
+  /**
+   * 每隔若干行、若干列取一个像素，生成不超过 SAMPLE_PIXELS 的缩略样本
+   */
+  private static BufferedImage sample(PDImageXObject image, int components) throws IOException {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int step = (int) Math.max(1, Math.ceil(Math.sqrt((double) width * height / SAMPLE_PIXELS)));
+    int sampleWidth = (width + step - 1) / step;
+    int sampleHeight = (height + step - 1) / step;
+    BufferedImage sample = new BufferedImage(sampleWidth, sampleHeight, BufferedImage.TYPE_INT_RGB);
+    int[] pixels = ((DataBufferInt) sample.getRaster().getDataBuffer()).getData();
+    try (RowReader reader = new RowReader(image, components)) {
+      for (int y = 0; y < height; y++) {
+        byte[] row = reader.readRow();
+        if (y % step != 0) {
+          continue;
+        }
+        int out = (y / step) * sampleWidth;
+        for (int x = 0, sx = 0; x < width; x += step, sx++) {
+          pixels[out + sx] = rgb(row, x, components);
+        }
+      }
+    }
+    return sample;
+  }
+
+  private static int rgb(byte[] row, int x, int components) {
+    if (components == 1) {
+      int v = row[x] & 0xFF;
+      return (v << 16) | (v << 8) | v;
+    }
+    int i = x * 3;
+    return ((row[i] & 0xFF) << 16) | ((row[i + 1] & 0xFF) << 8) | (row[i + 2] & 0xFF);
+  }
+
+  private static void toGray(byte[] rgb, byte[] gray, int width) {
+    for (int x = 0, i = 0; x < width; x++, i += 3) {
+      // 与 convertToGrayscale 相同的亮度公式（定点运算）
+      gray[x] = (byte) ((299 * (rgb[i] & 0xFF) + 587 * (rgb[i + 1] & 0xFF) + 114 * (rgb[i + 2] & 0xFF)) / 1000);
+    }
+  }
+
+  private static COSDictionary decodeParms(COSStream stream) {
+    COSBase parms = stream.getDictionaryObject(COSName.DECODE_PARMS, COSName.DP);
+    if (parms instanceof COSArray && ((COSArray) parms).size() > 0) {
+      parms = ((COSArray) parms).getObject(0);
+    }
+    return parms instanceof COSDictionary ? (COSDictionary) parms : null;
+  }
+
+  /**
+   * 逐行读取 Flate 图片的原始采样，按需还原PNG预测
+   */
+  private static class RowReader implements Closeable {
+    private final DataInputStream in;
+    private final boolean png;
+    private final int bytesPerPixel;
+    private byte[] row;
+    private byte[] previous;
+
+    RowReader(PDImageXObject image, int components) throws IOException {
+      COSDictionary parms = decodeParms(image.getCOSObject());
+      int predictor = parms == null ? 1 : parms.getInt(COSName.PREDICTOR, 1);
+      InputStream raw = image.getCOSObject().createRawInputStream();
+      this.in = new DataInputStream(new InflaterInputStream(raw, new Inflater(), 64 * 1024));
+      this.png = predictor >= 10;
+      this.bytesPerPixel = components;
+      this.row = new byte[image.getWidth() * components];
+      this.previous = new byte[row.length];
+    }
+
+    byte[] readRow() throws IOException {
+      byte[] swap = previous;
+      previous = row;
+      row = swap;
+      int filter = png ? in.readUnsignedByte() : 0;
+      in.readFully(row);
+      switch (filter) {
+        case 0:
+          break;
+        case 1:
+          for (int i = bytesPerPixel; i < row.length; i++) {
+            row[i] += row[i - bytesPerPixel];
+          }
+          break;
+        case 2:
+          for (int i = 0; i < row.length; i++) {
+            row[i] += previous[i];
+          }
+          break;
+        case 3:
+          for (int i = 0; i < row.length; i++) {
+            int left = i >= bytesPerPixel ? row[i - bytesPerPixel] & 0xFF : 0;
+            row[i] += (left + (previous[i] & 0xFF)) >> 1;
+          }
+          break;
+        case 4:
+          for (int i = 0; i < row.length; i++) {
+            int left = i >= bytesPerPixel ? row[i - bytesPerPixel] & 0xFF : 0;
+            int upLeft = i >= bytesPerPixel ? previous[i - bytesPerPixel] & 0xFF : 0;
+            row[i] += paeth(left, previous[i] & 0xFF, upLeft);
+          }
+          break;
+        default:
+          throw new IOException("无效的PNG预测类型: " + filter);
+      }
+      return row;
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+
+  private static int paeth(int left, int up, int upLeft) {
+    int p = left + up - upLeft;
+    int pa = Math.abs(p - left);
+    int pb = Math.abs(p - up);
+    int pc = Math.abs(p - upLeft);
+    if (pa <= pb && pa <= pc) {
+      return left;
+    }
+    return pb <= pc ? up : upLeft;
+  }
+
+  /**
+   * 逐行区域平均缩小，每凑齐一行输出就交给编码器
+   */
+  private static class RowScaler {
+    private final int sourceHeight;
+    private final int targetWidth;
+    private final int targetHeight;
+    private final int components;
+    private final RowSink sink;
+    private final CompressionStats stats;
+    private final int[] columnMap;
+    private final int[] columnCounts;
+    private final int[] sums;
+    private final byte[] output;
+    private int sourceRow;
+    private int outputRow;
+    private int rowsInOutput;
+
+    RowScaler(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight, int components,
+              RowSink sink, CompressionStats stats) {
+      this.sourceHeight = sourceHeight;
+      this.targetWidth = targetWidth;
+      this.targetHeight = targetHeight;
+      this.components = components;
+      this.sink = sink;
+      this.stats = stats;
+      this.columnMap = new int[sourceWidth];
+      this.columnCounts = new int[targetWidth];
+      for (int x = 0; x < sourceWidth; x++) {
+        columnMap[x] = (int) ((long) x * targetWidth / sourceWidth);
+        columnCounts[columnMap[x]]++;
+      }
+      this.sums = new int[targetWidth * components];
+      this.output = new byte[targetWidth * components];
+    }
+
+    void push(byte[] row) throws IOException {
+      long start = System.nanoTime();
+      if (components == 1) {
+        for (int x = 0; x < columnMap.length; x++) {
+          sums[columnMap[x]] += row[x] & 0xFF;
+        }
+      } else {
+        for (int x = 0, i = 0; x < columnMap.length; x++, i += 3) {
+          int o = columnMap[x] * 3;
+          sums[o] += row[i] & 0xFF;
+          sums[o + 1] += row[i + 1] & 0xFF;
+          sums[o + 2] += row[i + 2] & 0xFF;
+        }
+      }
+      rowsInOutput++;
+      sourceRow++;
+      int nextOutputRow = (int) ((long) sourceRow * targetHeight / sourceHeight);
+      boolean complete = sourceRow == sourceHeight || nextOutputRow != outputRow;
+      if (complete) {
+        for (int x = 0; x < targetWidth; x++) {
+          int count = columnCounts[x] * rowsInOutput;
+          for (int c = 0; c < components; c++) {
+            int i = x * components + c;
+            output[i] = (byte) ((sums[i] + count / 2) / count);
+          }
+        }
+        Arrays.fill(sums, 0);
+        rowsInOutput = 0;
+        outputRow = nextOutputRow;
+      }
+      stats.resizeNanos += System.nanoTime() - start;
+      if (complete) {
+        long encodeStart = System.nanoTime();
+        sink.write(output);
+        stats.encodeNanos += System.nanoTime() - encodeStart;
+      }
+    }
+  }
+
+  /**
+   * 逐行接收缩放后像素的编码器
+   */
+  private interface RowSink {
+    void write(byte[] row) throws IOException;
+
+    PDXObject finish() throws IOException;
+  }
+
+  /**
+   * 逐行写入 Flate 流，灰度/RGB使用自适应PNG预测，索引色按调色板量化
+   */
+  private static class FlateSink implements RowSink {
+    private final COSStream stream;
+    private final OutputStream out;
+    private final int components;
+    private final int[] palette;
+    private final int[] paletteCache;
+    private final byte[] previous;
+    private final byte[] indices;
+    private final byte[][] candidates;
+
+    FlateSink(PDDocument document, int width, int height, int components, COSBase colorSpace, int[] palette)
+            throws IOException {
+      this.components = components;
+      this.palette = palette;
+      this.stream = document.getDocument().createCOSStream();
+      stream.setItem(COSName.TYPE, COSName.XOBJECT);
+      stream.setItem(COSName.SUBTYPE, COSName.IMAGE);
+      stream.setInt(COSName.WIDTH, width);
+      stream.setInt(COSName.HEIGHT, height);
+      stream.setInt(COSName.BITS_PER_COMPONENT, 8);
+      stream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+      if (palette != null) {
+        // 索引色：基础颜色空间沿用原图（RGB或ICCBased）
+        byte[] lookup = new byte[palette.length * 3];
+        for (int i = 0; i < palette.length; i++) {
+          lookup[i * 3] = (byte) (palette[i] >> 16);
+          lookup[i * 3 + 1] = (byte) (palette[i] >> 8);
+          lookup[i * 3 + 2] = (byte) palette[i];
+        }
+        COSArray indexed = new COSArray();
+        indexed.add(COSName.INDEXED);
+        indexed.add(colorSpace);
+        indexed.add(COSInteger.get(palette.length - 1));
+        indexed.add(new COSString(lookup));
+        stream.setItem(COSName.COLORSPACE, indexed);
+        this.paletteCache = new int[1 << 15];
+        Arrays.fill(paletteCache, -1);
+        this.indices = new byte[width];
+        this.previous = null;
+        this.candidates = null;
+      } else {
+        stream.setItem(COSName.COLORSPACE, colorSpace);
+        COSDictionary parms = new COSDictionary();
+        parms.setInt(COSName.PREDICTOR, 15);
+        parms.setInt(COSName.COLORS, components);
+        parms.setInt(COSName.BITS_PER_COMPONENT, 8);
+        parms.setInt(COSName.COLUMNS, width);
+        stream.setItem(COSName.DECODE_PARMS, parms);
+        this.paletteCache = null;
+        this.indices = null;
+        this.previous = new byte[width * components];
+        this.candidates = new byte[5][width * components + 1];
+      }
+      this.out = new DeflaterOutputStream(stream.createRawOutputStream(), new Deflater(Deflater.DEFAULT_COMPRESSION),
+              64 * 1024);
+    }
+
+    @Override
+    public void write(byte[] row) throws IOException {
+      if (palette != null) {
+        // 索引色行直接写入，不加预测
+        for (int x = 0; x < indices.length; x++) {
+          int rgb = rgb(row, x, components);
+          int key = ((rgb >> 9) & 0x7C00) | ((rgb >> 6) & 0x03E0) | ((rgb >> 3) & 0x001F);
+          int index = paletteCache[key];
+          if (index < 0) {
+            index = PDFCompressor.nearestColor(palette, rgb);
+            paletteCache[key] = index;
+          }
+          indices[x] = (byte) index;
+        }
+        out.write(indices);
+        return;
+      }
+      out.write(filterRow(row));
+      System.arraycopy(row, 0, previous, 0, row.length);
+    }
+
+    /**
+     * 按PNG推荐的启发式规则（残差绝对值之和最小）为每行选择预测类型
+     */
+    private byte[] filterRow(byte[] row) {
+      int bpp = components;
+      byte[] best = null;
+      long bestSum = Long.MAX_VALUE;
+      for (int type = 0; type < 5; type++) {
+        byte[] filtered = candidates[type];
+        filtered[0] = (byte) type;
+        long sum = 0;
+        for (int i = 0; i < row.length; i++) {
+          int current = row[i] & 0xFF;
+          int left = i >= bpp ? row[i - bpp] & 0xFF : 0;
+          int up = previous[i] & 0xFF;
+          int upLeft = i >= bpp ? previous[i - bpp] & 0xFF : 0;
+          int predicted;
+          switch (type) {
+            case 1:
+              predicted = left;
+              break;
+            case 2:
+              predicted = up;
+              break;
+            case 3:
+              predicted = (left + up) >> 1;
+              break;
+            case 4:
+              predicted = paeth(left, up, upLeft);
+              break;
+            default:
+              predicted = 0;
+          }
+          byte value = (byte) (current - predicted);
+          filtered[i + 1] = value;
+          sum += Math.abs((int) value);
+        }
+        if (sum < bestSum) {
+          bestSum = sum;
+          best = filtered;
+        }
+      }
+      return best;
+    }
+
+    @Override
+    public PDXObject finish() throws IOException {
+      out.close();
+      return new PDImageXObject(new PDStream(stream), null);
+    }
+  }
+
+  /**
+   * 按阈值逐行二值化，累积为1位图像后CCITT G4编码
+   */
+  private static class BilevelSink implements RowSink {
+    private final PDDocument document;
+    private final BufferedImage image;
+    private final byte[] data;
+    private final int stride;
+    private final int components;
+    private final int threshold;
+    private int y;
+
+    BilevelSink(PDDocument document, int width, int height, int components, int threshold) {
+      this.document = document;
+      this.image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+      this.data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+      this.stride = (width + 7) / 8;
+      this.components = components;
+      this.threshold = threshold;
+    }
+
+    @Override
+    public void write(byte[] row) {
+      int width = image.getWidth();
+      int offset = y * stride;
+      for (int x = 0; x < width; x++) {
+        int brightness;
+        if (components == 1) {
+          brightness = row[x] & 0xFF;
+        } else {
+          int i = x * 3;
+          brightness = (299 * (row[i] & 0xFF) + 587 * (row[i + 1] & 0xFF) + 114 * (row[i + 2] & 0xFF)) / 1000;
+        }
+        if (brightness > threshold) {
+          // 默认调色板中1为白色
+          data[offset + (x >> 3)] |= (byte) (0x80 >> (x & 7));
+        }
+      }
+      y++;
+    }
+
+    @Override
+    public PDXObject finish() throws IOException {
+      return CCITTFactory.createFromImage(document, image);
+    }
+  }
+
+  /**
+   * 按固定行数切成多条JPEG，用 Form XObject 拼接成原图大小
+   * <p>
+   * 每条多编码下一条的第一行，绘制时下一条覆盖在重叠行上，避免阅读器抗锯齿产生接缝
+   */
+  private static class JpegStripSink implements RowSink {
+    private final PDDocument document;
+    private final int width;
+    private final int height;
+    private final int components;
+    private final COSBase colorSpace;
+    private final float quality;
+    private final BufferedImage strip;
+    private final List<PDImageXObject> strips = new ArrayList<>();
+    private final List<int[]> ranges = new ArrayList<>();
+    private int stripStart;
+    private int rowsInStrip;
+
+    JpegStripSink(PDDocument document, int width, int height, int components, COSBase colorSpace, float quality) {
+      this.document = document;
+      this.width = width;
+      this.height = height;
+      this.components = components;
+      this.colorSpace = colorSpace;
+      this.quality = quality;
+      this.strip = new BufferedImage(width, JPEG_STRIP_ROWS + 1,
+              components == 1 ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Override
+    public void write(byte[] row) throws IOException {
+      setRow(rowsInStrip++, row);
+      if (rowsInStrip == JPEG_STRIP_ROWS + 1) {
+        encodeStrip(rowsInStrip);
+        // 重叠行作为下一条的第一行
+        copyRow(JPEG_STRIP_ROWS, 0);
+        stripStart += JPEG_STRIP_ROWS;
+        rowsInStrip = 1;
+      }
+    }
+
+    private void setRow(int y, byte[] row) {
+      if (components == 1) {
+        byte[] data = ((DataBufferByte) strip.getRaster().getDataBuffer()).getData();
+        System.arraycopy(row, 0, data, y * width, width);
+      } else {
+        int[] data = ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+        int offset = y * width;
+        for (int x = 0, i = 0; x < width; x++, i += 3) {
+          data[offset + x] = ((row[i] & 0xFF) << 16) | ((row[i + 1] & 0xFF) << 8) | (row[i + 2] & 0xFF);
+        }
+      }
+    }
+
+    private void copyRow(int from, int to) {
+      Object data = components == 1
+              ? ((DataBufferByte) strip.getRaster().getDataBuffer()).getData()
+              : ((DataBufferInt) strip.getRaster().getDataBuffer()).getData();
+      System.arraycopy(data, from * width, data, to * width, width);
+    }
+
+    private void encodeStrip(int rows) throws IOException {
+      BufferedImage image = rows == strip.getHeight() ? strip : strip.getSubimage(0, 0, width, rows);
+      byte[] jpeg = ImageEncoderPool.get().encode(image, "jpg", quality);
+      PDImageXObject stripImage = PDImageXObject.createFromByteArray(document, jpeg, "image");
+      if (components == 3 && colorSpace != null && !COSName.DEVICERGB.equals(colorSpace)) {
+        // 沿用原图的ICC颜色空间
+        stripImage.getCOSObject().setItem(COSName.COLORSPACE, colorSpace);
+      }
+      strips.add(stripImage);
+      ranges.add(new int[]{stripStart, stripStart + rows});
+    }
+
+    @Override
+    public PDXObject finish() throws IOException {
+      // 最后剩下的一行如果只是上一条的重叠行则已经编码过
+      if (strips.isEmpty() || rowsInStrip > 1) {
+        encodeStrip(rowsInStrip);
+      }
+      if (strips.size() == 1) {
+        return strips.get(0);
+      }
+
+      // 与图片一样绘制在单位正方形内，每条占据对应的高度（PDF坐标y轴向上）
+      PDFormXObject form = new PDFormXObject(document);
+      form.setBBox(new PDRectangle(0, 0, 1, 1));
+      PDResources resources = new PDResources();
+      form.setResources(resources);
+      StringBuilder content = new StringBuilder();
+      for (int i = 0; i < strips.size(); i++) {
+        COSName name = resources.add(strips.get(i));
+        int[] range = ranges.get(i);
+        float stripHeight = (float) (range[1] - range[0]) / height;
+        float bottom = 1 - (float) range[1] / height;
+        content.append(String.format(Locale.ROOT, "q 1 0 0 %.6f 0 %.6f cm /%s Do Q\n",
+                stripHeight, bottom, name.getName()));
+      }
+      try (OutputStream out = form.getContentStream().createOutputStream(COSName.FLATE_DECODE)) {
+        out.write(content.toString().getBytes(StandardCharsets.US_ASCII));
+      }
+      return form;
+    }
+  }
+}
@@ -0,0 +1,322 @@
+package com.zhou.urltopdf;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.cos.COSObjectKey;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.List;
+
+/**
+ * 目标大小压缩：为每张图片在质量/DPI阶梯上选择档位，使输出不超过目标大小且整体质量尽量高
+ * <p>
+ * 每张图片只解码一次，从原图中取若干原始分辨率的小块拼成样本，
+ * 按各档位的缩放比例和质量对样本试编码，以“字节/像素”估算整图编码后的大小。
+ * 所有图片从最高档开始，超出预算时每次把“降一档能节省最多字节”的图片降一档，直到估算值满足预算，
+ * 大图、照片先降，小图标和文字截图尽量保持原质量；每张图片每个档位最多试编码一次。
+ * 搜索完全基于这个模型进行，整份文档只在最后按各图片的档位做完整重编码；
+ * 若实际大小与模型偏差导致超出目标，按偏差比例收紧预算后继续降档，最多重试几次。
+ */
+@Slf4j
+class TargetSizeCompressor {
+
+  // 质量/DPI 搜索阶梯，从高质量到低质量
+  private static final float[] QUALITY_STEPS = {0.85f, 0.75f, 0.65f, 0.55f, 0.45f, 0.35f, 0.25f, 0.18f, 0.12f};
+  private static final int[] DPI_STEPS = {300, 220, 180, 150, 130, 110, 96, 80, 72};
+
+  // 样本由 PROBE_TILES 个边长不超过 PROBE_TILE_SIZE 的原始分辨率小块拼成
+  private static final int PROBE_TILE_SIZE = 160;
+  private static final int PROBE_TILES = 4;
+  // 每个图片对象的固定开销（字典、流头等）
+  private static final int IMAGE_OVERHEAD_BYTES = 256;
+  // 估算值需要低于目标的比例，给模型误差留出余量
+  private static final double SAFETY_MARGIN = 0.92;
+  // 最多完整重编码的次数
+  private static final int MAX_FULL_PASSES = 3;
+
+  /**
+   * 单张图片的大小模型
+   */
+  private static class ImageModel {
+    // 对象编号，完整重编码时按编号对应到重新加载的图片
+    final COSObjectKey key;
+    final int width;
+    final int height;
+    final float dpi;
+    final ImageClassifier.ImageKind kind;
+    final ImageClassifier.Classification classification;
+    final BufferedImage probe;
+    // 档位 -> 估算大小
+    final Map<Integer, Long> estimates = new HashMap<>();
+
+    // 当前选定的档位
+    int step;
+
+    ImageModel(COSObjectKey key, int width, int height, float dpi, ImageClassifier.ImageKind kind,
+               ImageClassifier.Classification classification, BufferedImage probe) {
+      this.key = key;
+      this.width = width;
+      this.height = height;
+      this.dpi = dpi;
+      this.kind = kind;
+      this.classification = classification;
+      this.probe = probe;
+    }
+  }
+
+  /**
+   * 压缩PDF文件，使输出不超过目标大小
+   */
+  static void compress(File inputFile, File outputFile, long targetSizeBytes) throws IOException {
+    log.info("开始目标大小压缩：" + inputFile.getName() + "，目标大小: "
+            + String.format("%.2f MB", targetSizeBytes / 1024.0 / 1024.0));
+    long startTime = System.currentTimeMillis();
+    long originalSize = inputFile.length();
+
+    if (originalSize <= targetSizeBytes) {
+      Files.copy(inputFile.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      log.info("原始文件已满足目标大小，直接复制：" + outputFile.getName());
+      return;
+    }
+
+    // 1. 建立大小模型：每张图片解码一次，生成试编码样本
+    List<ImageModel> models = new ArrayList<>();
+    long originalImageBytes = 0;
+    try (PDDocument document = PDFCompressor.loadDocument(inputFile)) {
+      Set<COSStream> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+      Map<COSStream, COSObjectKey> keys = PDFCompressor.objectKeys(document);
+      for (PDFCompressor.ImagePlacement placement : PDFCompressor.collectImages(document)) {
+        if (!seen.add(placement.image.getCOSObject())) {
+          continue;
+        }
+        COSObjectKey key = keys.get(placement.image.getCOSObject());
+        if (key == null) {
+          // 直接内嵌的流没有对象编号，计入固定部分，完整重编码时按最低选定档位处理
+          continue;
+        }
+        try {
+          originalImageBytes += placement.image.getCOSObject().getLength();
+          models.add(buildModel(key, placement, stepSettings(0)));
+        } catch (Exception e) {
+          log.debug("建立图片{}的大小模型时出错，跳过: ", placement.name.getName(), e);
+        }
+      }
+    }
+    long modelTime = System.currentTimeMillis() - startTime;
+    // 非图片部分的大小近似保持不变
+    long fixedBytes = Math.max(0, originalSize - originalImageBytes);
+    long budget = (long) (targetSizeBytes * SAFETY_MARGIN);
+
+    // 2. 逐图降档直到估算值满足预算
+    int lowest = QUALITY_STEPS.length - 1;
+    Counter evaluations = new Counter();
+    try (PDDocument scratch = new PDDocument()) {
+      long estimate = lowerSteps(scratch, models, fixedBytes, budget, evaluations);
+
+      // 3. 按选定档位完整重编码；超出目标时按实际偏差收紧预算后继续降档
+      int passes = 0;
+      long actualSize;
+      while (true) {
+        passes++;
+        PDFCompressor.compressPdf(inputFile, outputFile, PDFCompressor.CompressionLevel.MEDIUM, passSettings(models));
+        actualSize = outputFile.length();
+        if (actualSize <= targetSizeBytes || allLowest(models) || passes >= MAX_FULL_PASSES) {
+          break;
+        }
+        double correction = (double) actualSize / Math.max(1, estimate);
+        budget = (long) (budget / correction);
+        log.info("第{}次重编码结果 {} 字节超出目标，模型修正系数 {}，继续降档",
+                passes, actualSize, String.format("%.2f", correction));
+        estimate = lowerSteps(scratch, models, fixedBytes, budget, evaluations);
+      }
+
+      long endTime = System.currentTimeMillis();
+      if (actualSize > targetSizeBytes) {
+        if (allLowest(models)) {
+          log.warn("所有图片已降到最低档位仍无法满足目标大小：" + outputFile.getName());
+        } else {
+          log.warn("已达到最大重编码次数（{}次）仍无法满足目标大小：{}", MAX_FULL_PASSES, outputFile.getName());
+        }
+      }
+      int[] histogram = new int[QUALITY_STEPS.length];
+      for (ImageModel model : models) {
+        histogram[model.step]++;
+      }
+      StringBuilder steps = new StringBuilder();
+      for (int step = 0; step <= lowest; step++) {
+        if (histogram[step] > 0) {
+          steps.append(steps.length() == 0 ? "" : "，").append(String.format("档位%d（质量%.2f，DPI%d）%d张",
+                  step, QUALITY_STEPS[step], DPI_STEPS[step], histogram[step]));
+        }
+      }
+      log.info(String.format("目标大小压缩完成：%s，目标: %.2f MB, 实际: %.2f MB, 图片数: %d（%s）, "
+                      + "试编码: %d 次, 完整重编码: %d 次, 建模耗时: %d 毫秒, 总耗时: %d 毫秒",
+              outputFile.getName(),
+              targetSizeBytes / 1024.0 / 1024.0,
+              actualSize / 1024.0 / 1024.0,
+              models.size(), steps.length() == 0 ? "无" : steps,
+              evaluations.value, passes, modelTime, endTime - startTime));
+    }
+  }
+
+  /**
+   * 试编码次数
+   */
+  private static class Counter {
+    int value;
+  }
+
+  /**
+   * 估算值超出预算时，反复把降一档节省字节最多的图片降一档
+   *
+   * @return 降档后的估算总大小
+   */
+  private static long lowerSteps(PDDocument scratch, List<ImageModel> models, long fixedBytes, long budget,
+                                 Counter evaluations) throws IOException {
+    int lowest = QUALITY_STEPS.length - 1;
+    long total = fixedBytes;
+    for (ImageModel model : models) {
+      total += estimate(scratch, model, model.step, evaluations);
+    }
+    while (total > budget) {
+      ImageModel best = null;
+      long bestSaving = 0;
+      for (ImageModel model : models) {
+        if (model.step >= lowest) {
+          continue;
+        }
+        long saving = estimate(scratch, model, model.step, evaluations)
+                - estimate(scratch, model, model.step + 1, evaluations);
+        if (best == null || saving > bestSaving) {
+          best = model;
+          bestSaving = saving;
+        }
+      }
+      if (best == null) {
+        // 全部已是最低档位
+        break;
+      }
+      best.step++;
+      total -= bestSaving;
+    }
+    log.debug("逐图降档后估算大小: {} 字节，预算: {} 字节", total, budget);
+    return total;
+  }
+
+  private static boolean allLowest(List<ImageModel> models) {
+    for (ImageModel model : models) {
+      if (model.step < QUALITY_STEPS.length - 1) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * 完整重编码的参数：各图片按选定档位，没有模型的图片使用选定档位中最低的一档
+   */
+  private static PDFCompressor.ImageSettings passSettings(List<ImageModel> models) {
+    int fallback = 0;
+    Map<COSObjectKey, PDFCompressor.ImageSettings> perImage = new HashMap<>();
+    PDFCompressor.ImageSettings[] bySteps = new PDFCompressor.ImageSettings[QUALITY_STEPS.length];
+    for (ImageModel model : models) {
+      if (bySteps[model.step] == null) {
+        bySteps[model.step] = stepSettings(model.step);
+      }
+      perImage.put(model.key, bySteps[model.step]);
+      fallback = Math.max(fallback, model.step);
+    }
+    PDFCompressor.ImageSettings settings = stepSettings(fallback);
+    settings.perImage = perImage;
+    return settings;
+  }
+
+  /**
+   * 某一档位对应的图片压缩参数
+   */
+  private static PDFCompressor.ImageSettings stepSettings(int step) {
+    PDFCompressor.ImageSettings settings = new PDFCompressor.ImageSettings();
+    settings.quality = QUALITY_STEPS[step];
+    settings.maxDPI = DPI_STEPS[step];
+    settings.binarizeMonochrome = true;
+    return settings;
+  }
+
+  /**
+   * 解码并分类图片，截取样本
+   */
+  private static ImageModel buildModel(COSObjectKey key, PDFCompressor.ImagePlacement placement,
+                                       PDFCompressor.ImageSettings settings) throws IOException {
+    BufferedImage image = placement.image.getImage();
+    ImageClassifier.Classification classification = ImageClassifier.classify(image);
+    ImageClassifier.ImageKind kind = PDFCompressor.effectiveKind(classification, settings);
+    return new ImageModel(key, image.getWidth(), image.getHeight(), placement.dpi(),
+            kind, classification, buildProbe(image));
+  }
+
+  /**
+   * 从原图中均匀选取若干原始分辨率的小块，横向拼接成样本；小图直接使用原图
+   */
+  private static BufferedImage buildProbe(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    if ((long) width * height <= (long) PROBE_TILE_SIZE * PROBE_TILE_SIZE * PROBE_TILES) {
+      return image;
+    }
+    int tileWidth = Math.min(width, PROBE_TILE_SIZE);
+    int tileHeight = Math.min(height, PROBE_TILE_SIZE);
+    BufferedImage probe = new BufferedImage(tileWidth * PROBE_TILES, tileHeight, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = probe.createGraphics();
+    try {
+      for (int i = 0; i < PROBE_TILES; i++) {
+        // 沿对角线均匀分布的小块，兼顾宽图和长图
+        int x = (int) ((long) (width - tileWidth) * (2 * i + 1) / (2 * PROBE_TILES));
+        int y = (int) ((long) (height - tileHeight) * (2 * i + 1) / (2 * PROBE_TILES));
+        g.drawImage(image.getSubimage(x, y, tileWidth, tileHeight), i * tileWidth, 0, null);
+      }
+    } finally {
+      g.dispose();
+    }
+    return probe;
+  }
+
+  /**
+   * 单张图片在某一档位下编码后的估算大小，每个档位只试编码一次
+   */
+  private static long estimate(PDDocument scratch, ImageModel model, int step, Counter evaluations)
+          throws IOException {
+    Long cached = model.estimates.get(step);
+    if (cached == null) {
+      cached = estimate(scratch, model, stepSettings(step));
+      model.estimates.put(step, cached);
+      evaluations.value++;
+    }
+    return cached;
+  }
+
+  /**
+   * 对样本按档位的缩放比例和质量试编码，按字节/像素估算整图大小
+   */
+  private static long estimate(PDDocument scratch, ImageModel model, PDFCompressor.ImageSettings settings)
+          throws IOException {
+    double scale = model.dpi > settings.maxDPI ? settings.maxDPI / model.dpi : 1.0;
+    BufferedImage probe = model.probe;
+    if (scale < 1.0) {
+      probe = PDFCompressor.resizeImage(probe,
+              (int) Math.max(1, probe.getWidth() * scale), (int) Math.max(1, probe.getHeight() * scale), false);
+    }
+    PDImageXObject encoded = PDFCompressor.encodeImage(
+            scratch, probe, model.kind, model.classification, settings.quality);
+    double bytesPerPixel = (double) encoded.getCOSObject().getLength() / ((long) probe.getWidth() * probe.getHeight());
+    double targetPixels = model.width * scale * model.height * scale;
+    return IMAGE_OVERHEAD_BYTES + (long) (bytesPerPixel * targetPixels);
+  }
+}
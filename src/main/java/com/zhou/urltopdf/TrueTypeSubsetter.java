@@ -0,0 +1,223 @@
+package com.zhou.urltopdf;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * TrueType 字体子集化
+ * <p>
+ * 只保留指定字形的轮廓数据，其余字形在 glyf 表中清空（loca 中长度为0），字形编号保持不变。
+ * 因为编号不变，PDF 中的 CIDToGIDMap、cmap、宽度等都不需要修改，对简单字体和 CID 字体都安全。
+ * 组合字形引用的部件字形会一并保留。
+ */
+class TrueTypeSubsetter {
+
+  private static final int ARG_1_AND_2_ARE_WORDS = 0x0001;
+  private static final int WE_HAVE_A_SCALE = 0x0008;
+  private static final int MORE_COMPONENTS = 0x0020;
+  private static final int WE_HAVE_AN_X_AND_Y_SCALE = 0x0040;
+  private static final int WE_HAVE_A_TWO_BY_TWO = 0x0080;
+
+  private TrueTypeSubsetter() {
+  }
+
+  /**
+   * 生成只包含指定字形的字体
+   *
+   * @param font     原始字体程序（未压缩的 sfnt 数据）
+   * @param glyphIds 需要保留的字形编号
+   * @return 子集字体；不是可处理的 TrueType 字体或无法变小时返回 null
+   */
+  static byte[] subset(byte[] font, Collection<Integer> glyphIds) {
+    try {
+      return doSubset(font, glyphIds);
+    } catch (RuntimeException e) {
+      // 字体数据损坏（越界等），保持原样
+      return null;
+    }
+  }
+
+  private static byte[] doSubset(byte[] font, Collection<Integer> glyphIds) {
+    ByteBuffer in = ByteBuffer.wrap(font);
+    int version = in.getInt(0);
+    // 只处理 TrueType 轮廓（0x00010000 或 'true'），CFF 轮廓和字体集合不处理
+    if (version != 0x00010000 && version != 0x74727565) {
+      return null;
+    }
+    int numTables = in.getShort(4) & 0xFFFF;
+    Map<String, int[]> tables = new TreeMap<>();
+    for (int i = 0; i < numTables; i++) {
+      int entry = 12 + i * 16;
+      String tag = new String(font, entry, 4, StandardCharsets.ISO_8859_1);
+      tables.put(tag, new int[]{in.getInt(entry + 8), in.getInt(entry + 12)});
+    }
+    int[] head = tables.get("head");
+    int[] maxp = tables.get("maxp");
+    int[] loca = tables.get("loca");
+    int[] glyf = tables.get("glyf");
+    if (head == null || maxp == null || loca == null || glyf == null) {
+      return null;
+    }
+
+    int numGlyphs = in.getShort(maxp[0] + 4) & 0xFFFF;
+    boolean longLoca = in.getShort(head[0] + 50) != 0;
+    int[] offsets = new int[numGlyphs + 1];
+    for (int i = 0; i <= numGlyphs; i++) {
+      offsets[i] = longLoca ? in.getInt(loca[0] + i * 4) : (in.getShort(loca[0] + i * 2) & 0xFFFF) * 2;
+    }
+
+    // 需要保留的字形，包括 .notdef 和组合字形的部件
+    boolean[] keep = new boolean[numGlyphs];
+    Deque<Integer> pending = new ArrayDeque<>();
+    pending.add(0);
+    for (Integer gid : glyphIds) {
+      if (gid != null && gid >= 0 && gid < numGlyphs) {
+        pending.add(gid);
+      }
+    }
+    int kept = 0;
+    while (!pending.isEmpty()) {
+      int gid = pending.poll();
+      if (keep[gid]) {
+        continue;
+      }
+      keep[gid] = true;
+      kept++;
+      int start = glyf[0] + offsets[gid];
+      int length = offsets[gid + 1] - offsets[gid];
+      if (length > 0 && in.getShort(start) < 0) {
+        // 组合字形：跳过10字节头部后逐个读取部件
+        int pos = start + 10;
+        int flags;
+        do {
+          flags = in.getShort(pos) & 0xFFFF;
+          int component = in.getShort(pos + 2) & 0xFFFF;
+          if (component < numGlyphs) {
+            pending.add(component);
+          }
+          pos += 4 + ((flags & ARG_1_AND_2_ARE_WORDS) != 0 ? 4 : 2);
+          if ((flags & WE_HAVE_A_SCALE) != 0) {
+            pos += 2;
+          } else if ((flags & WE_HAVE_AN_X_AND_Y_SCALE) != 0) {
+            pos += 4;
+          } else if ((flags & WE_HAVE_A_TWO_BY_TWO) != 0) {
+            pos += 8;
+          }
+        } while ((flags & MORE_COMPONENTS) != 0);
+      }
+    }
+    if (kept == numGlyphs) {
+      return null;
+    }
+
+    // 重建 glyf 和 loca，每个字形按4字节对齐
+    int glyfSize = 0;
+    for (int gid = 0; gid < numGlyphs; gid++) {
+      if (keep[gid]) {
+        glyfSize += align4(offsets[gid + 1] - offsets[gid]);
+      }
+    }
+    boolean newLongLoca = glyfSize > 0x1FFFE;
+    byte[] newGlyf = new byte[glyfSize];
+    ByteBuffer newLoca = ByteBuffer.allocate((numGlyphs + 1) * (newLongLoca ? 4 : 2));
+    int position = 0;
+    for (int gid = 0; gid < numGlyphs; gid++) {
+      putLoca(newLoca, position, newLongLoca);
+      if (keep[gid]) {
+        int length = offsets[gid + 1] - offsets[gid];
+        System.arraycopy(font, glyf[0] + offsets[gid], newGlyf, position, length);
+        position += align4(length);
+      }
+    }
+    putLoca(newLoca, position, newLongLoca);
+
+    Map<String, byte[]> data = new TreeMap<>();
+    for (Map.Entry<String, int[]> table : tables.entrySet()) {
+      int[] range = table.getValue();
+      data.put(table.getKey(), Arrays.copyOfRange(font, range[0], range[0] + range[1]));
+    }
+    data.put("glyf", newGlyf);
+    data.put("loca", newLoca.array());
+    ByteBuffer newHead = ByteBuffer.wrap(data.get("head"));
+    newHead.putInt(8, 0);
+    newHead.putShort(50, (short) (newLongLoca ? 1 : 0));
+
+    byte[] result = write(version, data);
+    return result.length < font.length ? result : null;
+  }
+
+  /**
+   * 按表名排序写出字体，重新计算表校验和及 head.checkSumAdjustment
+   */
+  private static byte[] write(int version, Map<String, byte[]> tables) {
+    int numTables = tables.size();
+    int size = 12 + numTables * 16;
+    for (byte[] table : tables.values()) {
+      size += align4(table.length);
+    }
+    ByteBuffer out = ByteBuffer.allocate(size);
+    int entrySelector = 31 - Integer.numberOfLeadingZeros(numTables);
+    int searchRange = (1 << entrySelector) * 16;
+    out.putInt(version);
+    out.putShort((short) numTables);
+    out.putShort((short) searchRange);
+    out.putShort((short) entrySelector);
+    out.putShort((short) (numTables * 16 - searchRange));
+
+    int offset = 12 + numTables * 16;
+    int headOffset = -1;
+    for (Map.Entry<String, byte[]> table : tables.entrySet()) {
+      byte[] bytes = table.getValue();
+      out.put(table.getKey().getBytes(StandardCharsets.ISO_8859_1));
+      out.putInt((int) checksum(bytes, 0, bytes.length));
+      out.putInt(offset);
+      out.putInt(bytes.length);
+      if ("head".equals(table.getKey())) {
+        headOffset = offset;
+      }
+      offset += align4(bytes.length);
+    }
+    for (byte[] bytes : tables.values()) {
+      out.put(bytes);
+      out.position(out.position() + align4(bytes.length) - bytes.length);
+    }
+
+    byte[] result = out.array();
+    long adjustment = 0xB1B0AFBAL - checksum(result, 0, result.length);
+    ByteBuffer.wrap(result).putInt(headOffset + 8, (int) adjustment);
+    return result;
+  }
+
+  private static void putLoca(ByteBuffer loca, int offset, boolean longLoca) {
+    if (longLoca) {
+      loca.putInt(offset);
+    } else {
+      loca.putShort((short) (offset / 2));
+    }
+  }
+
+  private static long checksum(byte[] data, int offset, int length) {
+    long sum = 0;
+    for (int i = 0; i < length; i += 4) {
+      long value = 0;
+      for (int j = 0; j < 4; j++) {
+        value <<= 8;
+        if (i + j < length) {
+          value |= data[offset + i + j] & 0xFF;
+        }
+      }
+      sum += value;
+    }
+    return sum & 0xFFFFFFFFL;
+  }
+
+  private static int align4(int length) {
+    return (length + 3) & ~3;
+  }
+}
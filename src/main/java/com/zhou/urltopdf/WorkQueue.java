@@ -0,0 +1,695 @@
+package com.zhou.urltopdf;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 落盘的待渲染队列：文章数量很大（数百万篇）时内存中只保留调度窗口内的文章，其余保存在磁盘上
+ * <p>
+ * 目录结构：
+ * <pre>
+ * segment-00000.dat  文章记录段，每段最多 65536 条，写完后只读
+ * queue.idx          索引：来源文件、各段的起始序号、条数和稀疏偏移，以及读取位置和低水位
+ * done.log           已完成文章的序号（8 字节一条），追加写入
+ * failed.log         最终失败和未通过预检的文章（每行一条 JSON，含序号和原因），在写入 done.log 之前追加
+ * </pre>
+ * 段文件以魔数和起始序号开头，每条记录为：int 长度、long create_time、标题和链接（int 字节数 + UTF-8，null 为 -1）。
+ * 文章按来源顺序从 0 连续编号；取出后到完成（成功、最终失败或未通过预检）之前处于处理中。
+ * 重启时低水位到读取位置之间没有出现在 done.log 中的文章重新取出，之后从读取位置继续读取。
+ * 低水位之前的段先从索引中移除，新索引写入后再删除文件；中途中断留下的、索引中没有的段文件在下次打开时删除。
+ * done.log 在启动时和追加条数过多时压缩为只含低水位之后的序号。
+ * <p>
+ * 失败记录跨运行保留，失败列表和预检报告在运行结束时从中流式生成，不在内存中累积；
+ * 重启时序号未出现在 done.log 中的记录（写入失败记录后、标记完成前中断）删除，文章重新取出处理。
+ * <p>
+ * 来源 urltopdf.json 用 JsonReader 流式导入。来源文件变化时逐条比对已导入的链接，只是在末尾追加了文章时
+ * 只导入新增部分并保留进度，否则丢弃旧队列重新导入。
+ */
+@Slf4j
+class WorkQueue implements AutoCloseable {
+
+  // "UQS1"
+  private static final int MAGIC = 0x55515331;
+  private static final int HEADER_BYTES = 12;
+  static final int SEGMENT_RECORDS = 65536;
+  // 每隔这么多条记录在索引中保存一次偏移
+  private static final int INDEX_STRIDE = 4096;
+  // done.log 追加这么多条后压缩
+  private static final int COMPACT_THRESHOLD = 65536;
+
+  private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+  // 失败记录每行一条，不能换行
+  private static final Gson lineGson = new Gson();
+
+  /**
+   * 队列索引，以 JSON 保存
+   */
+  static class Index {
+    String source;
+    long sourceSize;
+    long sourceModified;
+    List<Segment> segments = new ArrayList<>();
+    int nextSegment;
+    // 已导入的文章总数
+    long total;
+    // 下一篇从磁盘读取的文章序号
+    long readSeq;
+    // 该序号之前的文章都已完成
+    long lowWater;
+  }
+
+  /**
+   * 一个段文件
+   */
+  static class Segment {
+    String file;
+    long firstSeq;
+    int count;
+    // 第 i * INDEX_STRIDE 条记录在文件中的偏移
+    List<Long> offsets = new ArrayList<>();
+  }
+
+  /**
+   * failed.log 中的一条记录
+   */
+  static class Failure {
+    long seq;
+    String title;
+    String link;
+    long create_time;
+    String reason;
+    // 是否为未通过预检
+    boolean preflight;
+  }
+
+  /**
+   * 重启后需要重新取出的文章
+   */
+  private static class Entry {
+    final long seq;
+    final Article article;
+
+    Entry(long seq, Article article) {
+      this.seq = seq;
+      this.article = article;
+    }
+  }
+
+  private final Path dir;
+  private final Index index;
+  private final ArrayDeque<Entry> recovered = new ArrayDeque<>();
+  // 处理中的文章及其序号
+  private final Map<Article, Long> inFlight = new IdentityHashMap<>();
+  private final TreeSet<Long> inFlightSeqs = new TreeSet<>();
+  // 低水位之后已完成的序号，用于压缩 done.log
+  private final TreeSet<Long> doneAbove = new TreeSet<>();
+  private DataOutputStream doneLog;
+  private int appended;
+  private Writer failedLog;
+
+  // 当前读取的段
+  private Segment readSegment;
+  private DataInputStream reader;
+  // reader 下一条记录的序号
+  private long readerSeq;
+
+  private WorkQueue(Path dir, Index index) {
+    this.dir = dir;
+    this.index = index;
+  }
+
+  /**
+   * 打开队列：来源文件没有变化时恢复上次的进度，否则导入来源文件
+   *
+   * @return 来源文件不存在时返回 null
+   */
+  static WorkQueue open(Path dir, Path source) throws IOException {
+    if (!Files.exists(source)) {
+      return null;
+    }
+    Files.createDirectories(dir);
+    Index index = readIndex(dir);
+    long size = Files.size(source);
+    long modified = Files.getLastModifiedTime(source).toMillis();
+    if (index == null || !source.toString().equals(index.source)) {
+      index = rebuild(dir, source);
+    } else if (index.sourceSize != size || index.sourceModified != modified) {
+      index = appendOrRebuild(dir, source, index);
+    } else {
+      log.info(String.format("恢复待渲染队列：共%d篇，已读取到第%d篇", index.total, index.readSeq));
+    }
+    index.sourceSize = size;
+    index.sourceModified = modified;
+
+    removeUnreferenced(dir, index);
+
+    WorkQueue queue = new WorkQueue(dir, index);
+    queue.recover();
+    return queue;
+  }
+
+  /**
+   * 取出最多 max 篇文章：先取重启前未完成的，再按顺序从磁盘读取
+   */
+  synchronized List<Article> take(int max) throws IOException {
+    List<Article> articles = new ArrayList<>();
+    while (articles.size() < max && !recovered.isEmpty()) {
+      Entry entry = recovered.poll();
+      track(entry.seq, entry.article);
+      articles.add(entry.article);
+    }
+    boolean read = false;
+    while (articles.size() < max && index.readSeq < index.total) {
+      Article article = read(index.readSeq);
+      track(index.readSeq++, article);
+      articles.add(article);
+      read = true;
+    }
+    if (read) {
+      saveIndex();
+    }
+    return articles;
+  }
+
+  /**
+   * 文章处理完成（成功、最终失败或未通过预检），之后不再取出
+   */
+  synchronized void complete(Article article) throws IOException {
+    Long seq = inFlight.remove(article);
+    if (seq == null) {
+      return;
+    }
+    inFlightSeqs.remove(seq);
+    doneLog.writeLong(seq);
+    doneLog.flush();
+    doneAbove.add(seq);
+    advanceLowWater();
+    if (++appended >= COMPACT_THRESHOLD) {
+      compact();
+    }
+  }
+
+  /**
+   * 文章最终失败或未通过预检：先追加到失败记录，再标记完成
+   *
+   * @param preflight 是否为未通过预检
+   */
+  synchronized void fail(Article article, String reason, boolean preflight) throws IOException {
+    Long seq = inFlight.get(article);
+    if (seq == null) {
+      return;
+    }
+    Failure failure = new Failure();
+    failure.seq = seq;
+    failure.title = article.getTitle();
+    failure.link = article.getLink();
+    failure.create_time = article.getCreate_time();
+    failure.reason = reason;
+    failure.preflight = preflight;
+    if (failedLog == null) {
+      failedLog = Files.newBufferedWriter(dir.resolve("failed.log"), StandardCharsets.UTF_8,
+              StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+    failedLog.write(lineGson.toJson(failure));
+    failedLog.write('\n');
+    failedLog.flush();
+    complete(article);
+  }
+
+  /**
+   * 把失败记录（包括之前运行中的）写成失败文章列表，格式与 urltopdf_error.json 相同
+   *
+   * @param preflightOnly 只写未通过预检的文章及原因（预检报告格式）
+   * @return 写入的条数，没有失败记录时返回 0 且不创建文件
+   */
+  synchronized long writeFailures(Path target, boolean preflightOnly) throws IOException {
+    Path file = dir.resolve("failed.log");
+    if (!Files.exists(file)) {
+      return 0;
+    }
+    long count = 0;
+    JsonWriter out = null;
+    try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        Failure failure = parseFailure(line);
+        if (failure == null || (preflightOnly && !failure.preflight)) {
+          continue;
+        }
+        if (out == null) {
+          out = new JsonWriter(Files.newBufferedWriter(target, StandardCharsets.UTF_8));
+          out.beginArray();
+        }
+        if (preflightOnly) {
+          LinkPreflight.Rejection rejection = new LinkPreflight.Rejection();
+          rejection.title = failure.title;
+          rejection.link = failure.link;
+          rejection.create_time = failure.create_time;
+          rejection.reason = failure.reason;
+          lineGson.toJson(rejection, LinkPreflight.Rejection.class, out);
+        } else {
+          Article article = new Article();
+          article.setTitle(failure.title);
+          article.setLink(failure.link);
+          article.setCreate_time(failure.create_time);
+          lineGson.toJson(article, Article.class, out);
+        }
+        count++;
+      }
+    } finally {
+      if (out != null) {
+        out.endArray();
+        out.close();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * 还没有完成的文章数（包括处理中的）
+   */
+  synchronized long remaining() {
+    return recovered.size() + inFlight.size() + index.total - index.readSeq;
+  }
+
+  /**
+   * 还没有取出的文章数
+   */
+  synchronized long pending() {
+    return recovered.size() + index.total - index.readSeq;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    saveIndex();
+    closeReader();
+    if (doneLog != null) {
+      doneLog.close();
+      doneLog = null;
+    }
+    if (failedLog != null) {
+      failedLog.close();
+      failedLog = null;
+    }
+  }
+
+  private void track(long seq, Article article) {
+    inFlight.put(article, seq);
+    inFlightSeqs.add(seq);
+  }
+
+  private void advanceLowWater() {
+    long lowWater = index.readSeq;
+    if (!recovered.isEmpty()) {
+      lowWater = Math.min(lowWater, recovered.peek().seq);
+    }
+    if (!inFlightSeqs.isEmpty()) {
+      lowWater = Math.min(lowWater, inFlightSeqs.first());
+    }
+    index.lowWater = lowWater;
+    doneAbove.headSet(lowWater).clear();
+  }
+
+  /**
+   * 读取 done.log，找出低水位到读取位置之间未完成的文章，然后压缩 done.log
+   */
+  private void recover() throws IOException {
+    Set<Long> done = new HashSet<>();
+    Path doneFile = dir.resolve("done.log");
+    if (Files.exists(doneFile)) {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(doneFile)))) {
+        while (true) {
+          long seq = in.readLong();
+          if (seq >= index.lowWater && seq < index.readSeq) {
+            done.add(seq);
+          }
+        }
+      } catch (EOFException e) {
+        // 读到末尾，最后一条可能写了一半
+      }
+    }
+    if (index.lowWater < index.readSeq) {
+      for (long seq = index.lowWater; seq < index.readSeq; seq++) {
+        Article article = read(seq);
+        if (done.contains(seq)) {
+          doneAbove.add(seq);
+        } else {
+          recovered.add(new Entry(seq, article));
+        }
+      }
+      log.info("上次运行中未完成的文章：" + recovered.size() + "篇，优先处理");
+    }
+    closeReader();
+    dropUnfinishedFailures(done);
+    advanceLowWater();
+    compact();
+  }
+
+  /**
+   * 删除写入失败记录后、标记完成前中断的记录：这些文章会重新取出处理，失败时再次记录
+   *
+   * @param done 低水位到读取位置之间已完成的序号
+   */
+  private void dropUnfinishedFailures(Set<Long> done) throws IOException {
+    Path file = dir.resolve("failed.log");
+    if (!Files.exists(file)) {
+      return;
+    }
+    Path temp = dir.resolve("failed.log.tmp");
+    int dropped = 0;
+    try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+         BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        Failure failure = parseFailure(line);
+        if (failure == null || (failure.seq >= index.lowWater && !done.contains(failure.seq))) {
+          // 写了一半的行或未标记完成的文章
+          dropped++;
+          continue;
+        }
+        out.write(line);
+        out.write('\n');
+      }
+    }
+    if (dropped > 0) {
+      Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } else {
+      Files.delete(temp);
+    }
+  }
+
+  private static Failure parseFailure(String line) {
+    if (line.isBlank()) {
+      return null;
+    }
+    try {
+      return lineGson.fromJson(line, Failure.class);
+    } catch (JsonParseException e) {
+      return null;
+    }
+  }
+
+  /**
+   * 保存索引并把 done.log 重写为只含低水位之后的序号；先保存索引，中途中断时旧的 done.log 仍然有效
+   */
+  private void compact() throws IOException {
+    saveIndex();
+    if (doneLog != null) {
+      doneLog.close();
+    }
+    Path doneFile = dir.resolve("done.log");
+    Path temp = dir.resolve("done.log.tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+      for (long seq : doneAbove) {
+        out.writeLong(seq);
+      }
+    }
+    Files.move(temp, doneFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    doneLog = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(doneFile,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    appended = 0;
+  }
+
+  /**
+   * 原子写入索引，之后删除低水位之前、新索引中不再列出的段文件
+   */
+  private void saveIndex() throws IOException {
+    List<Segment> removed = new ArrayList<>();
+    for (Iterator<Segment> it = index.segments.iterator(); it.hasNext(); ) {
+      Segment segment = it.next();
+      if (segment.firstSeq + segment.count > index.lowWater) {
+        break;
+      }
+      if (segment == readSegment) {
+        closeReader();
+      }
+      removed.add(segment);
+      it.remove();
+    }
+    // 先写索引：删除文件时中断，留下的段文件下次打开时清理
+    writeIndex(dir, index);
+    for (Segment segment : removed) {
+      Files.deleteIfExists(dir.resolve(segment.file));
+    }
+  }
+
+  /**
+   * 删除索引中没有列出的段文件（删除或导入过程中中断留下的）
+   */
+  private static void removeUnreferenced(Path dir, Index index) throws IOException {
+    Set<String> referenced = new HashSet<>();
+    for (Segment segment : index.segments) {
+      referenced.add(segment.file);
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "segment-*.dat")) {
+      for (Path file : stream) {
+        if (!referenced.contains(file.getFileName().toString())) {
+          log.info("删除队列中残留的段文件: " + file.getFileName());
+          Files.delete(file);
+        }
+      }
+    }
+  }
+
+  /**
+   * 读取指定序号的文章，顺序读取时不需要重新定位
+   */
+  private Article read(long seq) throws IOException {
+    if (reader == null || seq != readerSeq || seq >= readSegment.firstSeq + readSegment.count) {
+      openReader(seq);
+    }
+    Article article = readRecord(reader);
+    readerSeq = seq + 1;
+    return article;
+  }
+
+  /**
+   * 打开包含该序号的段，并定位到该记录
+   */
+  private void openReader(long seq) throws IOException {
+    closeReader();
+    Segment segment = null;
+    for (Segment candidate : index.segments) {
+      if (seq >= candidate.firstSeq && seq < candidate.firstSeq + candidate.count) {
+        segment = candidate;
+        break;
+      }
+    }
+    if (segment == null) {
+      throw new IOException("队列中没有序号为 " + seq + " 的文章，索引可能已损坏");
+    }
+    int ordinal = (int) (seq - segment.firstSeq);
+    FileChannel channel = FileChannel.open(dir.resolve(segment.file), StandardOpenOption.READ);
+    channel.position(segment.offsets.get(ordinal / INDEX_STRIDE));
+    reader = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 65536));
+    for (int i = ordinal / INDEX_STRIDE * INDEX_STRIDE; i < ordinal; i++) {
+      reader.skipNBytes(reader.readInt());
+    }
+    readSegment = segment;
+    readerSeq = seq;
+  }
+
+  private void closeReader() throws IOException {
+    if (reader != null) {
+      reader.close();
+      reader = null;
+      readSegment = null;
+    }
+  }
+
+  /**
+   * 丢弃旧队列，重新导入来源文件
+   */
+  private static Index rebuild(Path dir, Path source) throws IOException {
+    clear(dir);
+    Index index = new Index();
+    index.source = source.toString();
+    try (JsonReader json = new JsonReader(Files.newBufferedReader(source, StandardCharsets.UTF_8))) {
+      json.beginArray();
+      ingest(dir, index, json);
+    }
+    writeIndex(dir, index);
+    log.info("已导入待渲染队列：共" + index.total + "篇");
+    return index;
+  }
+
+  /**
+   * 来源文件变化：前面的文章与已导入的一致时只导入新增部分，否则重新导入
+   */
+  private static Index appendOrRebuild(Path dir, Path source, Index index) throws IOException {
+    boolean unchangedPrefix = true;
+    try (JsonReader json = new JsonReader(Files.newBufferedReader(source, StandardCharsets.UTF_8))) {
+      json.beginArray();
+      long seq = 0;
+      // 已删除的段（低水位之前）无法比对，按条数跳过
+      long firstKept = index.segments.isEmpty() ? index.total : index.segments.get(0).firstSeq;
+      for (; seq < firstKept && json.hasNext(); seq++) {
+        json.skipValue();
+      }
+      for (Segment segment : index.segments) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Files.newInputStream(dir.resolve(segment.file)), 65536))) {
+          in.skipNBytes(HEADER_BYTES);
+          for (int i = 0; i < segment.count && unchangedPrefix; i++, seq++) {
+            Article imported = readRecord(in);
+            Article article = json.hasNext() ? gson.fromJson(json, Article.class) : null;
+            unchangedPrefix = article != null && Objects.equals(imported.getLink(), article.getLink());
+          }
+        }
+        if (!unchangedPrefix) {
+          break;
+        }
+      }
+      if (unchangedPrefix && seq == index.total) {
+        long before = index.total;
+        ingest(dir, index, json);
+        writeIndex(dir, index);
+        if (index.total > before) {
+          log.info("来源文件新增" + (index.total - before) + "篇文章，已追加到待渲染队列");
+        } else {
+          log.info("来源文件已变化，但待渲染的文章没有变化，继续上次的进度");
+        }
+        return index;
+      }
+    }
+    log.info("来源文件已修改，重新导入待渲染队列");
+    return rebuild(dir, source);
+  }
+
+  /**
+   * 从 JSON 数组的当前位置导入剩余的文章，写入新的段文件
+   */
+  private static void ingest(Path dir, Index index, JsonReader json) throws IOException {
+    DataOutputStream out = null;
+    Segment segment = null;
+    long offset = 0;
+    try {
+      while (json.hasNext()) {
+        Article article = gson.fromJson(json, Article.class);
+        if (article == null) {
+          continue;
+        }
+        if (segment == null || segment.count >= SEGMENT_RECORDS) {
+          if (out != null) {
+            out.close();
+          }
+          segment = new Segment();
+          segment.file = String.format("segment-%05d.dat", index.nextSegment++);
+          segment.firstSeq = index.total;
+          out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dir.resolve(segment.file)), 65536));
+          out.writeInt(MAGIC);
+          out.writeLong(segment.firstSeq);
+          offset = HEADER_BYTES;
+          index.segments.add(segment);
+        }
+        if (segment.count % INDEX_STRIDE == 0) {
+          segment.offsets.add(offset);
+        }
+        offset += writeRecord(out, article);
+        segment.count++;
+        index.total++;
+      }
+    } finally {
+      if (out != null) {
+        out.close();
+      }
+    }
+  }
+
+  /**
+   * @return 写入的字节数
+   */
+  private static int writeRecord(DataOutputStream out, Article article) throws IOException {
+    byte[] title = article.getTitle() == null ? null : article.getTitle().getBytes(StandardCharsets.UTF_8);
+    byte[] link = article.getLink() == null ? null : article.getLink().getBytes(StandardCharsets.UTF_8);
+    int length = 8 + 4 + (title == null ? 0 : title.length) + 4 + (link == null ? 0 : link.length);
+    out.writeInt(length);
+    out.writeLong(article.getCreate_time());
+    writeBytes(out, title);
+    writeBytes(out, link);
+    return 4 + length;
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes == null ? -1 : bytes.length);
+    if (bytes != null) {
+      out.write(bytes);
+    }
+  }
+
+  private static Article readRecord(DataInputStream in) throws IOException {
+    in.readInt();
+    Article article = new Article();
+    article.setCreate_time(in.readLong());
+    article.setTitle(readString(in));
+    article.setLink(readString(in));
+    return article;
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    return length < 0 ? null : new String(in.readNBytes(length), StandardCharsets.UTF_8);
+  }
+
+  private static Index readIndex(Path dir) {
+    Path file = dir.resolve("queue.idx");
+    try {
+      if (Files.exists(file)) {
+        return gson.fromJson(Files.readString(file, StandardCharsets.UTF_8), Index.class);
+      }
+    } catch (Exception e) {
+      log.warn("读取队列索引失败，重新导入: " + file, e);
+    }
+    return null;
+  }
+
+  private static void writeIndex(Path dir, Index index) throws IOException {
+    Path temp = dir.resolve("queue.idx.tmp");
+    Files.writeString(temp, gson.toJson(index), StandardCharsets.UTF_8);
+    Files.move(temp, dir.resolve("queue.idx"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static void clear(Path dir) throws IOException {
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+      for (Path file : stream) {
+        String name = file.getFileName().toString();
+        if (name.startsWith("segment-") || name.startsWith("queue.idx") || name.startsWith("done.log")
+                || name.startsWith("failed.log")) {
+          Files.delete(file);
+        }
+      }
+    }
+  }
+}